@@ -16,8 +16,7 @@
 
 package org.apache.cordova.contacts;
 
-import java.util.HashMap;
-
+import android.os.CancellationSignal;
 import android.util.Log;
 import org.apache.cordova.CordovaInterface;
 import org.json.JSONArray;
@@ -36,92 +35,6 @@ public abstract class ContactAccessor {
     protected final String LOG_TAG = "ContactsAccessor";
     protected CordovaInterface mApp;
 
-    /**
-     * Check to see if the data associated with the key is required to
-     * be populated in the Contact object.
-     * @param key
-     * @param map created by running buildPopulationSet.
-     * @return true if the key data is required
-     */
-    protected boolean isRequired(String key, HashMap<String,Boolean> map) {
-        Boolean retVal = map.get(key);
-        return (retVal == null) ? false : retVal.booleanValue();
-    }
-
-    /**
-     * Create a hash map of what data needs to be populated in the Contact object
-     * @param fields the list of fields to populate
-     * @return the hash map of required data
-     */
-    protected HashMap<String, Boolean> buildPopulationSet(JSONObject options) {
-        HashMap<String, Boolean> map = new HashMap<String, Boolean>();
-
-        String key;
-        try {
-            JSONArray desiredFields = null;
-            if (options!=null && options.has("desiredFields")) {
-                desiredFields = options.getJSONArray("desiredFields");
-            }
-            if (desiredFields == null || desiredFields.length() == 0) {
-                map.put("displayName", true);
-                map.put("name", true);
-                map.put("nickname", true);
-                map.put("phoneNumbers", true);
-                map.put("emails", true);
-                map.put("addresses", true);
-                map.put("ims", true);
-                map.put("organizations", true);
-                map.put("birthday", true);
-                map.put("note", true);
-                map.put("urls", true);
-                map.put("photos", true);
-                map.put("categories", true);
-                map.put("about", true);
-                map.put("relations", true);
-
-            } else {
-                for (int i = 0; i < desiredFields.length(); i++) {
-                    key = desiredFields.getString(i);
-                    if (key.startsWith("displayName")) {
-                        map.put("displayName", true);
-                    } else if (key.startsWith("name")) {
-                        map.put("displayName", true);
-                        map.put("name", true);
-                    } else if (key.startsWith("nickname")) {
-                        map.put("nickname", true);
-                    } else if (key.startsWith("phoneNumbers")) {
-                        map.put("phoneNumbers", true);
-                    } else if (key.startsWith("emails")) {
-                        map.put("emails", true);
-                    } else if (key.startsWith("addresses")) {
-                        map.put("addresses", true);
-                    } else if (key.startsWith("ims")) {
-                        map.put("ims", true);
-                    } else if (key.startsWith("organizations")) {
-                        map.put("organizations", true);
-                    } else if (key.startsWith("birthday")) {
-                        map.put("birthday", true);
-                    } else if (key.startsWith("note")) {
-                        map.put("note", true);
-                    } else if (key.startsWith("urls")) {
-                        map.put("urls", true);
-                    } else if (key.startsWith("photos")) {
-                        map.put("photos", true);
-                    } else if (key.startsWith("categories")) {
-                        map.put("categories", true);
-                    } else if (key.startsWith("about")) {
-                        map.put("about", true);
-                    } else if (key.startsWith("relations")) {
-                        map.put("relations", true);
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-        }
-        return map;
-    }
-
     /**
      * Convenience method to get a string from a JSON object.  Saves a
      * lot of try/catch writing.
@@ -161,6 +74,13 @@ public abstract class ContactAccessor {
      */
     public abstract JSONArray search(JSONArray filter, JSONObject options);
 
+    /**
+     * Handles searching through SDK-specific contacts API.
+     * @param signal cancels the search when triggered, may be null.
+     * @throws android.os.OperationCanceledException if the search has been cancelled.
+     */
+    public abstract JSONArray search(JSONArray filter, JSONObject options, CancellationSignal signal);
+
     /**
      * Handles searching through SDK-specific contacts API.
      * @throws JSONException
@@ -26,9 +26,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,11 +42,15 @@ import org.json.JSONObject;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
 
@@ -151,11 +157,87 @@ public class ContactAccessorSdk5 extends ContactAccessor {
         dbMap.put("sync4", ContactsContract.RawContacts.SYNC4);
     }
 
+    /**
+     * Local index answering the searches it covers, null if not enabled.
+     */
+    private volatile ContactSearchIndex searchIndex;
+
+    /**
+     * Phone number normalization, for saving and for the "phone" match mode.
+     */
+    private final ContactPhoneNumbers phoneNumbers;
+
+    /**
+     * Cached selections and projections of the searches.
+     */
+    private final ContactQueryCompiler compiler;
+
+    /**
+     * Name collation keys, for the sorted searches.
+     */
+    private final ContactSorter sorter;
+
     /**
      * Create an contact accessor.
      */
     public ContactAccessorSdk5(CordovaInterface context) {
         mApp = context;
+        phoneNumbers = new ContactPhoneNumbers(context.getActivity().getApplicationContext());
+
+        String[] baseColumns = new String[] {
+            ContactsContract.Data.CONTACT_ID,
+            RawContacts._ID,
+            BaseColumns._ID,
+            ContactsContract.Data.MIMETYPE
+        };
+        compiler = new ContactQueryCompiler(dbMap, CONTENT_ITEM_TYPES_MAP, baseColumns);
+        sorter = new ContactSorter(context.getActivity().getContentResolver());
+    }
+
+    /**
+     * Use (or stop using with null) a local index for the searches it can answer.
+     */
+    public void setSearchIndex(ContactSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public ContactPhoneNumbers getPhoneNumbers() {
+        return phoneNumbers;
+    }
+
+    public ContactQueryCompiler getQueryCompiler() {
+        return compiler;
+    }
+
+    public ContactSorter getSorter() {
+        return sorter;
+    }
+
+    /**
+     * @return the sort field index of the find options, -1 if not sorted.
+     * @throws IllegalArgumentException if the sortBy option is unknown.
+     */
+    private static int getSortField(JSONObject options) {
+        if (options == null || !options.has("sortBy") || options.isNull("sortBy")) {
+            return -1;
+        }
+        return ContactSorter.fieldIndex(options.optString("sortBy"));
+    }
+
+    private static boolean isDescending(JSONObject options) {
+        return options != null && "desc".equalsIgnoreCase(options.optString("sortOrder"));
+    }
+
+    /**
+     * @return the result of a paged find, with the cursor of its next page.
+     */
+    public JSONObject toPageResult(JSONArray contacts, JSONObject options) throws JSONException {
+        int sortField = getSortField(options);
+        String lastSortValue = null;
+        if (sortField >= 0) {
+            lastSortValue = sorter.getValue(ContactPage.lastRawId(contacts), sortField);
+        }
+        return ContactPage.of(options).toResult(contacts, lastSortValue);
     }
 
     /**
@@ -167,13 +249,85 @@ public class ContactAccessorSdk5 extends ContactAccessor {
      */
     @Override
     public JSONArray search(JSONArray fields, JSONObject options) {
+        return search(fields, options, null);
+    }
+
+    /**
+     * @return true if the search fields only target phone numbers.
+     */
+    private static boolean isPhoneSearch(JSONArray fields) {
+        if (fields.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < fields.length(); i++) {
+            String field = fields.optString(i);
+            if (!field.equals("phoneNumbers") && !field.equals("phoneNumbers.value")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #search(JSONArray, JSONObject)}, but can be stopped early.
+     * @param signal cancels the provider queries and the cursor walk, may be null.
+     * @return an array of contacts
+     * @throws OperationCanceledException if the search has been cancelled.
+     */
+    @Override
+    public JSONArray search(JSONArray fields, JSONObject options, CancellationSignal signal) {
+        ContactPage page = ContactPage.of(options);
+        if (page.getLimit() == 0) {
+            return new JSONArray();
+        }
+
+        // The fields and sub-fields the user wants back.
+        ContactFieldMask mask = ContactFieldMask.of(options);
+
+        List<String> rawIds = selectRawIds(fields, options, page, false, signal);
+        if (rawIds != null && rawIds.isEmpty()) {
+            return new JSONArray();
+        }
+
+        Log.d(LOG_TAG, "contactIds.length: " + (rawIds == null ? "all" : rawIds.size()));
+
+        // Build a query that only looks at ids
+        WhereOptions idOptions = buildIdClause(rawIds == null ? null : new LinkedHashSet<String>(rawIds),
+                rawIds == null);
+
+        // Do the id query
+        Cursor c = query(RawContactsEntity.CONTENT_URI,
+                compiler.getProjection(mask),
+                idOptions.getWhere(),
+                idOptions.getWhereArgs(),
+                ContactsContract.RawContacts._ID + " ASC", signal);
+
+        JSONArray contacts = populateContactArray(page.getLimit(), mask, c, signal);
+        if (getSortField(options) >= 0) {
+            contacts = reorder(contacts, rawIds);
+        }
+        return contacts;
+    }
+
+    /**
+     * Select the raw contacts of a find, without reading them.
+     *
+     * @param page the page of the find, unbounded for every match
+     * @param explicit list the raw contacts even when every one of them matches
+     * @return the raw contact ids, in the sort order when the find is sorted;
+     * null when every raw contact matches and explicit is false.
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws OperationCanceledException if the signal has been cancelled.
+     */
+    private List<String> selectRawIds(JSONArray fields, JSONObject options, ContactPage page,
+            boolean explicit, CancellationSignal signal) {
         // Get the find options
         String searchTerm = "";
-        int limit = Integer.MAX_VALUE;
-        boolean multiple = true;
         String accountType = null;
         String accountName = null;
         boolean allContacts = false;
+        int sortField = getSortField(options);
+        boolean descending = isDescending(options);
 
         if (options != null) {
             searchTerm = options.optString("filter");
@@ -184,15 +338,6 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 searchTerm = "%" + searchTerm + "%";
             }
 
-            try {
-                multiple = options.getBoolean("multiple");
-                if (!multiple) {
-                    limit = 1;
-                }
-            } catch (JSONException e) {
-                // Multiple was not specified so we assume the default is true.
-            }
-
             accountType = options.optString("accountType", null);
             accountName = options.optString("accountName", null);
             allContacts = searchTerm == "%" && accountType == null && accountName == null;
@@ -202,70 +347,317 @@ public class ContactAccessorSdk5 extends ContactAccessor {
             allContacts = true;
         }
 
+        // Typed predicates select their raw contacts first.
+        Set<String> contactIds = null;
+        JSONObject where = options == null ? null : options.optJSONObject("where");
+        if (where != null) {
+            ContactPredicate predicate = ContactPredicate.parse(where, dbMap, CONTENT_ITEM_TYPES_MAP);
+            contactIds = queryContactIds(predicate, accountType, accountName, signal);
+            allContacts = false;
+            if (contactIds.isEmpty()) {
+                return new ArrayList<String>();
+            }
+        }
 
-        // Loop through the fields the user provided to see what data should be returned.
-        HashMap<String, Boolean> populate = buildPopulationSet(options);
-
-        // Build the ugly where clause and where arguments for one big query.
-        WhereOptions whereOptions = buildWhereClause(fields, searchTerm, accountType, accountName);
+        // Phone numbers are matched whatever their formatting in the "phone" mode,
+        // otherwise ask the local search index first, when there is one.
+        Set<String> matches = null;
+        if (!"%".equals(searchTerm) && "phone".equals(options.optString("matchMode"))
+                && isPhoneSearch(fields)) {
+            matches = phoneNumbers.lookupRawContactIds(options.optString("filter"), accountType, accountName,
+                    signal);
+            throwIfCanceled(signal);
+        }
+        else if (searchIndex != null && !"%".equals(searchTerm)) {
+            matches = searchIndex.search(fields, options.optString("filter"),
+                    accountType, accountName, "prefix".equals(options.optString("matchMode")));
+            throwIfCanceled(signal);
+        }
+        // When every contact is wanted, the contact query reads them all without ids,
+        // unless only a page of them is. Sorted pages are cut after the sort.
+        if (allContacts && (page.isBounded() || explicit) && sortField < 0) {
+            contactIds = queryRawContactIds(page, signal);
+            allContacts = false;
+        }
+        else if (matches == null && !allContacts && (contactIds == null || !"%".equals(searchTerm))) {
+            // Alone, this query can read only up to the end of the page.
+            ContactPage readPage = contactIds == null && sortField < 0 ? page : null;
+            matches = queryContactIds(fields, searchTerm, accountType, accountName, readPage, signal);
+        }
+        if (contactIds == null) {
+            contactIds = matches;
+        }
+        else if (matches != null) {
+            contactIds.retainAll(matches);
+        }
 
-        // Get all the id's where the search term matches the fields passed in.
-        Cursor idCursor = mApp.getActivity().getContentResolver().query(RawContactsEntity.CONTENT_URI,
-                new String[] { ContactsContract.RawContacts._ID },
-                whereOptions.getWhere(),
-                whereOptions.getWhereArgs(),
-                ContactsContract.RawContacts._ID + " ASC");
+        if (sortField >= 0) {
+            List<String> order = sorter.sort(allContacts ? null : contactIds, sortField, descending, signal);
+            return page.isBounded() ? sorter.page(order, page, sortField, descending) : order;
+        }
+        if (allContacts) {
+            return null;
+        }
+        if (page.isBounded()) {
+            contactIds = page.apply(contactIds);
+        }
+        return new ArrayList<String>(contactIds);
+    }
 
-        // Create a set of unique ids
-        Set<String> contactIds = new HashSet<String>();
-        int idColumn = -1;
-        while (idCursor.moveToNext()) {
-            if (idColumn < 0) {
-                idColumn = idCursor.getColumnIndex(ContactsContract.RawContacts._ID);
+    /**
+     * Read raw contacts with one batched query.
+     *
+     * @param rawIds the raw contacts to read
+     * @param options the find options giving the desiredFields
+     * @return the contacts, in the order of rawIds; the removed ones are missing.
+     * @throws OperationCanceledException if the signal has been cancelled.
+     */
+    public JSONArray readRawContacts(List<String> rawIds, JSONObject options, CancellationSignal signal) {
+        if (rawIds.isEmpty()) {
+            return new JSONArray();
+        }
+        ContactFieldMask mask = ContactFieldMask.of(options);
+        WhereOptions idOptions = buildIdClause(new LinkedHashSet<String>(rawIds), false);
+        Cursor c = query(RawContactsEntity.CONTENT_URI,
+                compiler.getProjection(mask),
+                idOptions.getWhere(),
+                idOptions.getWhereArgs(),
+                ContactsContract.RawContacts._ID + " ASC", signal);
+        return reorder(populateContactArray(Integer.MAX_VALUE, mask, c, signal), rawIds);
+    }
 
+    /**
+     * Count the raw contacts a find would return, without reading them. Every
+     * raw contact, or those of an account, is counted on a cursor of one _ID
+     * per raw contact; a search, which matches data rows, on the distinct
+     * ids of its matches.
+     *
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws OperationCanceledException if the signal has been cancelled.
+     */
+    public int count(JSONArray fields, JSONObject options, CancellationSignal signal) {
+        if (options == null
+                || (options.optString("filter").length() == 0 && options.optJSONObject("where") == null)) {
+            String accountType = options == null || options.isNull("accountType")
+                    ? null : options.optString("accountType", null);
+            String accountName = options == null || options.isNull("accountName")
+                    ? null : options.optString("accountName", null);
+            if (accountType == null || accountName == null) {
+                // As a find, which only restricts to an account given in full.
+                return countRawContacts(null, new String[] {}, signal);
             }
-            contactIds.add(idCursor.getString(idColumn));
+            return countRawContacts(RawContacts.ACCOUNT_TYPE + " = ? AND " + RawContacts.ACCOUNT_NAME + " = ?",
+                    new String[] { accountType, accountName }, signal);
         }
-        idCursor.close();
+        if (options.has("sortBy")) {
+            try {
+                options = new JSONObject(options.toString());
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            options.remove("sortBy");
+        }
+        List<String> rawIds = selectRawIds(fields, options, ContactPage.of(null), false, signal);
+        return rawIds == null ? countRawContacts(null, new String[] {}, signal) : rawIds.size();
+    }
 
-        Log.d(LOG_TAG, "contactIds.length: " + contactIds.size());
+    /**
+     * @return the number of raw contacts, not deleted, matching a selection on RawContacts.
+     */
+    private int countRawContacts(String selection, String[] selectionArgs, CancellationSignal signal) {
+        String notDeleted = RawContacts.DELETED + " = 0";
+        Cursor c = query(RawContacts.CONTENT_URI, new String[] { RawContacts._ID },
+                selection == null ? notDeleted : notDeleted + " AND " + selection, selectionArgs, null, signal);
+        if (c == null) {
+            return 0;
+        }
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
 
-        // Build a query that only looks at ids
-        WhereOptions idOptions = buildIdClause(contactIds, allContacts);
+    /**
+     * Select every raw contact of a find, for a view: sorted when the find is,
+     * in _ID order otherwise.
+     *
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws OperationCanceledException if the signal has been cancelled.
+     */
+    public long[] selectRawIds(JSONArray fields, JSONObject options, CancellationSignal signal) {
+        List<String> rawIds = selectRawIds(fields, options, ContactPage.of(null), true, signal);
+        long[] ids = new long[rawIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Long.parseLong(rawIds.get(i));
+        }
+        if (getSortField(options) < 0) {
+            Arrays.sort(ids);
+        }
+        return ids;
+    }
 
-        // Determine which columns we should be fetching.
-        HashSet<String> columnsToFetch = new HashSet<String>();
-        columnsToFetch.add(ContactsContract.Data.CONTACT_ID);
-        columnsToFetch.add(RawContacts._ID);
+    /**
+     * @param order raw contact ids
+     * @return the contacts, in the order of their raw contact ids.
+     */
+    private static JSONArray reorder(JSONArray contacts, List<String> order) {
+        Map<String, JSONObject> byRawId = new HashMap<String, JSONObject>();
+        for (int i = 0; i < contacts.length(); i++) {
+            JSONObject contact = contacts.optJSONObject(i);
+            byRawId.put(contact.optString("rawId"), contact);
+        }
+        JSONArray sorted = new JSONArray();
+        for (String rawId : order) {
+            JSONObject contact = byRawId.get(rawId);
+            if (contact != null) {
+                sorted.put(contact);
+            }
+        }
+        return sorted;
+    }
 
-        addColumnsToFetch(columnsToFetch, SYNC_FIELDS);
+    /**
+     * Query the provider for the raw contacts matching a search.
+     * @return the set of matching raw contact ids
+     */
+    private Set<String> queryContactIds(JSONArray fields, String searchTerm,
+            String accountType, String accountName, ContactPage page, CancellationSignal signal) {
+        boolean withAccount = accountType != null && accountName != null;
+        if ("%".equals(searchTerm)) {
+            // Every contact, of the account when there is one.
+            if (!withAccount) {
+                return queryContactIds((String) null, null, page, signal);
+            }
+            return queryContactIds(RawContacts.ACCOUNT_TYPE + " = ? AND " + RawContacts.ACCOUNT_NAME + " = ?",
+                    new String[] { accountType, accountName }, page, signal);
+        }
 
-        for (String key : FIELDS_MAP.keySet()) {
-            if (isRequired(key, populate)) {
-                addColumnsToFetch(columnsToFetch, FIELDS_MAP.get(key));
+        // Get all the id's where the search term matches the fields passed in.
+        ContactQueryCompiler.Selection selection = compiler.getSelection(fields, withAccount);
+        return queryContactIds(selection.getSelection(),
+                selection.bind(searchTerm, accountType, accountName), page, signal);
+    }
+
+    /**
+     * Query the ids of a page of every raw contact, straight from RawContacts
+     * where there is one row per raw contact, so that the provider can stop
+     * at the end of the page.
+     */
+    private Set<String> queryRawContactIds(ContactPage page, CancellationSignal signal) {
+        Uri uri = RawContacts.CONTENT_URI;
+        if (page.getReadLimit() != Integer.MAX_VALUE) {
+            uri = uri.buildUpon().appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY,
+                    String.valueOf(page.getReadLimit())).build();
+        }
+        // Unlike RawContactsEntity, RawContacts has the deleted raw contacts too.
+        String notDeleted = RawContacts.DELETED + " = 0";
+        Cursor c = query(uri, new String[] { RawContacts._ID },
+                page.getAfter() < 0 ? notDeleted : notDeleted + " AND " + RawContacts._ID + " > ?",
+                page.getAfter() < 0 ? null : new String[] { String.valueOf(page.getAfter()) },
+                RawContacts._ID + " ASC", signal);
+        Set<String> rawIds = new LinkedHashSet<String>();
+        try {
+            while (c.moveToNext()) {
+                rawIds.add(c.getString(0));
             }
+        } finally {
+            c.close();
         }
-        if (isRequired("birthday", populate)) {
-            addColumnsToFetch(columnsToFetch, EVENT_FIELDS);
+        return rawIds;
+    }
+
+    /**
+     * Query the provider for the raw contacts matching a typed predicate.
+     * The parts of the predicate which can not be a single selection are
+     * queried separately, and their results intersected (AND) or merged (OR).
+     * @return the set of matching raw contact ids
+     */
+    private Set<String> queryContactIds(ContactPredicate predicate,
+            String accountType, String accountName, CancellationSignal signal) {
+        if (!predicate.isSelection()) {
+            Set<String> contactIds = null;
+            for (ContactPredicate child : predicate.getChildren()) {
+                Set<String> childIds = queryContactIds(child, accountType, accountName, signal);
+                if (contactIds == null) {
+                    contactIds = childIds;
+                } else if (predicate.isAnd()) {
+                    contactIds.retainAll(childIds);
+                } else {
+                    contactIds.addAll(childIds);
+                }
+                if (predicate.isAnd() && contactIds.isEmpty()) {
+                    break;
+                }
+            }
+            return contactIds;
         }
 
-        // Do the id query
-        Cursor c = mApp.getActivity().getContentResolver().query(
-            RawContactsEntity.CONTENT_URI,
-                columnsToFetch.toArray(new String[] {}),
-                idOptions.getWhere(),
-                idOptions.getWhereArgs(),
-                ContactsContract.RawContacts._ID + " ASC");
+        String selection = predicate.getSelection();
+        List<String> args = new ArrayList<String>(predicate.getArgs());
+        if (accountType != null && accountName != null) {
+            selection += " AND " + RawContacts.ACCOUNT_TYPE + " = ? AND " + RawContacts.ACCOUNT_NAME + " = ?";
+            args.add(accountType);
+            args.add(accountName);
+        }
+        return queryContactIds(selection, args.toArray(new String[] {}), null, signal);
+    }
 
-        JSONArray contacts = populateContactArray(limit, populate, c);
-        return contacts;
+    /**
+     * @param page when not null, only the raw contacts after its cursor are
+     * selected, and the walk stops at the end of the page.
+     */
+    private Set<String> queryContactIds(String selection, String[] selectionArgs, ContactPage page,
+            CancellationSignal signal) {
+        int readLimit = Integer.MAX_VALUE;
+        if (page != null && page.getAfter() >= 0) {
+            String after = RawContacts._ID + " > " + page.getAfter();
+            selection = selection == null ? after : "(" + selection + ") AND " + after;
+        }
+        if (page != null) {
+            readLimit = page.getReadLimit();
+        }
+        Cursor idCursor = query(RawContactsEntity.CONTENT_URI,
+                new String[] { ContactsContract.RawContacts._ID },
+                selection,
+                selectionArgs,
+                ContactsContract.RawContacts._ID + " ASC", signal);
+
+        // Create a set of unique ids, in _ID order
+        Set<String> contactIds = new LinkedHashSet<String>();
+        int idColumn = -1;
+        try {
+            while (contactIds.size() < readLimit && idCursor.moveToNext()) {
+                throwIfCanceled(signal);
+                if (idColumn < 0) {
+                    idColumn = idCursor.getColumnIndex(ContactsContract.RawContacts._ID);
+
+                }
+                contactIds.add(idCursor.getString(idColumn));
+            }
+        } finally {
+            idCursor.close();
+        }
+        return contactIds;
+    }
+
+    /**
+     * Query the contacts provider, passing the cancellation signal down when
+     * the platform supports it (Jelly Bean and up).
+     */
+    private Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder, CancellationSignal signal) {
+        ContentResolver resolver = mApp.getActivity().getContentResolver();
+        if (signal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return resolver.query(uri, projection, selection, selectionArgs, sortOrder, signal);
+        }
+        throwIfCanceled(signal);
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
     }
 
-    private void addColumnsToFetch(HashSet<String> columnsToFetch,
-        String[] columnNames) {
-        columnsToFetch.add(BaseColumns._ID);
-        for (String columnName : columnNames) {
-            columnsToFetch.add(columnName);
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
         }
     }
 
@@ -291,11 +683,7 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 new String[] { id },
                 ContactsContract.RawContacts.Data._ID + " ASC");
 
-        HashMap<String, Boolean> populate = buildPopulationSet(
-                new JSONObject().put("desiredFields", desiredFields)
-                );
-
-        JSONArray contacts = populateContactArray(1, populate, c);
+        JSONArray contacts = populateContactArray(1, ContactFieldMask.of(desiredFields), c, null);
 
         if (contacts.length() == 1) {
             return contacts.getJSONObject(0);
@@ -308,26 +696,32 @@ public class ContactAccessorSdk5 extends ContactAccessor {
      * Creates an array of contacts from the cursor you pass in
      *
      * @param limit        max number of contacts for the array
-     * @param populate     whether or not you should populate a certain value
-     * @param c            the cursor
+     * @param mask         the fields and sub-fields to populate
+     * @param c            the cursor, closed on return
+     * @param signal       stops the walk when cancelled, may be null
      * @return             a JSONArray of contacts
+     * @throws OperationCanceledException if the signal has been cancelled.
      */
     private JSONArray populateContactArray(int limit,
-            HashMap<String, Boolean> populate, Cursor c) {
+            ContactFieldMask mask, Cursor c, CancellationSignal signal) {
+        try {
+            return readContactArray(limit, mask, c, signal);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Walks the cursor for {@link #populateContactArray}, leaving it open.
+     */
+    private JSONArray readContactArray(int limit,
+            ContactFieldMask mask, Cursor c, CancellationSignal signal) {
 
         String contactId = "";
         String rawId = "";
         String oldContactId = "";
         boolean newContact = true;
         String mimetype = "";
-        int version = 0;
-        boolean dirty = false;
-        String sourceId = "";
-        boolean deleted = false;
-        String sync1 = "";
-        String sync2 = "";
-        String sync3 = "";
-        String sync4 = "";
 
         JSONArray contacts = new JSONArray();
         JSONObject contact = new JSONObject();
@@ -363,17 +757,10 @@ public class ContactAccessorSdk5 extends ContactAccessor {
 
         if (c.getCount() > 0) {
             while (c.moveToNext() && (contacts.length() <= (limit - 1))) {
+                throwIfCanceled(signal);
                 try {
                     contactId = c.getString(colContactId); // may be null (if contact has been dissociated.)
                     rawId = c.getString(colRawContactId);
-                    version = c.getInt(colVersion);
-                    dirty = c.getInt(colDirty) == 1;
-                    sourceId = c.getString(colSourceId);
-                    deleted = c.getInt(colDeleted) == 1;
-                    sync1 = c.getString(colSync1);
-                    sync2 = c.getString(colSync2);
-                    sync3 = c.getString(colSync3);
-                    sync4 = c.getString(colSync4);
 
                     // If we are in the first row set the oldContactId
                     if (c.getPosition() == 0) {
@@ -411,14 +798,31 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                         newContact = false;
                         contact.put("id", contactId);
                         contact.put("rawId", rawId);
-                        contact.put("version", version);
-                        contact.put("dirty", dirty);
-                        contact.put("sourceId", sourceId);
-                        contact.put("deleted", deleted);
-                        contact.put("sync1", sync1);
-                        contact.put("sync2", sync2);
-                        contact.put("sync3", sync3);
-                        contact.put("sync4", sync4);
+                        // The sync columns are only read when asked for.
+                        if (colVersion >= 0) {
+                            contact.put("version", c.getInt(colVersion));
+                        }
+                        if (colDirty >= 0) {
+                            contact.put("dirty", c.getInt(colDirty) == 1);
+                        }
+                        if (colSourceId >= 0) {
+                            contact.put("sourceId", c.getString(colSourceId));
+                        }
+                        if (colDeleted >= 0) {
+                            contact.put("deleted", c.getInt(colDeleted) == 1);
+                        }
+                        if (colSync1 >= 0) {
+                            contact.put("sync1", c.getString(colSync1));
+                        }
+                        if (colSync2 >= 0) {
+                            contact.put("sync2", c.getString(colSync2));
+                        }
+                        if (colSync3 >= 0) {
+                            contact.put("sync3", c.getString(colSync3));
+                        }
+                        if (colSync4 >= 0) {
+                            contact.put("sync4", c.getString(colSync4));
+                        }
                     }
 
                     // Grab the mimetype of the current row as it will be used in a lot of comparisons
@@ -429,72 +833,73 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                         mimetype = "";
                     }
 
-                    if (mimetype.equals(ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE) && isRequired("name", populate)) {
+                    if (mimetype.equals(ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+                            && mask.has("displayName")) {
                         contact.put("displayName", c.getString(colDisplayName));
                     }
 
                     if (mimetype.equals(ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
-                            && isRequired("name", populate)) {
-                        contact.put("name", nameQuery(c));
+                            && mask.has("name")) {
+                        contact.put("name", nameQuery(c, mask));
                     }
                     else if (mimetype.equals(Phone.CONTENT_ITEM_TYPE)
-                            && isRequired("phoneNumbers", populate)) {
+                            && mask.has("phoneNumbers")) {
                         phones.put(
-                            contactFieldQuery(c, PHONE_TYPES, PHONE_FIELDS));
+                            contactFieldQuery(c, PHONE_TYPES, PHONE_FIELDS, "phoneNumbers", mask));
                     }
                     else if (mimetype.equals(Email.CONTENT_ITEM_TYPE)
-                            && isRequired("emails", populate)) {
+                            && mask.has("emails")) {
                         emails.put(
-                            contactFieldQuery(c, CONTACT_TYPES, EMAIL_FIELDS));
+                            contactFieldQuery(c, CONTACT_TYPES, EMAIL_FIELDS, "emails", mask));
                     }
                     else if (mimetype.equals(StructuredPostal.CONTENT_ITEM_TYPE)
-                            && isRequired("addresses", populate)) {
-                        addresses.put(addressQuery(c)); // TODO
+                            && mask.has("addresses")) {
+                        addresses.put(addressQuery(c, mask));
                     }
                     else if (mimetype.equals(Organization.CONTENT_ITEM_TYPE)
-                            && isRequired("organizations", populate)) {
-                        organizations.put(organizationQuery(c)); // TODO
+                            && mask.has("organizations")) {
+                        organizations.put(organizationQuery(c, mask));
                     }
                     else if (mimetype.equals(Im.CONTENT_ITEM_TYPE)
-                            && isRequired("ims", populate)) {
+                            && mask.has("ims")) {
                         ims.put(
-                            contactFieldQuery(c, IM_TYPES, IM_FIELDS));
+                            contactFieldQuery(c, IM_TYPES, IM_FIELDS, "ims", mask));
                     }
                     else if (mimetype.equals(Note.CONTENT_ITEM_TYPE)
-                            && isRequired("note", populate)) {
+                            && mask.has("note")) {
                         contact.put("note", c.getString(colNote));
                     }
                     else if (mimetype.equals(Nickname.CONTENT_ITEM_TYPE)
-                            && isRequired("nickname", populate)) {
+                            && mask.has("nickname")) {
                         contact.put("nickname", c.getString(colNickname));
                     }
                     else if (mimetype.equals(Website.CONTENT_ITEM_TYPE)
-                            && isRequired("urls", populate)) {
+                            && mask.has("urls")) {
                         websites.put(
-                            contactFieldQuery(c, CONTACT_TYPES, WEBSITE_FIELDS));
+                            contactFieldQuery(c, CONTACT_TYPES, WEBSITE_FIELDS, "urls", mask));
 
                     }
                     else if (mimetype.equals(Event.CONTENT_ITEM_TYPE)) {
-                        if (isRequired("birthday", populate) &&
+                        if (mask.has("birthday") &&
                             Event.TYPE_BIRTHDAY == c.getInt(colEventType) &&
                             !contact.has("birthday")) {
                             contact.put("birthday", c.getString(colBirthday));
-                        } else if (isRequired("about", populate)) {
+                        } else if (mask.has("about")) {
                             about.put(
-                                contactFieldQuery(c, EVENT_TYPES, EVENT_FIELDS));
+                                contactFieldQuery(c, EVENT_TYPES, EVENT_FIELDS, "about", mask));
                         }
                     }
                     else if (mimetype.equals(Photo.CONTENT_ITEM_TYPE)
-                            && isRequired("photos", populate)) {
-                        JSONObject photo = photoQuery(c, rawId);
+                            && mask.has("photos")) {
+                        JSONObject photo = photoQuery(c, rawId, mask);
                         if (photo != null) {
                             photos.put(photo);
                         }
                     }
                     else if (mimetype.equals(Relation.CONTENT_ITEM_TYPE)
-                        && isRequired("relations", populate)) {
+                        && mask.has("relations")) {
                         relations.put(
-                            contactFieldQuery(c, RELATION_TYPES, RELATION_FIELDS));
+                            contactFieldQuery(c, RELATION_TYPES, RELATION_FIELDS, "relations", mask));
                     }
 
                 } catch (JSONException e) {
@@ -512,7 +917,6 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                         emails, ims, websites, photos, relations, about));
             }
         }
-        c.close();
         return contacts;
     }
 
@@ -603,136 +1007,23 @@ public class ContactAccessorSdk5 extends ContactAccessor {
         return contact;
     }
 
-  /**
-   * Take the search criteria passed into the method and create a SQL WHERE clause.
-   * @param fields the properties to search against
-   * @param searchTerm the string to search for
-   * @return an object containing the selection and selection args
-   */
-  private WhereOptions buildWhereClause(JSONArray fields, String searchTerm, String accountType, String accountName) {
-
-    ArrayList<String> where = new ArrayList<String>();
-    ArrayList<String> whereArgs = new ArrayList<String>();
-
-    WhereOptions options = new WhereOptions();
-
-        /*
-         * Special case where the user wants all fields returned
-         */
-        if ("%".equals(searchTerm)) {
-            // Dummy to take every fields.
-            where.add("(" + RawContacts.DATA_SET + " LIKE ? )");
-            whereArgs.add(searchTerm);
-
-        } else {
-            if (isWildCardSearch(fields)) {
-                // TODO : duplicate some query ! (.value ones)
-                fields = new JSONArray(dbMap.keySet());
-            }
-
-            String key, baseKey;
-            try {
-                for (int i = 0; i < fields.length(); i++) {
-                    key = fields.getString(i);
-                    baseKey = key.split("\\.")[0];
-
-                    if (key.equals("id")) {
-                        where.add("(" + dbMap.get(key) + " = ? )");
-                        whereArgs.add(searchTerm.substring(1, searchTerm.length() - 1));
-                    }
-                    // mimtype fields
-                    else if (CONTENT_ITEM_TYPES_MAP.containsKey(baseKey)) {
-                        where.add("(" + dbMap.get(key) + " LIKE ? AND "
-                                + ContactsContract.Data.MIMETYPE + " = ? )");
-                        whereArgs.add(searchTerm);
-                        whereArgs.add(CONTENT_ITEM_TYPES_MAP.get(baseKey));
-                    }
-                    else {
-                        where.add("(" + dbMap.get(key) + " LIKE ? )");
-                        whereArgs.add(searchTerm);
-
-                    }
-
-                }
-            } catch (JSONException e) {
-                Log.e(LOG_TAG, e.getMessage(), e);
-            }
-        }
-
-        // Creating the where string
-        StringBuffer selection = new StringBuffer();
-        for (int i = 0; i < where.size(); i++) {
-            selection.append(where.get(i));
-            if (i != (where.size() - 1)) {
-                selection.append(" OR ");
-            }
-        }
-
-        if (accountType != null && accountName != null) {
-            selection.insert(0, '(');
-            selection.append(") AND (");
-
-            // TODO: hack for accounts only filters.
-            if ("%".equals(searchTerm)) {
-                selection = new StringBuffer();
-                selection.append("(");
-                whereArgs.clear();
-            }
-            selection.append(RawContacts.ACCOUNT_TYPE);
-            selection.append(" == ? )");
-            selection.append(" AND (");
-            selection.append(RawContacts.ACCOUNT_NAME);
-            selection.append(" == ? )");
-
-            whereArgs.add(accountType);
-            whereArgs.add(accountName);
-        }
-
-        options.setWhere(selection.toString());
-
-        // Creating the where args array
-        String[] selectionArgs = new String[whereArgs.size()];
-        for (int i = 0; i < whereArgs.size(); i++) {
-            selectionArgs[i] = whereArgs.get(i);
-        }
-        options.setWhereArgs(selectionArgs);
-
-
-        return options;
-    }
-
-    /**
-     * If the user passes in the '*' wildcard character for search then they want all fields for each contact
-     *
-     * @param fields
-     * @return true if wildcard search requested, false otherwise
-     */
-    private boolean isWildCardSearch(JSONArray fields) {
-        // Only do a wildcard search if we are passed ["*"]
-        if (fields.length() == 1) {
-            try {
-                if ("*".equals(fields.getString(0))) {
-                    return true;
-                }
-            } catch (JSONException e) {
-                return false;
-            }
-        }
-        return false;
-    }
-
     /**
     * Create a ContactOrganization JSONObject
     * @param cursor the current database row
     * @return a JSONObject representing a ContactOrganization
     */
-    private JSONObject organizationQuery(Cursor cursor) {
-        JSONObject organization = contactFieldQuery(cursor, ORG_TYPES, ORG_FIELDS);
+    private JSONObject organizationQuery(Cursor cursor, ContactFieldMask mask) {
+        JSONObject organization = contactFieldQuery(cursor, ORG_TYPES, ORG_FIELDS, "organizations", mask);
         try {
-            organization.remove("value");
-            organization.put("department", cursor.getString(cursor.getColumnIndex(Organization.DEPARTMENT)));
-            organization.put("name", cursor.getString(cursor.getColumnIndex(Organization.COMPANY)));
-            organization.put("title", cursor.getString(cursor.getColumnIndex(Organization.TITLE)));
+            if (mask.has("organizations", "department")) {
+                organization.put("department", cursor.getString(cursor.getColumnIndex(Organization.DEPARTMENT)));
+            }
+            if (mask.has("organizations", "name")) {
+                organization.put("name", cursor.getString(cursor.getColumnIndex(Organization.COMPANY)));
+            }
+            if (mask.has("organizations", "title")) {
+                organization.put("title", cursor.getString(cursor.getColumnIndex(Organization.TITLE)));
+            }
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
         }
@@ -744,35 +1035,53 @@ public class ContactAccessorSdk5 extends ContactAccessor {
      * @param cursor the current database row
      * @return a JSONObject representing a ContactAddress
      */
-    private JSONObject addressQuery(Cursor cursor) {
-        JSONObject address = contactFieldQuery(cursor, CONTACT_TYPES, ADDRESS_FIELDS);
+    private JSONObject addressQuery(Cursor cursor, ContactFieldMask mask) {
+        JSONObject address = contactFieldQuery(cursor, CONTACT_TYPES, ADDRESS_FIELDS, "addresses", mask);
         try {
-            address.remove("value");
-            address.put("formatted", cursor.getString(cursor.getColumnIndex(StructuredPostal.FORMATTED_ADDRESS)));
-            address.put("streetAddress", cursor.getString(cursor.getColumnIndex(StructuredPostal.STREET)));
-            address.put("locality", cursor.getString(cursor.getColumnIndex(StructuredPostal.CITY)));
-            address.put("region", cursor.getString(cursor.getColumnIndex(StructuredPostal.REGION)));
-            address.put("postalCode", cursor.getString(cursor.getColumnIndex(StructuredPostal.POSTCODE)));
-            address.put("country", cursor.getString(cursor.getColumnIndex(StructuredPostal.COUNTRY)));
+            putIfWanted(address, cursor, StructuredPostal.FORMATTED_ADDRESS, "addresses", "formatted", mask);
+            putIfWanted(address, cursor, StructuredPostal.STREET, "addresses", "streetAddress", mask);
+            putIfWanted(address, cursor, StructuredPostal.CITY, "addresses", "locality", mask);
+            putIfWanted(address, cursor, StructuredPostal.REGION, "addresses", "region", mask);
+            putIfWanted(address, cursor, StructuredPostal.POSTCODE, "addresses", "postalCode", mask);
+            putIfWanted(address, cursor, StructuredPostal.COUNTRY, "addresses", "country", mask);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
         }
         return address;
     }
 
+    /**
+     * Put a column of the current row in a JSONObject, if the mask has its sub-field.
+     */
+    private static void putIfWanted(JSONObject object, Cursor cursor, String column,
+            String field, String subField, ContactFieldMask mask) throws JSONException {
+        if (mask.has(field, subField)) {
+            object.put(subField, cursor.getString(cursor.getColumnIndex(column)));
+        }
+    }
+
+    /**
+     * @return the value of a column of the current row, null if it has not been read.
+     */
+    private static String getString(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index < 0 ? null : cursor.getString(index);
+    }
+
     /**
      * Create a ContactName JSONObject
      * @param cursor the current database row
+     * @param mask the sub-fields of the name to populate
      * @return a JSONObject representing a ContactName
      */
-    private JSONObject nameQuery(Cursor cursor) {
+    private JSONObject nameQuery(Cursor cursor, ContactFieldMask mask) {
         JSONObject contactName = new JSONObject();
         try {
-            String familyName = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME));
-            String givenName = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME));
-            String middleName = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME));
-            String honorificPrefix = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.PREFIX));
-            String honorificSuffix = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.StructuredName.SUFFIX));
+            String familyName = getString(cursor, ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME);
+            String givenName = getString(cursor, ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME);
+            String middleName = getString(cursor, ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME);
+            String honorificPrefix = getString(cursor, ContactsContract.CommonDataKinds.StructuredName.PREFIX);
+            String honorificSuffix = getString(cursor, ContactsContract.CommonDataKinds.StructuredName.SUFFIX);
 
             // Create the formatted name
             StringBuffer formatted = new StringBuffer("");
@@ -792,31 +1101,55 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 formatted.append(" " + honorificSuffix);
             }
 
-            contactName.put("familyName", familyName);
-            contactName.put("givenName", givenName);
-            contactName.put("middleName", middleName);
-            contactName.put("honorificPrefix", honorificPrefix);
-            contactName.put("honorificSuffix", honorificSuffix);
-            contactName.put("formatted", formatted);
+            if (mask.has("name", "familyName")) {
+                contactName.put("familyName", familyName);
+            }
+            if (mask.has("name", "givenName")) {
+                contactName.put("givenName", givenName);
+            }
+            if (mask.has("name", "middleName")) {
+                contactName.put("middleName", middleName);
+            }
+            if (mask.has("name", "honorificPrefix")) {
+                contactName.put("honorificPrefix", honorificPrefix);
+            }
+            if (mask.has("name", "honorificSuffix")) {
+                contactName.put("honorificSuffix", honorificSuffix);
+            }
+            if (mask.has("name", "formatted")) {
+                contactName.put("formatted", formatted);
+            }
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
         }
         return contactName;
     }
 
+    /**
+     * Create a ContactField JSONObject, with the sub-fields of the mask
+     * @param field the contact field (phoneNumbers...)
+     */
     private JSONObject contactFieldQuery(Cursor c,
-        SparseArray<String> typesMap, String[] fieldNames) {
+        SparseArray<String> typesMap, String[] fieldNames, String field, ContactFieldMask mask) {
         JSONObject contactField = new JSONObject();
         try {
-            contactField.put("id", c.getString(c.getColumnIndex(BaseColumns._ID)));
-            contactField.put("pref", false); // Android does not store pref attribute
-            contactField.put("value", c.getString(c.getColumnIndex(fieldNames[0])));
-            String type = getType(typesMap, c.getInt(c.getColumnIndex(fieldNames[1])));
+            if (mask.has(field, "id")) {
+                contactField.put("id", c.getString(c.getColumnIndex(BaseColumns._ID)));
+            }
+            if (mask.has(field, "pref")) {
+                contactField.put("pref", false); // Android does not store pref attribute
+            }
+            if (mask.has(field, "value")) {
+                contactField.put("value", c.getString(c.getColumnIndex(fieldNames[0])));
+            }
+            if (mask.has(field, "type")) {
+                String type = getType(typesMap, c.getInt(c.getColumnIndex(fieldNames[1])));
 
-            if ("custom".equals(type)) {
-                type = c.getString(c.getColumnIndex(fieldNames[2]));
+                if ("custom".equals(type)) {
+                    type = c.getString(c.getColumnIndex(fieldNames[2]));
+                }
+                contactField.put("type", type);
             }
-            contactField.put("type", type);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
         } catch (Exception excp) {
@@ -830,12 +1163,18 @@ public class ContactAccessorSdk5 extends ContactAccessor {
      * @param contactId
      * @return a JSONObgject representing a ContactField
      */
-    private JSONObject photoQuery(Cursor cursor, String rawContactId) {
+    private JSONObject photoQuery(Cursor cursor, String rawContactId, ContactFieldMask mask) {
         JSONObject photo = new JSONObject();
         try {
-            photo.put("id", cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Photo._ID)));
-            photo.put("pref", false);
-            photo.put("type", "base64");
+            if (mask.has("photos", "id")) {
+                photo.put("id", cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Photo._ID)));
+            }
+            if (mask.has("photos", "pref")) {
+                photo.put("pref", false);
+            }
+            if (mask.has("photos", "type")) {
+                photo.put("type", "base64");
+            }
 
             byte[] photoBlob = cursor.getBlob(cursor.getColumnIndex(
                     ContactsContract.CommonDataKinds.Photo.PHOTO));
@@ -843,7 +1182,9 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 return null;
             }
 
-            photo.put("value", Base64.encodeToString(photoBlob, Base64.DEFAULT));
+            if (mask.has("photos", "value")) {
+                photo.put("value", Base64.encodeToString(photoBlob, Base64.DEFAULT));
+            }
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
@@ -873,6 +1214,23 @@ public class ContactAccessorSdk5 extends ContactAccessor {
      * @return the id if the contact is successfully saved, null otherwise.
      */
     public String save(JSONObject contact, String accountType, String accountName,  boolean callerIsSyncAdapter, boolean resetFields) {
+        String[] account = resolveAccount(accountType, accountName);
+        accountType = account[0];
+        accountName = account[1];
+
+        Log.d(LOG_TAG, "accountType: " + accountType + ", accountName: " + accountName);
+        return saveContact(contact, accountType, accountName, callerIsSyncAdapter, resetFields);
+
+    }
+
+    /**
+     * The account new contacts are saved in: the given one, or when it is
+     * incomplete the only account of the device, else an Exchange, a Google,
+     * then any account named by an email address.
+     *
+     * @return {accountType, accountName}, both null for the device only.
+     */
+    String[] resolveAccount(String accountType, String accountName) {
         if (accountType == null || accountName == null) {
             AccountManager mgr = AccountManager.get(mApp.getActivity());
             Account[] accounts = mgr.getAccounts();
@@ -911,10 +1269,7 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 }
             }
         }
-
-        Log.d(LOG_TAG, "accountType: " + accountType + ", accountName: " + accountName);
-        return saveContact(contact, accountType, accountName, callerIsSyncAdapter, resetFields);
-
+        return new String[] { accountType, accountName };
     }
 
     private String saveContact(JSONObject contact, String accountType, String accountName, boolean callerIsSyncAdapter, boolean resetFields) {
@@ -931,6 +1286,56 @@ public class ContactAccessorSdk5 extends ContactAccessor {
 
         // Create a list of attributes to add to the contact database
         ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        addSaveOps(ops, contact, rawId, accountType, accountName, callerIsSyncAdapter, resetFields);
+
+        boolean retVal = true;
+        ContentProviderResult[] cpResults = null;
+        //Add contact
+        try {
+            cpResults = mApp.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
+
+        } catch (RemoteException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            Log.e(LOG_TAG, Log.getStackTraceString(e), e);
+            retVal = false;
+        } catch (OperationApplicationException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            Log.e(LOG_TAG, Log.getStackTraceString(e), e);
+            retVal = false;
+        }
+
+        String res = null;
+        if (rawId == -1) {
+            if (cpResults != null && cpResults.length >= 0) {
+                res = cpResults[0].uri.getLastPathSegment();
+            }
+        } else if (retVal) {
+            res = String.valueOf(rawId);
+        }
+
+        return res;
+
+    }
+
+    /**
+     * Add the operations inserting a new contact to a batch: the ones save
+     * applies, in the given account as it is.
+     */
+    public void addInsertOps(ArrayList<ContentProviderOperation> ops, JSONObject contact,
+            String accountType, String accountName) {
+        addSaveOps(ops, contact, -1, accountType, accountName, false, false);
+    }
+
+    /**
+     * Add the operations saving a contact to a batch, the insert or update
+     * of its raw contact first.
+     *
+     * @param rawId the raw contact to update, -1 to insert a new one
+     */
+    private void addSaveOps(ArrayList<ContentProviderOperation> ops, JSONObject contact, int rawId,
+            String accountType, String accountName, boolean callerIsSyncAdapter, boolean resetFields) {
+        // The index of the raw contact insert, for the back references of its data
+        int rawIndex = ops.size();
 
         Uri contentUri = ContactsContract.Data.CONTENT_URI;
 
@@ -1036,7 +1441,7 @@ public class ContactAccessorSdk5 extends ContactAccessor {
             if (rawId == -1) {
                 builder = ContentProviderOperation.newInsert(contentUri);
                 builder.withValueBackReference(
-                    ContactsContract.Data.RAW_CONTACT_ID, 0);
+                    ContactsContract.Data.RAW_CONTACT_ID, rawIndex);
                 builder.withValue(
                     ContactsContract.Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE);
             } else {
@@ -1055,12 +1460,12 @@ public class ContactAccessorSdk5 extends ContactAccessor {
         try {
             // Modify note
             String note = getJsonString(contact, "note");
-            addContactFieldOps(ops, contentUri, rawId, resetFields,
+            addContactFieldOps(ops, contentUri, rawId, rawIndex, resetFields,
                 note, Note.CONTENT_ITEM_TYPE, Note.NOTE);
 
              // Modify nickname
             String nickname = getJsonString(contact, "nickname");
-            addContactFieldOps(ops, contentUri, rawId, resetFields,
+            addContactFieldOps(ops, contentUri, rawId, rawIndex, resetFields,
                 nickname, Nickname.CONTENT_ITEM_TYPE, Nickname.NAME);
 
         } catch (JSONException e) {
@@ -1096,7 +1501,7 @@ public class ContactAccessorSdk5 extends ContactAccessor {
             JSONArray items = null;
             try {
                 items = contact.optJSONArray(key);
-                addContactFieldOps(ops, contentUri, rawId, resetFields,
+                addContactFieldOps(ops, contentUri, rawId, rawIndex, resetFields,
                     items,
                     CONTENT_ITEM_TYPES_MAP.get(key),
                     TYPES_MAP.get(key),
@@ -1105,35 +1510,6 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 Log.d(LOG_TAG, "Could not get " + key);
             }
         }
-
-
-        boolean retVal = true;
-        ContentProviderResult[] cpResults = null;
-        //Add contact
-        try {
-            cpResults = mApp.getActivity().getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
-
-        } catch (RemoteException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            Log.e(LOG_TAG, Log.getStackTraceString(e), e);
-            retVal = false;
-        } catch (OperationApplicationException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            Log.e(LOG_TAG, Log.getStackTraceString(e), e);
-            retVal = false;
-        }
-
-        String res = null;
-        if (rawId == -1) {
-            if (cpResults != null && cpResults.length >= 0) {
-                res = cpResults[0].uri.getLastPathSegment();
-            }
-        } else if (retVal) {
-            res = String.valueOf(rawId);
-        }
-
-        return res;
-
     }
 
 
@@ -1163,6 +1539,15 @@ public class ContactAccessorSdk5 extends ContactAccessor {
             contentValues.put(Photo.PHOTO, bytes);
             return contentValues;
 
+        } else if (mimetype == Phone.CONTENT_ITEM_TYPE) {
+            String number = getJsonString(item, "value");
+            contentValues.put(fieldNames[0], number);
+            // Lets the provider (and the "phone" match mode) compare numbers
+            // whatever the formatting they were entered with.
+            String normalized = phoneNumbers.toE164(number);
+            if (normalized != null) {
+                contentValues.put(Phone.NORMALIZED_NUMBER, normalized);
+            }
         } else {
             contentValues.put(fieldNames[0], getJsonString(item, "value"));
         }
@@ -1294,14 +1679,14 @@ public class ContactAccessorSdk5 extends ContactAccessor {
     }
 
 
-    private void addContactFieldOps(ArrayList<ContentProviderOperation> ops, Uri contentUri, int rawId, boolean resetFields,
-        String value, String contentItemType, String fieldName) throws JSONException {
+    private void addContactFieldOps(ArrayList<ContentProviderOperation> ops, Uri contentUri, int rawId, int rawIndex,
+        boolean resetFields, String value, String contentItemType, String fieldName) throws JSONException {
         if (value != null) {
             ContentProviderOperation.Builder builder;
             if (rawId == -1) {
                 builder = ContentProviderOperation.newInsert(contentUri);
                 builder.withValueBackReference(
-                    ContactsContract.Data.RAW_CONTACT_ID, 0);
+                    ContactsContract.Data.RAW_CONTACT_ID, rawIndex);
                 builder.withValue(
                     ContactsContract.Data.MIMETYPE, contentItemType);
             } else {
@@ -1322,8 +1707,9 @@ public class ContactAccessorSdk5 extends ContactAccessor {
         }
     }
 
-    private void addContactFieldOps(ArrayList<ContentProviderOperation> ops, Uri contentUri, int rawId, boolean resetFields,
-        JSONArray items, String contentItemType, SparseArray<String> typesMap, String[] fieldNames) throws JSONException {
+    private void addContactFieldOps(ArrayList<ContentProviderOperation> ops, Uri contentUri, int rawId, int rawIndex,
+        boolean resetFields, JSONArray items, String contentItemType, SparseArray<String> typesMap,
+        String[] fieldNames) throws JSONException {
 
         // Delete all the old values :
         // if: it's an old contact, items are emptied or resetField is true.
@@ -1349,7 +1735,7 @@ public class ContactAccessorSdk5 extends ContactAccessor {
                 if (rawId == -1) {
                     ContentProviderOperation.Builder builder = ContentProviderOperation.newInsert(contentUri);
                     builder.withValueBackReference(
-                        ContactsContract.Data.RAW_CONTACT_ID, 0);
+                        ContactsContract.Data.RAW_CONTACT_ID, rawIndex);
                     contentValues.put(
                         ContactsContract.Data.MIMETYPE, contentItemType);
                     builder.withValues(contentValues);
@@ -1425,18 +1811,6 @@ public class ContactAccessorSdk5 extends ContactAccessor {
         return typesMap.get(type);
     }
 
-    static final String[] SYNC_FIELDS = new String[] {
-        ContactsContract.Data.MIMETYPE,
-        RawContacts.VERSION,
-        RawContacts.DIRTY,
-        RawContacts.DELETED,
-        RawContacts.SOURCE_ID,
-        RawContacts.SYNC1,
-        RawContacts.SYNC2,
-        RawContacts.SYNC3,
-        RawContacts.SYNC4
-    };
-
     static final String[] NAME_FIELDS = new String[] {
         StructuredName.DISPLAY_NAME,
         StructuredName.FAMILY_NAME,
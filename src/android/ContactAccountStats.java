@@ -0,0 +1,167 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Photo;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * Counts the raw contacts of each account: total, dirty, deleted and with a
+ * photo, without reading any contact.
+ * <p>
+ * The provider does not take GROUP BY or COUNT(*) in a projection, so the
+ * counts are summed over two narrow queries: the account and flags of every
+ * raw contact, and the raw contact ids of the photo rows.
+ */
+public class ContactAccountStats {
+
+    private static final String[] RAW_PROJECTION = new String[] {
+        RawContacts._ID, RawContacts.ACCOUNT_TYPE, RawContacts.ACCOUNT_NAME, RawContacts.DIRTY, RawContacts.DELETED
+    };
+
+    private final ContentResolver resolver;
+
+    public ContactAccountStats(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return {total, dirty, deleted, withPhoto, accounts: [{accountType,
+     * accountName, total, dirty, deleted, withPhoto}]}: total and withPhoto
+     * count the raw contacts which are not deleted, dirty the ones waiting to
+     * be synced (deletions included), deleted the ones waiting to be removed
+     * by their sync adapter.
+     */
+    public JSONObject compute(CancellationSignal signal) throws JSONException {
+        Set<Long> withPhoto = new HashSet<Long>();
+        Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI,
+                new String[] { ContactsContract.Data.RAW_CONTACT_ID },
+                ContactsContract.Data.MIMETYPE + " = ? AND (" + Photo.PHOTO + " IS NOT NULL OR "
+                    + Photo.PHOTO_FILE_ID + " IS NOT NULL)",
+                new String[] { Photo.CONTENT_ITEM_TYPE }, null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    withPhoto.add(c.getLong(0));
+                }
+            } finally {
+                c.close();
+            }
+        }
+        throwIfCanceled(signal);
+
+        Map<String, Counts> accounts = new LinkedHashMap<String, Counts>();
+        Counts all = new Counts(null, null);
+        c = resolver.query(RawContacts.CONTENT_URI, RAW_PROJECTION, null, null,
+                RawContacts.ACCOUNT_TYPE + ", " + RawContacts.ACCOUNT_NAME);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    throwIfCanceled(signal);
+                    String accountType = c.getString(1);
+                    String accountName = c.getString(2);
+                    String key = accountType + "\u0000" + accountName;
+                    Counts counts = accounts.get(key);
+                    if (counts == null) {
+                        counts = new Counts(accountType, accountName);
+                        accounts.put(key, counts);
+                    }
+                    boolean dirty = c.getInt(3) != 0;
+                    boolean deleted = c.getInt(4) != 0;
+                    boolean photo = withPhoto.contains(c.getLong(0));
+                    counts.add(dirty, deleted, photo);
+                    all.add(dirty, deleted, photo);
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        JSONObject result = all.toJSON(false);
+        JSONArray list = new JSONArray();
+        for (Counts counts : accounts.values()) {
+            list.put(counts.toJSON(true));
+        }
+        result.put("accounts", list);
+        return result;
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    private static class Counts {
+        final String accountType;
+        final String accountName;
+        int total;
+        int dirty;
+        int deleted;
+        int withPhoto;
+
+        Counts(String accountType, String accountName) {
+            this.accountType = accountType;
+            this.accountName = accountName;
+        }
+
+        void add(boolean isDirty, boolean isDeleted, boolean hasPhoto) {
+            if (isDirty) {
+                dirty++;
+            }
+            if (isDeleted) {
+                deleted++;
+            } else {
+                total++;
+                if (hasPhoto) {
+                    withPhoto++;
+                }
+            }
+        }
+
+        JSONObject toJSON(boolean withAccount) throws JSONException {
+            JSONObject json = new JSONObject();
+            if (withAccount) {
+                // null for the contacts of the device only
+                json.put("accountType", accountType == null ? JSONObject.NULL : accountType);
+                json.put("accountName", accountName == null ? JSONObject.NULL : accountName);
+            }
+            json.put("total", total);
+            json.put("dirty", dirty);
+            json.put("deleted", deleted);
+            json.put("withPhoto", withPhoto);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Base64;
+
+/**
+ * Encodes a find result in a compact binary form, sent to the WebView as an
+ * ArrayBuffer instead of a JSON string. It is decoded by decodeBinary in
+ * www/contacts.js.
+ * <p>
+ * Layout: 'C' 'B' and the version byte, then the dictionary (a varint count
+ * of UTF-8 strings, each one prefixed by its varint length), then the root
+ * value. A value is a tag byte followed by:
+ * <ul>
+ * <li>NULL, FALSE, TRUE: nothing</li>
+ * <li>INT: a zigzag varint</li>
+ * <li>DOUBLE: 8 bytes, little-endian</li>
+ * <li>STRING: a varint length and UTF-8 bytes</li>
+ * <li>DICT_STRING: a varint index in the dictionary</li>
+ * <li>BYTES: a varint length and the raw bytes</li>
+ * <li>OBJECT: a varint count of (key index, value) pairs</li>
+ * <li>ARRAY: a varint count of values</li>
+ * <li>TABLE, an array of objects stored by column: a varint count of rows, a
+ * varint count of columns, then for each column its key index, a bitmap of
+ * the rows having it (bit i of byte i / 8, low bit first) and the values of
+ * those rows</li>
+ * </ul>
+ * The keys and the type labels ("mobile", "home", the accounts...) are
+ * written once, in the dictionary. The photos, which a find returns in
+ * Base64, are written as their raw bytes, with the type "bytes".
+ */
+public class ContactBinaryEncoder {
+
+    public static final int VERSION = 1;
+
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INT = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+    static final int DICT_STRING = 6;
+    static final int BYTES = 7;
+    static final int OBJECT = 8;
+    static final int ARRAY = 9;
+    static final int TABLE = 10;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The keys whose string values are labels, kept in the dictionary.
+    private static final Set<String> LABEL_KEYS = new LinkedHashSet<String>();
+    static {
+        LABEL_KEYS.add("type");
+        LABEL_KEYS.add("accountType");
+        LABEL_KEYS.add("accountName");
+    }
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+
+    private ContactBinaryEncoder() {
+    }
+
+    /**
+     * @param result a JSONArray of contacts, or a paged result {contacts, after}
+     * @return its binary form.
+     */
+    public static byte[] encode(Object result) throws JSONException {
+        ContactBinaryEncoder encoder = new ContactBinaryEncoder();
+        encoder.writeValue(null, null, result);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoder.body.size() + 1024);
+        out.write('C');
+        out.write('B');
+        out.write(VERSION);
+        writeVarint(out, encoder.strings.size());
+        for (String string : encoder.strings) {
+            writeString(out, string);
+        }
+        byte[] body = encoder.body.toByteArray();
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param parent the key of the array holding the value's object (photos...), may be null
+     * @param key the key of the value in its object, may be null
+     */
+    private void writeValue(String parent, String key, Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            body.write(NULL);
+        } else if (value instanceof Boolean) {
+            body.write(((Boolean) value) ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            body.write(INT);
+            long n = ((Number) value).longValue();
+            writeVarint(body, (n << 1) ^ (n >> 63));
+        } else if (value instanceof Number) {
+            body.write(DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int i = 0; i < 8; i++) {
+                body.write((int) (bits >>> (8 * i)));
+            }
+        } else if (value instanceof JSONObject) {
+            writeObject(key, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray(key, (JSONArray) value);
+        } else {
+            writeStringValue(parent, key, value.toString());
+        }
+    }
+
+    private void writeStringValue(String parent, String key, String value) {
+        if ("photos".equals(parent)) {
+            if ("type".equals(key) && "base64".equals(value)) {
+                value = "bytes";
+            } else if ("value".equals(key)) {
+                byte[] photo = null;
+                try {
+                    photo = Base64.decode(value, Base64.DEFAULT);
+                } catch (IllegalArgumentException e) {
+                    // Not Base64 after all: sent as it is
+                }
+                if (photo != null) {
+                    body.write(BYTES);
+                    writeVarint(body, photo.length);
+                    body.write(photo, 0, photo.length);
+                    return;
+                }
+            }
+        }
+        if (key != null && LABEL_KEYS.contains(key)) {
+            body.write(DICT_STRING);
+            writeVarint(body, indexOf(value));
+        } else {
+            body.write(STRING);
+            writeString(body, value);
+        }
+    }
+
+    private void writeObject(String key, JSONObject object) throws JSONException {
+        body.write(OBJECT);
+        writeVarint(body, object.length());
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String name = keys.next();
+            writeVarint(body, indexOf(name));
+            writeValue(key, name, object.get(name));
+        }
+    }
+
+    private void writeArray(String key, JSONArray array) throws JSONException {
+        int rows = array.length();
+        boolean table = rows > 0;
+        for (int i = 0; i < rows && table; i++) {
+            table = array.get(i) instanceof JSONObject;
+        }
+        if (!table) {
+            body.write(ARRAY);
+            writeVarint(body, rows);
+            for (int i = 0; i < rows; i++) {
+                writeValue(null, null, array.get(i));
+            }
+            return;
+        }
+
+        Set<String> columns = new LinkedHashSet<String>();
+        for (int i = 0; i < rows; i++) {
+            Iterator<String> keys = array.getJSONObject(i).keys();
+            while (keys.hasNext()) {
+                columns.add(keys.next());
+            }
+        }
+        body.write(TABLE);
+        writeVarint(body, rows);
+        writeVarint(body, columns.size());
+        byte[] present = new byte[(rows + 7) / 8];
+        for (String column : columns) {
+            writeVarint(body, indexOf(column));
+            for (int i = 0; i < rows; i++) {
+                if (array.getJSONObject(i).has(column)) {
+                    present[i >> 3] |= 1 << (i & 7);
+                } else {
+                    present[i >> 3] &= ~(1 << (i & 7));
+                }
+            }
+            body.write(present, 0, present.length);
+            for (int i = 0; i < rows; i++) {
+                JSONObject row = array.getJSONObject(i);
+                if (row.has(column)) {
+                    // The rows of a table keep the key of the array, for the photos
+                    writeValue(key, column, row.get(column));
+                }
+            }
+        }
+    }
+
+    private int indexOf(String string) {
+        Integer index = dictionary.get(string);
+        if (index == null) {
+            index = strings.size();
+            dictionary.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
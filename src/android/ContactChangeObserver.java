@@ -0,0 +1,105 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.ContactsContract;
+
+/**
+ * Watches the contacts provider and tells the plugin local stores (search
+ * index, ...) that contacts changed.
+ * <p>
+ * Provider notifications come in bursts (one per touched table, per batch
+ * operation), so they are debounced: listeners are called once, on the
+ * observer thread, when no notification came for DEBOUNCE_MS. Listeners
+ * should only flag their state and schedule the real work.
+ */
+public class ContactChangeObserver {
+
+    public interface Listener {
+        void onContactsChanged();
+    }
+
+    private static final long DEBOUNCE_MS = 500;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+    private ContentResolver resolver;
+
+    private final Runnable dispatch = new Runnable() {
+        public void run() {
+            for (Listener listener : listeners) {
+                listener.onContactsChanged();
+            }
+        }
+    };
+
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start watching the provider. Does nothing if already started.
+     */
+    public synchronized void start(ContentResolver resolver) {
+        if (observer != null) {
+            return;
+        }
+        thread = new HandlerThread("contacts-observer");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                handler.removeCallbacks(dispatch);
+                handler.postDelayed(dispatch, DEBOUNCE_MS);
+            }
+        };
+        this.resolver = resolver;
+        resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true, observer);
+    }
+
+    public synchronized void stop() {
+        if (observer == null) {
+            return;
+        }
+        resolver.unregisterContentObserver(observer);
+        handler.removeCallbacks(dispatch);
+        thread.quit();
+        observer = null;
+        handler = null;
+        thread = null;
+        resolver = null;
+    }
+}
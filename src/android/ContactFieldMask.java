@@ -0,0 +1,270 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.provider.BaseColumns;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Event;
+import android.provider.ContactsContract.CommonDataKinds.Im;
+import android.provider.ContactsContract.CommonDataKinds.Nickname;
+import android.provider.ContactsContract.CommonDataKinds.Note;
+import android.provider.ContactsContract.CommonDataKinds.Organization;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.Photo;
+import android.provider.ContactsContract.CommonDataKinds.Relation;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * The contact fields and sub-fields a find returns, from its desiredFields:
+ * "phoneNumbers" is every sub-field of the phone numbers, while
+ * "phoneNumbers.value" is only their value. The mask gives the columns to
+ * read, and the decoder only writes the fields it holds.
+ * <p>
+ * The raw contact sync fields (version, dirty, deleted, sourceId, sync1 to
+ * sync4) are returned along with the desiredFields, as they always were,
+ * unless the syncFields option is false: then only those asked for by name
+ * are. Without desiredFields, a find returns everything, as it always did.
+ * The id and rawId of the contacts are always returned.
+ */
+public class ContactFieldMask {
+
+    /** The sub-fields of each field, with the columns they are read from. */
+    private static final Map<String, Map<String, String[]>> FIELDS = new LinkedHashMap<String, Map<String, String[]>>();
+
+    /** The sync fields, with their column. */
+    private static final Map<String, String> SYNC_COLUMNS = new LinkedHashMap<String, String>();
+
+    // The sub-field of the fields which are a single value.
+    static final String VALUE = "";
+
+    static {
+        field("displayName").put(VALUE, columns(StructuredName.DISPLAY_NAME));
+        Map<String, String[]> name = field("name");
+        name.put("familyName", columns(StructuredName.FAMILY_NAME));
+        name.put("givenName", columns(StructuredName.GIVEN_NAME));
+        name.put("middleName", columns(StructuredName.MIDDLE_NAME));
+        name.put("honorificPrefix", columns(StructuredName.PREFIX));
+        name.put("honorificSuffix", columns(StructuredName.SUFFIX));
+        name.put("formatted", columns(StructuredName.PREFIX, StructuredName.GIVEN_NAME,
+                StructuredName.MIDDLE_NAME, StructuredName.FAMILY_NAME, StructuredName.SUFFIX));
+        field("nickname").put(VALUE, columns(Nickname.NAME));
+        contactField("phoneNumbers", Phone.NUMBER, Phone.TYPE, Phone.LABEL);
+        contactField("emails", Email.ADDRESS, Email.TYPE, Email.LABEL);
+        Map<String, String[]> addresses = contactField("addresses", null,
+                StructuredPostal.TYPE, StructuredPostal.LABEL);
+        addresses.put("formatted", columns(StructuredPostal.FORMATTED_ADDRESS));
+        addresses.put("streetAddress", columns(StructuredPostal.STREET));
+        addresses.put("locality", columns(StructuredPostal.CITY));
+        addresses.put("region", columns(StructuredPostal.REGION));
+        addresses.put("postalCode", columns(StructuredPostal.POSTCODE));
+        addresses.put("country", columns(StructuredPostal.COUNTRY));
+        contactField("ims", Im.DATA, Im.PROTOCOL, Im.CUSTOM_PROTOCOL);
+        Map<String, String[]> organizations = contactField("organizations", null,
+                Organization.TYPE, Organization.LABEL);
+        organizations.put("name", columns(Organization.COMPANY));
+        organizations.put("department", columns(Organization.DEPARTMENT));
+        organizations.put("title", columns(Organization.TITLE));
+        field("birthday").put(VALUE, columns(Event.START_DATE, Event.TYPE));
+        field("note").put(VALUE, columns(Note.NOTE));
+        contactField("urls", Website.URL, Website.TYPE, Website.LABEL);
+        // The blob is read whatever the sub-fields: photo rows without one are skipped.
+        Map<String, String[]> photos = field("photos");
+        photos.put("id", columns(BaseColumns._ID, Photo.PHOTO));
+        photos.put("pref", columns(Photo.PHOTO));
+        photos.put("type", columns(Photo.PHOTO));
+        photos.put("value", columns(Photo.PHOTO));
+        field("categories");
+        contactField("about", Event.START_DATE, Event.TYPE, Event.LABEL);
+        contactField("relations", Relation.NAME, Relation.TYPE, Relation.LABEL);
+
+        SYNC_COLUMNS.put("version", RawContacts.VERSION);
+        SYNC_COLUMNS.put("dirty", RawContacts.DIRTY);
+        SYNC_COLUMNS.put("deleted", RawContacts.DELETED);
+        SYNC_COLUMNS.put("sourceId", RawContacts.SOURCE_ID);
+        SYNC_COLUMNS.put("sync1", RawContacts.SYNC1);
+        SYNC_COLUMNS.put("sync2", RawContacts.SYNC2);
+        SYNC_COLUMNS.put("sync3", RawContacts.SYNC3);
+        SYNC_COLUMNS.put("sync4", RawContacts.SYNC4);
+    }
+
+    private static Map<String, String[]> field(String field) {
+        Map<String, String[]> subFields = new LinkedHashMap<String, String[]>();
+        FIELDS.put(field, subFields);
+        return subFields;
+    }
+
+    /**
+     * A ContactField: {id, pref, value, type}, the type being a label when custom.
+     */
+    private static Map<String, String[]> contactField(String field, String value, String type, String label) {
+        Map<String, String[]> subFields = field(field);
+        subFields.put("id", columns(BaseColumns._ID));
+        subFields.put("pref", columns());
+        if (value != null) {
+            subFields.put("value", columns(value));
+        }
+        subFields.put("type", columns(type, label));
+        return subFields;
+    }
+
+    private static String[] columns(String... columns) {
+        return columns;
+    }
+
+    /** Everything, as a find without desiredFields returns. */
+    public static final ContactFieldMask ALL;
+    static {
+        Map<String, Set<String>> all = new TreeMap<String, Set<String>>();
+        for (Map.Entry<String, Map<String, String[]>> field : FIELDS.entrySet()) {
+            all.put(field.getKey(), new TreeSet<String>(field.getValue().keySet()));
+        }
+        ALL = new ContactFieldMask(all, new TreeSet<String>(SYNC_COLUMNS.keySet()));
+    }
+
+    // field -> the sub-fields returned
+    private final Map<String, Set<String>> fields;
+    private final Set<String> sync;
+    private final String key;
+
+    private ContactFieldMask(Map<String, Set<String>> fields, Set<String> sync) {
+        this.fields = fields;
+        this.sync = sync;
+        this.key = fields + "|" + sync;
+    }
+
+    /**
+     * @param options find options, with the desiredFields and syncFields; may be null
+     * @return the mask of the desiredFields, {@link #ALL} without any. Unknown
+     * fields are ignored, an unknown sub-field stands for the whole field.
+     */
+    public static ContactFieldMask of(JSONObject options) {
+        JSONArray desiredFields = options == null ? null : options.optJSONArray("desiredFields");
+        return of(desiredFields, options == null || options.optBoolean("syncFields", true));
+    }
+
+    /**
+     * @return the mask of the desiredFields, with every sync field.
+     */
+    public static ContactFieldMask of(JSONArray desiredFields) {
+        return of(desiredFields, true);
+    }
+
+    /**
+     * @param syncFields return every sync field, not only those in desiredFields
+     */
+    public static ContactFieldMask of(JSONArray desiredFields, boolean syncFields) {
+        if (desiredFields == null || desiredFields.length() == 0) {
+            return ALL;
+        }
+        Map<String, Set<String>> fields = new TreeMap<String, Set<String>>();
+        Set<String> sync = new TreeSet<String>();
+        if (syncFields) {
+            sync.addAll(SYNC_COLUMNS.keySet());
+        }
+        for (int i = 0; i < desiredFields.length(); i++) {
+            String desired = desiredFields.optString(i);
+            int dot = desired.indexOf('.');
+            String field = dot < 0 ? desired : desired.substring(0, dot);
+            String subField = dot < 0 ? null : desired.substring(dot + 1);
+            if (SYNC_COLUMNS.containsKey(field)) {
+                sync.add(field);
+                continue;
+            }
+            Map<String, String[]> known = FIELDS.get(field);
+            if (known == null) {
+                continue;
+            }
+            if (!fields.containsKey(field)) {
+                fields.put(field, new TreeSet<String>());
+            }
+            if (subField == null || !known.containsKey(subField)) {
+                fields.get(field).addAll(known.keySet());
+                if (field.equals("name")) {
+                    // The whole name comes with the display name, as it always did.
+                    fields.put("displayName", new TreeSet<String>(Collections.singleton(VALUE)));
+                }
+            } else {
+                fields.get(field).add(subField);
+            }
+        }
+        return new ContactFieldMask(fields, sync);
+    }
+
+    /**
+     * @return true if some of the field is returned.
+     */
+    public boolean has(String field) {
+        return fields.containsKey(field);
+    }
+
+    /**
+     * @return true if this sub-field of the field is returned.
+     */
+    public boolean has(String field, String subField) {
+        Set<String> subFields = fields.get(field);
+        return subFields != null && subFields.contains(subField);
+    }
+
+    /**
+     * @return true if this raw contact sync field (version, dirty...) is returned.
+     */
+    public boolean hasSync(String field) {
+        return sync.contains(field);
+    }
+
+    /**
+     * @return the columns to read, besides the ids and the mimetype.
+     */
+    public Set<String> getColumns() {
+        Set<String> columns = new LinkedHashSet<String>();
+        for (Map.Entry<String, Set<String>> field : fields.entrySet()) {
+            Map<String, String[]> known = FIELDS.get(field.getKey());
+            for (String subField : field.getValue()) {
+                Collections.addAll(columns, known.get(subField));
+            }
+        }
+        for (String field : sync) {
+            columns.add(SYNC_COLUMNS.get(field));
+        }
+        return columns;
+    }
+
+    /**
+     * @return a key identifying the mask, for caches.
+     */
+    @Override
+    public String toString() {
+        return key;
+    }
+}
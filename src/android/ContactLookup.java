@@ -0,0 +1,313 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telephony.PhoneNumberUtils;
+
+/**
+ * Resolves many phone numbers and emails to contacts at once.
+ * <p>
+ * Values are first matched by batches, with a single Data query per batch on
+ * the normalized phone number or on the email address. The values left are
+ * matched with one more query each: the emails on their lower case address,
+ * by batches, and the phone numbers on their trailing digits, as PhoneLookup
+ * does, in a single pass over the stored numbers which could not be
+ * normalized (over all of them if a value could not be normalized either).
+ * The lookup costs a few queries whatever the number of values unknown.
+ */
+public class ContactLookup {
+
+    /** Stay well under the SQLite limit of 999 bound arguments. */
+    private static final int BATCH_SIZE = 500;
+
+    private final Context context;
+    private final ContactPhoneNumbers phoneNumbers;
+
+    public ContactLookup(Context context, ContactPhoneNumbers phoneNumbers) {
+        this.context = context;
+        this.phoneNumbers = phoneNumbers;
+    }
+
+    /**
+     * Resolve phone numbers and emails to the raw contacts having them.
+     *
+     * @param phones phone numbers, in any format
+     * @param emails email addresses
+     * @param signal stops the lookup between two queries, may be null
+     * @return a map from each given value to the array of its matches, empty if
+     * none; a match is {rawId, contactId, displayName, photo}.
+     */
+    public JSONObject lookup(JSONArray phones, JSONArray emails, CancellationSignal signal) throws JSONException {
+        // value -> contact id -> match, in the order the values were given
+        Map<String, Map<String, Match>> matches = new LinkedHashMap<String, Map<String, Match>>();
+
+        Map<String, List<String>> byNormalized = new HashMap<String, List<String>>();
+        for (String phone : toSet(phones)) {
+            matches.put(phone, new LinkedHashMap<String, Match>());
+            String e164 = phoneNumbers.toE164(phone);
+            if (e164 != null) {
+                List<String> values = byNormalized.get(e164);
+                if (values == null) {
+                    values = new ArrayList<String>();
+                    byNormalized.put(e164, values);
+                }
+                values.add(phone);
+            }
+        }
+        Map<String, List<String>> byAddress = new HashMap<String, List<String>>();
+        for (String email : toSet(emails)) {
+            matches.put(email, new LinkedHashMap<String, Match>());
+            String address = email.trim();
+            List<String> values = byAddress.get(address);
+            if (values == null) {
+                values = new ArrayList<String>();
+                byAddress.put(address, values);
+            }
+            values.add(email);
+        }
+
+        queryData(Phone.CONTENT_ITEM_TYPE, Phone.NORMALIZED_NUMBER, byNormalized, matches, signal);
+        queryData(Email.CONTENT_ITEM_TYPE, Email.ADDRESS, byAddress, matches, signal);
+
+        // The values the batches did not find.
+        List<String> phonesLeft = new ArrayList<String>();
+        boolean allNormalized = true;
+        for (String phone : toSet(phones)) {
+            String stripped = ContactPhoneNumbers.stripSeparators(phone);
+            if (matches.get(phone).isEmpty() && stripped != null && stripped.length() > 0) {
+                phonesLeft.add(phone);
+                allNormalized &= phoneNumbers.toE164(phone) != null;
+            }
+        }
+        Map<String, List<String>> byLowerAddress = new HashMap<String, List<String>>();
+        for (String email : toSet(emails)) {
+            String address = email.trim().toLowerCase(Locale.ROOT);
+            if (matches.get(email).isEmpty() && address.length() > 0) {
+                List<String> values = byLowerAddress.get(address);
+                if (values == null) {
+                    values = new ArrayList<String>();
+                    byLowerAddress.put(address, values);
+                }
+                values.add(email);
+            }
+        }
+
+        if (!phonesLeft.isEmpty()) {
+            // A value with an E.164 form has been compared with every stored
+            // number having one: only the others can still match it.
+            queryPhoneNumbers(phonesLeft, allNormalized, matches, signal);
+        }
+        queryData(Email.CONTENT_ITEM_TYPE, "lower(" + Email.ADDRESS + ")", byLowerAddress, matches, signal);
+
+        JSONObject result = new JSONObject();
+        for (Map.Entry<String, Map<String, Match>> entry : matches.entrySet()) {
+            JSONArray records = new JSONArray();
+            for (Match match : entry.getValue().values()) {
+                match.addRecords(records);
+            }
+            result.put(entry.getKey(), records);
+        }
+        return result;
+    }
+
+    /**
+     * Match the keys against one Data column, BATCH_SIZE keys per query.
+     */
+    private void queryData(String mimetype, String column, Map<String, List<String>> keys,
+            Map<String, Map<String, Match>> matches, CancellationSignal signal) {
+        ContentResolver resolver = context.getContentResolver();
+        List<String> batch = new ArrayList<String>(keys.keySet());
+        for (int start = 0; start < batch.size(); start += BATCH_SIZE) {
+            throwIfCanceled(signal);
+            List<String> chunk = batch.subList(start, Math.min(start + BATCH_SIZE, batch.size()));
+            String[] args = new String[chunk.size() + 1];
+            args[0] = mimetype;
+            StringBuilder selection = new StringBuilder(ContactsContract.Data.MIMETYPE + " = ? AND "
+                    + column + " IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                args[i + 1] = chunk.get(i);
+            }
+            selection.append(")");
+
+            String[] projection = new String[] {
+                ContactsContract.Data.RAW_CONTACT_ID,
+                ContactsContract.Data.CONTACT_ID,
+                ContactsContract.Data.DISPLAY_NAME,
+                ContactsContract.Data.PHOTO_THUMBNAIL_URI,
+                column
+            };
+            Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI, projection,
+                    selection.toString(), args, null);
+            if (c == null) {
+                continue;
+            }
+            try {
+                while (c.moveToNext()) {
+                    List<String> values = keys.get(c.getString(4));
+                    if (values == null) {
+                        continue;
+                    }
+                    for (String value : values) {
+                        Match match = matchOf(matches.get(value), c.getString(1), c.getString(2), c.getString(3));
+                        match.rawIds.add(c.getString(0));
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Match phone numbers on their trailing digits, whatever their formatting,
+     * in one pass over the stored phone numbers.
+     *
+     * @param unnormalizedOnly only read the stored numbers without an E.164 form
+     */
+    private void queryPhoneNumbers(List<String> phones, boolean unnormalizedOnly,
+            Map<String, Map<String, Match>> matches, CancellationSignal signal) {
+        // min match key (the last digits, reversed) -> values
+        Map<String, List<String>> byMinMatch = new HashMap<String, List<String>>();
+        for (String phone : phones) {
+            String key = PhoneNumberUtils.toCallerIDMinMatch(ContactPhoneNumbers.stripSeparators(phone));
+            List<String> values = byMinMatch.get(key);
+            if (values == null) {
+                values = new ArrayList<String>();
+                byMinMatch.put(key, values);
+            }
+            values.add(phone);
+        }
+
+        String selection = ContactsContract.Data.MIMETYPE + " = ?";
+        if (unnormalizedOnly) {
+            selection += " AND " + Phone.NORMALIZED_NUMBER + " IS NULL";
+        }
+        Cursor c = ContactPhoneNumbers.query(context.getContentResolver(), ContactsContract.Data.CONTENT_URI,
+                new String[] {
+                    ContactsContract.Data.RAW_CONTACT_ID,
+                    ContactsContract.Data.CONTACT_ID,
+                    ContactsContract.Data.DISPLAY_NAME,
+                    ContactsContract.Data.PHOTO_THUMBNAIL_URI,
+                    Phone.NUMBER
+                }, selection, new String[] { Phone.CONTENT_ITEM_TYPE }, null, signal);
+        if (c == null) {
+            return;
+        }
+        try {
+            while (c.moveToNext()) {
+                String number = ContactPhoneNumbers.stripSeparators(c.getString(4));
+                if (number == null || number.length() == 0) {
+                    continue;
+                }
+                List<String> values = byMinMatch.get(PhoneNumberUtils.toCallerIDMinMatch(number));
+                if (values == null) {
+                    continue;
+                }
+                for (String value : values) {
+                    if (PhoneNumberUtils.compare(value, number)) {
+                        Match match = matchOf(matches.get(value), c.getString(1), c.getString(2), c.getString(3));
+                        match.rawIds.add(c.getString(0));
+                    }
+                }
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static Match matchOf(Map<String, Match> contacts, String contactId, String displayName, String photo) {
+        Match match = contacts.get(contactId);
+        if (match == null) {
+            match = new Match(contactId, displayName, photo);
+            contacts.put(contactId, match);
+        }
+        return match;
+    }
+
+    /**
+     * @return the distinct non null values of the array, in order.
+     */
+    private static Set<String> toSet(JSONArray array) {
+        Set<String> values = new LinkedHashSet<String>();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                if (!array.isNull(i)) {
+                    values.add(array.optString(i));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * A contact matching a value, with the raw contacts it is made of.
+     */
+    private static class Match {
+        final String contactId;
+        final String displayName;
+        final String photo;
+        final Set<String> rawIds = new LinkedHashSet<String>();
+
+        Match(String contactId, String displayName, String photo) {
+            this.contactId = contactId;
+            this.displayName = displayName;
+            this.photo = photo;
+        }
+
+        void addRecords(JSONArray records) throws JSONException {
+            for (String rawId : rawIds) {
+                JSONObject record = new JSONObject();
+                record.put("rawId", rawId);
+                record.put("contactId", contactId);
+                record.put("displayName", displayName == null ? JSONObject.NULL : displayName);
+                record.put("photo", photo == null ? JSONObject.NULL : photo);
+                records.put(record);
+            }
+        }
+    }
+}
@@ -36,14 +36,40 @@ import android.util.Log;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import java.lang.Runnable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.provider.ContactsContract;
 import android.content.ContentResolver;
 
 public class ContactManager extends CordovaPlugin {
 
     private ContactAccessor contactAccessor;
-    private CallbackContext callbackContext;        // The callback context from which we were invoked.
-    private JSONArray executeArgs;
+    private ContactScheduler scheduler;
+    private final ContactRequestRegistry requests = new ContactRequestRegistry(CONTACT_PICKER_RESULT);
+    private final ContactSearchCoalescer coalescer = new ContactSearchCoalescer();
+    private final ContactChangeObserver changeObserver = new ContactChangeObserver();
+    private ContactSearchIndex searchIndex;
+    private ContactMirror mirror;
+    private volatile ContactSnapshot snapshot;
+    /** Held while the snapshot file is written or deleted. */
+    private final Object snapshotLock = new Object();
+    private final AtomicLong snapshotChanges = new AtomicLong();
+    private ContactLookup lookup;
+    private ContactMembershipFilter membershipFilter;
+    private final AtomicBoolean filterRefreshQueued = new AtomicBoolean();
+    private ContactViews views;
+    private ContactSummaries summaries;
+    private ContactRanking ranking;
+    private final AtomicBoolean viewsRefreshQueued = new AtomicBoolean();
+    private final AtomicBoolean indexSyncQueued = new AtomicBoolean();
+    private final AtomicBoolean mirrorReconcileQueued = new AtomicBoolean();
 
     private static final String LOG_TAG = "Contact Query";
 
@@ -53,6 +79,7 @@ public class ContactManager extends CordovaPlugin {
     public static final int PENDING_OPERATION_ERROR = 3;
     public static final int IO_ERROR = 4;
     public static final int NOT_SUPPORTED_ERROR = 5;
+    public static final int OPERATION_CANCELLED_ERROR = 6;
     public static final int PERMISSION_DENIED_ERROR = 20;
     private static final int CONTACT_PICKER_RESULT = 1000;
 
@@ -72,9 +99,6 @@ public class ContactManager extends CordovaPlugin {
      */
     public boolean execute(String action, JSONArray args, final CallbackContext callbackContext) throws JSONException {
 
-        this.callbackContext = callbackContext;
-        this.executeArgs = args;
-
         /**
          * Check to see if we are on an Android 1.X device.  If we are return an error as we
          * do not support this as of Cordova 1.0.
@@ -91,28 +115,332 @@ public class ContactManager extends CordovaPlugin {
         if (this.contactAccessor == null) {
             this.contactAccessor = new ContactAccessorSdk5(this.cordova);
         }
+        if (this.scheduler == null) {
+            this.scheduler = new ContactScheduler();
+            if (ContactSearchIndex.exists(this.cordova.getActivity())) {
+                openSearchIndex();
+                scheduleIndexSync();
+            }
+            if (ContactMirror.exists(this.cordova.getActivity())) {
+                // Answers from the last session at once, checked in the background.
+                openMirror();
+                scheduleMirrorReconcile();
+            }
+        }
 
         if (action.equals("search")) {
             final JSONArray filter = args.getJSONArray(0);
             final JSONObject options = args.get(1) == null ? null : args.getJSONObject(1);
-            this.cordova.getThreadPool().execute(new Runnable() {
+            String requestId = options == null ? null : options.optString("requestId", null);
+            final ContactRequest request;
+            try {
+                request = requests.register(requestId, action, args, callbackContext);
+            } catch (IllegalArgumentException e) {
+                // Cancelling by this id would be ambiguous.
+                Log.w(LOG_TAG, e.getMessage());
+                callbackContext.error(INVALID_ARGUMENT_ERROR);
+                return true;
+            }
+            if (options != null && (options.optJSONObject("toFile") != null || options.optBoolean("toFile"))) {
+                // Written to a file on the bulk lane: only {path, size, count} is sent back
+                final ContactResultFile file = new ContactResultFile(this.cordova.getActivity(),
+                        (ContactAccessorSdk5) contactAccessor);
+                schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                    public void run() {
+                        try {
+                            request.getCallbackContext().success(file.write(filter, options, request.getSignal()));
+                        } catch (IllegalArgumentException e) {
+                            Log.w(LOG_TAG, e.getMessage());
+                            request.error(INVALID_ARGUMENT_ERROR);
+                        } catch (IOException e) {
+                            Log.e(LOG_TAG, "Cannot write the result file.", e);
+                            request.error(IO_ERROR);
+                        } catch (JSONException e) {
+                            Log.e(LOG_TAG, "JSON fail.", e);
+                            request.error(UNKNOWN_ERROR);
+                        }
+                    }
+                });
+            } else {
+                if (options != null && options.has("sortBy")) {
+                    watchSorter();
+                }
+                searchCoalesced(filter, options, request);
+            }
+        }
+        else if (action.equals("count")) {
+            final JSONArray fields = args.getJSONArray(0);
+            final JSONObject options = args.isNull(1) ? null : args.getJSONObject(1);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        int count = ((ContactAccessorSdk5) contactAccessor).count(fields, options, request.getSignal());
+                        request.getCallbackContext().sendPluginResult(new PluginResult(PluginResult.Status.OK, count));
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("accountStats")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactAccountStats stats = new ContactAccountStats(this.cordova.getActivity().getContentResolver());
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(stats.compute(request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("exportVCard")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final String path = args.getString(1);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactVCardExporter exporter = new ContactVCardExporter(
+                    this.cordova.getActivity().getContentResolver(), (ContactAccessorSdk5) contactAccessor);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    try {
+                        ContactVCardExporter.Progress progress = new ContactVCardExporter.Progress() {
+                            public void onProgress(int written, int total) {
+                                try {
+                                    JSONObject state = new JSONObject();
+                                    state.put("done", written);
+                                    state.put("total", total);
+                                    sendProgress(request, state);
+                                } catch (JSONException e) {
+                                    Log.e(LOG_TAG, "JSON fail.", e);
+                                }
+                            }
+                        };
+                        request.getCallbackContext().success(
+                                exporter.export(options, path, progress, request.getSignal()));
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Cannot write the vCard file.", e);
+                        request.error(IO_ERROR);
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("importVCard")) {
+            final String path = args.getString(0);
+            final String accountType = args.isNull(1) ? null : args.getString(1);
+            final String accountName = args.isNull(2) ? null : args.getString(2);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactVCardImporter importer = new ContactVCardImporter(
+                    this.cordova.getActivity().getContentResolver(), (ContactAccessorSdk5) contactAccessor);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    try {
+                        ContactVCardImporter.Progress progress = new ContactVCardImporter.Progress() {
+                            public void onProgress(int cards, long bytesRead, long size) {
+                                try {
+                                    JSONObject state = new JSONObject();
+                                    state.put("cards", cards);
+                                    state.put("bytesRead", bytesRead);
+                                    state.put("size", size);
+                                    sendProgress(request, state);
+                                } catch (JSONException e) {
+                                    Log.e(LOG_TAG, "JSON fail.", e);
+                                }
+                            }
+                        };
+                        request.getCallbackContext().success(
+                                importer.importFile(path, accountType, accountName, progress, request.getSignal()));
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Cannot read the vCard file.", e);
+                        request.error(IO_ERROR);
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("lookup")) {
+            final JSONArray phones = args.optJSONArray(0);
+            final JSONArray emails = args.optJSONArray(1);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactLookup lookup = getLookup();
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(lookup.lookup(phones, emails, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("sectionIndex")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactSectionIndex sectionIndex = new ContactSectionIndex(watchSorter());
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(sectionIndex.compute(options, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("summaries")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactSummaries summaries = getSummaries();
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(summaries.find(options, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("topContacts")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(getRanking().top(options, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("recordContactUsage")) {
+            final String contactId = args.getString(0);
+            final double weight = args.optDouble(1, 1);
+            final long halfLife = args.optLong(2, ContactRanking.DEFAULT_HALF_LIFE);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        double score = getRanking().record(contactId, weight, halfLife);
+                        request.getCallbackContext().success(new JSONObject().put("score", score));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("clearContactUsage")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
                 public void run() {
-                    JSONArray res = contactAccessor.search(filter, options);
-                    callbackContext.success(res);
+                    getRanking().clear();
+                    request.getCallbackContext().success();
                 }
             });
         }
+        else if (action.equals("openView")) {
+            final JSONArray fields = args.getJSONArray(0);
+            final JSONObject options = args.isNull(1) ? null : args.getJSONObject(1);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactViews views = getViews();
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(views.open(fields, options, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("readView")) {
+            final String viewId = args.getString(0);
+            final int from = args.getInt(1);
+            final int to = args.getInt(2);
+            final JSONArray fields = args.optJSONArray(3);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            final ContactViews views = getViews();
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        JSONObject window = views.read(viewId, from, to, fields, request.getSignal());
+                        if (window == null) {
+                            // Closed, or expired
+                            request.error(TIMEOUT_ERROR);
+                        } else {
+                            request.getCallbackContext().success(window);
+                        }
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("closeView")) {
+            getViews().close(args.getString(0));
+            callbackContext.success();
+        }
+        else if (action.equals("isKnown")) {
+            isKnown(args.getJSONArray(0), callbackContext);
+        }
+        else if (action.equals("cancel")) {
+            requests.cancel(args.getString(0));
+            callbackContext.success();
+        }
         else if (action.equals("save")) {
             final JSONObject contact = args.getJSONObject(0);
             final String accountType = args.optString(1, null);
             final String accountName = args.optString(2, null);
             final Boolean callerIsSyncAdapter = args.optBoolean(3, false);
             final Boolean resetFields = args.optBoolean(4, false);
-            this.cordova.getThreadPool().execute(new Runnable(){
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
                 public void run() {
                     JSONObject res = null;
                     String id = contactAccessor.save(contact, accountType,
                         accountName, callerIsSyncAdapter, resetFields);
+                    // Sorted at once, without waiting for the change notification.
+                    ((ContactAccessorSdk5) contactAccessor).getSorter().markDirty();
                     Log.d(LOG_TAG, "Saved id: " + id);
                     if (id != null) {
                         try {
@@ -123,9 +451,9 @@ public class ContactManager extends CordovaPlugin {
                     }
                     Log.d(LOG_TAG, "getContact success: " + String.valueOf(res != null));
                     if (res != null) {
-                        callbackContext.success(res);
+                        request.getCallbackContext().success(res);
                     } else {
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+                        request.error(UNKNOWN_ERROR);
                     }
                 }
             });
@@ -133,19 +461,22 @@ public class ContactManager extends CordovaPlugin {
         else if (action.equals("remove")) {
             final String rawContactId = args.getString(0);
             final Boolean callerIsSyncAdapter = args.optBoolean(1, false);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
 
-            this.cordova.getThreadPool().execute(new Runnable() {
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
                 public void run() {
-                    if (contactAccessor.remove(rawContactId, callerIsSyncAdapter)) {
-                        callbackContext.success();
+                    boolean removed = contactAccessor.remove(rawContactId, callerIsSyncAdapter);
+                    ((ContactAccessorSdk5) contactAccessor).getSorter().markDirty();
+                    if (removed) {
+                        request.getCallbackContext().success();
                     } else {
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+                        request.error(UNKNOWN_ERROR);
                     }
                 }
             });
         }
         else if (action.equals("pickContact")) {
-            pickContactAsync();
+            pickContactAsync(requests.register(null, action, args, callbackContext));
         }
         else if (action.equals("createAccount")) {
             final String accountName = args.getString(0);
@@ -158,6 +489,180 @@ public class ContactManager extends CordovaPlugin {
             JSONArray accounts = listAccounts();
             callbackContext.success(accounts);
         }
+        else if (action.equals("enableSearchIndex") || action.equals("rebuildSearchIndex")) {
+            final boolean rebuild = action.equals("rebuildSearchIndex");
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    ContactSearchIndex index = openSearchIndex();
+                    if (rebuild) {
+                        index.rebuild();
+                    } else {
+                        index.sync();
+                    }
+                    try {
+                        request.getCallbackContext().success(index.getStats());
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("disableSearchIndex")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    closeSearchIndex();
+                    cordova.getActivity().deleteDatabase(ContactSearchIndex.DATABASE_NAME);
+                    request.getCallbackContext().success();
+                }
+            });
+        }
+        else if (action.equals("enableMirror")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    ContactMirror mirror = openMirror();
+                    mirror.reconcile();
+                    try {
+                        request.getCallbackContext().success(mirror.getStats());
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("searchMirror")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final ContactMirror mirror = this.mirror;
+            if (mirror == null) {
+                Log.w(LOG_TAG, "searchMirror: the mirror is not enabled.");
+                callbackContext.error(INVALID_ARGUMENT_ERROR);
+                return true;
+            }
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        request.getCallbackContext().success(mirror.search(options, request.getSignal()));
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    } catch (IllegalStateException e) {
+                        // Disabled since the search was queued
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("disableMirror")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    closeMirror();
+                    cordova.getActivity().deleteDatabase(ContactMirror.DATABASE_NAME);
+                    request.getCallbackContext().success();
+                }
+            });
+        }
+        else if (action.equals("buildSnapshot")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    try {
+                        ContactSnapshot built;
+                        synchronized (snapshotLock) {
+                            // Count the changes from now on: the ones made during
+                            // the build may be missing from it.
+                            watchSnapshot();
+                            long seen = snapshotChanges.get();
+                            built = ContactSnapshot.build(
+                                    cordova.getActivity().getContentResolver(), getSnapshotFile(),
+                                    Locale.getDefault(), request.getSignal());
+                            if (snapshotChanges.get() != seen) {
+                                built.markStale();
+                            }
+                            // The readers of the previous snapshot keep their mapping.
+                            snapshot = built;
+                        }
+                        request.getCallbackContext().success(built.getStats());
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Cannot write the snapshot.", e);
+                        request.error(IO_ERROR);
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("readSnapshot")) {
+            final JSONObject options = args.isNull(0) ? null : args.getJSONObject(0);
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+                public void run() {
+                    try {
+                        ContactSnapshot current = openSnapshot();
+                        if (current == null) {
+                            Log.w(LOG_TAG, "readSnapshot: no snapshot has been built.");
+                            request.error(INVALID_ARGUMENT_ERROR);
+                            return;
+                        }
+                        request.getCallbackContext().success(current.read(options, request.getSignal()));
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Cannot read the snapshot.", e);
+                        request.error(IO_ERROR);
+                    } catch (JSONException e) {
+                        Log.e(LOG_TAG, "JSON fail.", e);
+                        request.error(UNKNOWN_ERROR);
+                    } catch (IllegalArgumentException e) {
+                        Log.w(LOG_TAG, e.getMessage());
+                        request.error(INVALID_ARGUMENT_ERROR);
+                    }
+                }
+            });
+        }
+        else if (action.equals("deleteSnapshot")) {
+            final ContactRequest request = requests.register(null, action, args, callbackContext);
+            schedule(ContactScheduler.Lane.BULK, request, new Runnable() {
+                public void run() {
+                    synchronized (snapshotLock) {
+                        synchronized (ContactManager.this) {
+                            changeObserver.removeListener(snapshotListener);
+                            snapshot = null;
+                            getSnapshotFile().delete();
+                        }
+                    }
+                    request.getCallbackContext().success();
+                }
+            });
+        }
+        else if (action.equals("getSchedulerStats")) {
+            JSONObject stats = this.scheduler.getStats();
+            stats.put("pendingRequests", requests.size());
+            stats.put("coalescing", coalescer.getStats());
+            stats.put("queryPlans", ((ContactAccessorSdk5) contactAccessor).getQueryCompiler().getStats());
+            if (membershipFilter != null) {
+                stats.put("membershipFilter", membershipFilter.getStats());
+            }
+            if (views != null) {
+                stats.put("views", views.getStats());
+            }
+            if (mirror != null) {
+                stats.put("mirror", mirror.getStats());
+            }
+            callbackContext.success(stats);
+        }
+        else if (action.equals("configureScheduler")) {
+            this.scheduler.configure(args.getJSONObject(0));
+            callbackContext.success(this.scheduler.getStats());
+        }
 
         else {
             return false;
@@ -165,6 +670,475 @@ public class ContactManager extends CordovaPlugin {
         return true;
     }
 
+    @Override
+    public void onDestroy() {
+        changeObserver.stop();
+        if (this.contactAccessor != null) {
+            // No more notifications: back to reading the raw contacts on every sort.
+            ((ContactAccessorSdk5) contactAccessor).getSorter().setWatched(false);
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+        }
+        closeSearchIndex();
+        closeMirror();
+    }
+
+    /**
+     * Have the sorter read the raw contacts again only after a change, from
+     * its first use on.
+     */
+    private synchronized ContactSorter watchSorter() {
+        ContactSorter sorter = ((ContactAccessorSdk5) contactAccessor).getSorter();
+        if (!sorter.isWatched()) {
+            changeObserver.addListener(sorterListener);
+            changeObserver.start(this.cordova.getActivity().getContentResolver());
+            sorter.setWatched(true);
+        }
+        return sorter;
+    }
+
+    private final ContactChangeObserver.Listener sorterListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            ((ContactAccessorSdk5) contactAccessor).getSorter().markDirty();
+        }
+    };
+
+    /**
+     * Open the local search index, and keep it in sync with the provider.
+     */
+    private synchronized ContactSearchIndex openSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new ContactSearchIndex(this.cordova.getActivity());
+            ((ContactAccessorSdk5) contactAccessor).setSearchIndex(searchIndex);
+            changeObserver.addListener(indexListener);
+            changeObserver.start(this.cordova.getActivity().getContentResolver());
+        }
+        return searchIndex;
+    }
+
+    private synchronized void closeSearchIndex() {
+        if (searchIndex != null) {
+            changeObserver.removeListener(indexListener);
+            ((ContactAccessorSdk5) contactAccessor).setSearchIndex(null);
+            searchIndex.close();
+            searchIndex = null;
+        }
+    }
+
+    private final ContactChangeObserver.Listener indexListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            ContactSearchIndex index = searchIndex;
+            if (index != null) {
+                index.markDirty();
+                scheduleIndexSync();
+            }
+        }
+    };
+
+    /**
+     * Catch up with the provider changes in the background, at most one sync queued at a time.
+     */
+    private void scheduleIndexSync() {
+        if (!indexSyncQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.scheduler.execute(ContactScheduler.Lane.BULK, new Runnable() {
+                public void run() {
+                    indexSyncQueued.set(false);
+                    ContactSearchIndex index = searchIndex;
+                    if (index != null && index.isDirty()) {
+                        index.sync();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The index stays dirty until the next change queues a sync.
+            indexSyncQueued.set(false);
+        }
+    }
+
+    /**
+     * Open the local mirror, and keep it in sync with the provider.
+     */
+    private synchronized ContactMirror openMirror() {
+        if (mirror == null) {
+            mirror = new ContactMirror(this.cordova.getActivity());
+            changeObserver.addListener(mirrorListener);
+            changeObserver.start(this.cordova.getActivity().getContentResolver());
+        }
+        return mirror;
+    }
+
+    private synchronized void closeMirror() {
+        if (mirror != null) {
+            changeObserver.removeListener(mirrorListener);
+            mirror.close();
+            mirror = null;
+        }
+    }
+
+    private final ContactChangeObserver.Listener mirrorListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            ContactMirror mirror = ContactManager.this.mirror;
+            if (mirror != null) {
+                mirror.markDirty();
+                scheduleMirrorReconcile();
+            }
+        }
+    };
+
+    /**
+     * Catch up with the provider changes in the background, at most one reconcile queued at a time.
+     */
+    private void scheduleMirrorReconcile() {
+        if (!mirrorReconcileQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.scheduler.execute(ContactScheduler.Lane.BULK, new Runnable() {
+                public void run() {
+                    mirrorReconcileQueued.set(false);
+                    ContactMirror mirror = ContactManager.this.mirror;
+                    if (mirror != null && mirror.isDirty()) {
+                        mirror.reconcile();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Searches report the mirror as stale until the next change queues a reconcile.
+            mirrorReconcileQueued.set(false);
+        }
+    }
+
+    private File getSnapshotFile() {
+        return new File(this.cordova.getActivity().getFilesDir(), ContactSnapshot.FILE_NAME);
+    }
+
+    /**
+     * Map the snapshot of a previous launch on first use.
+     * @return null if none has been built.
+     */
+    private synchronized ContactSnapshot openSnapshot() throws IOException {
+        if (snapshot == null && getSnapshotFile().exists()) {
+            snapshot = ContactSnapshot.open(getSnapshotFile());
+            watchSnapshot();
+            // Changes made while the app was closed are not known.
+            snapshot.markStale();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Flag the snapshot as stale on the provider changes, until it is rebuilt.
+     */
+    private synchronized void watchSnapshot() {
+        changeObserver.addListener(snapshotListener);
+        changeObserver.start(this.cordova.getActivity().getContentResolver());
+    }
+
+    private final ContactChangeObserver.Listener snapshotListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            snapshotChanges.incrementAndGet();
+            ContactSnapshot current = snapshot;
+            if (current != null) {
+                current.markStale();
+            }
+        }
+    };
+
+    private synchronized ContactLookup getLookup() {
+        if (lookup == null) {
+            lookup = new ContactLookup(this.cordova.getActivity(),
+                    ((ContactAccessorSdk5) contactAccessor).getPhoneNumbers());
+        }
+        return lookup;
+    }
+
+    /**
+     * Tells for each value (phone number or email) whether it is in the address book.
+     * Values the membership filter rules out are answered at once; the others,
+     * and all of them while the filter is not up to date, are checked with a lookup.
+     */
+    private void isKnown(JSONArray values, CallbackContext callbackContext) throws JSONException {
+        ContactMembershipFilter filter = openMembershipFilter();
+        boolean reliable = filter.isBuilt() && !filter.isDirty();
+
+        final JSONObject result = new JSONObject();
+        final JSONArray phones = new JSONArray();
+        final JSONArray emails = new JSONArray();
+        for (int i = 0; i < values.length(); i++) {
+            String value = values.optString(i);
+            if (reliable && !filter.mightContain(value)) {
+                result.put(value, false);
+            } else if (value.indexOf('@') >= 0) {
+                emails.put(value);
+            } else {
+                phones.put(value);
+            }
+        }
+        if (phones.length() == 0 && emails.length() == 0) {
+            callbackContext.success(result);
+            return;
+        }
+
+        final ContactRequest request = requests.register(null, "isKnown", values, callbackContext);
+        final ContactLookup lookup = getLookup();
+        schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+            public void run() {
+                try {
+                    JSONObject matches = lookup.lookup(phones, emails, request.getSignal());
+                    Iterator<String> it = matches.keys();
+                    while (it.hasNext()) {
+                        String value = it.next();
+                        result.put(value, matches.getJSONArray(value).length() > 0);
+                    }
+                    request.getCallbackContext().success(result);
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, "JSON fail.", e);
+                    request.error(UNKNOWN_ERROR);
+                }
+            }
+        });
+    }
+
+    /**
+     * Create the membership filter on first use; it is built in the background
+     * and then kept in sync with the provider.
+     */
+    private synchronized ContactMembershipFilter openMembershipFilter() {
+        if (membershipFilter == null) {
+            membershipFilter = new ContactMembershipFilter(this.cordova.getActivity().getContentResolver());
+            changeObserver.addListener(filterListener);
+            changeObserver.start(this.cordova.getActivity().getContentResolver());
+            scheduleFilterRefresh();
+        }
+        return membershipFilter;
+    }
+
+    private final ContactChangeObserver.Listener filterListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            ContactMembershipFilter filter = membershipFilter;
+            if (filter != null) {
+                filter.markDirty();
+                scheduleFilterRefresh();
+            }
+        }
+    };
+
+    /**
+     * Build or catch up the membership filter in the background, at most one refresh queued at a time.
+     */
+    private void scheduleFilterRefresh() {
+        if (!filterRefreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.scheduler.execute(ContactScheduler.Lane.BULK, new Runnable() {
+                public void run() {
+                    filterRefreshQueued.set(false);
+                    ContactMembershipFilter filter = membershipFilter;
+                    if (filter != null && (!filter.isBuilt() || filter.isDirty())) {
+                        filter.refresh();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Checks fall back to lookups until the next change queues a refresh.
+            filterRefreshQueued.set(false);
+        }
+    }
+
+    private synchronized ContactSummaries getSummaries() {
+        if (summaries == null) {
+            summaries = new ContactSummaries(this.cordova.getActivity().getContentResolver());
+        }
+        return summaries;
+    }
+
+    private synchronized ContactRanking getRanking() {
+        if (ranking == null) {
+            ranking = new ContactRanking(this.cordova.getActivity(), getSummaries());
+        }
+        return ranking;
+    }
+
+    /**
+     * Create the view registry on first use; its views are re-run when the contacts change.
+     */
+    private synchronized ContactViews getViews() {
+        if (views == null) {
+            views = new ContactViews((ContactAccessorSdk5) contactAccessor);
+            changeObserver.addListener(viewsListener);
+            changeObserver.start(this.cordova.getActivity().getContentResolver());
+        }
+        return views;
+    }
+
+    private final ContactChangeObserver.Listener viewsListener = new ContactChangeObserver.Listener() {
+        public void onContactsChanged() {
+            ContactViews open = views;
+            if (open != null && !open.isEmpty()) {
+                scheduleViewsRefresh();
+            }
+        }
+    };
+
+    /**
+     * Re-run the open views in the background, at most one refresh queued at a time.
+     */
+    private void scheduleViewsRefresh() {
+        if (!viewsRefreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.scheduler.execute(ContactScheduler.Lane.BULK, new Runnable() {
+                public void run() {
+                    viewsRefreshQueued.set(false);
+                    views.refresh();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The views keep their rows until the next change queues a refresh.
+            viewsRefreshQueued.set(false);
+        }
+    }
+
+    /**
+     * Runs the worker of a request on the given lane of the contacts scheduler.
+     * The request is answered with a PENDING_OPERATION_ERROR if this lane is full,
+     * with an OPERATION_CANCELLED_ERROR if it has been cancelled before or while running,
+     * or dropped at shutdown, and with an UNKNOWN_ERROR if the worker fails unexpectedly.
+     * The request leaves the registry when the worker is done, unless it now waits
+     * for an activity result.
+     */
+    private void schedule(ContactScheduler.Lane lane, final ContactRequest request, final Runnable worker) {
+        Runnable task = new ContactScheduler.Droppable() {
+            public void run() {
+                try {
+                    if (request.isCancelled()) {
+                        throw new OperationCanceledException();
+                    }
+                    worker.run();
+                } catch (OperationCanceledException e) {
+                    Log.d(LOG_TAG, request.getAction() + " cancelled: " + request.getId());
+                    request.error(OPERATION_CANCELLED_ERROR);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, request.getAction() + " failed: " + request.getId(), e);
+                    request.error(UNKNOWN_ERROR);
+                } finally {
+                    if (!requests.isAwaitingActivity(request)) {
+                        requests.finish(request);
+                    }
+                }
+            }
+
+            public void dropped() {
+                requests.finish(request);
+                request.error(OPERATION_CANCELLED_ERROR);
+            }
+        };
+        try {
+            this.scheduler.execute(lane, task);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, e.getMessage());
+            requests.finish(request);
+            request.error(PENDING_OPERATION_ERROR);
+        }
+    }
+
+    /**
+     * Report the progress of a long request, keeping its callback: the state
+     * is sent with progress: true.
+     */
+    private void sendProgress(ContactRequest request, JSONObject state) throws JSONException {
+        state.put("progress", true);
+        PluginResult result = new PluginResult(PluginResult.Status.OK, state);
+        result.setKeepCallback(true);
+        request.getCallbackContext().sendPluginResult(result);
+    }
+
+    /**
+     * Runs a search, unless an identical one is already queued or running:
+     * then the request waits for the result of that one.
+     * A cancelled request leaves the shared search, which is only stopped once
+     * no request waits for it anymore.
+     */
+    private void searchCoalesced(final JSONArray filter, final JSONObject options,
+            final ContactRequest request) throws JSONException {
+        final ContactSearchCoalescer.Flight flight = coalescer.join(
+                ContactSearchCoalescer.keyOf(filter, options), request);
+
+        request.getSignal().setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            public void onCancel() {
+                if (flight.detach(request)) {
+                    Log.d(LOG_TAG, "search cancelled: " + request.getId());
+                    request.error(OPERATION_CANCELLED_ERROR);
+                    requests.finish(request);
+                }
+            }
+        });
+
+        if (!flight.isLeader(request)) {
+            return;
+        }
+
+        Runnable task = new ContactScheduler.Droppable() {
+            public void run() {
+                int error = UNKNOWN_ERROR;
+                PluginResult res = null;
+                try {
+                    JSONArray contacts = contactAccessor.search(filter, options, flight.getSignal());
+                    Object result = contacts;
+                    if (ContactPage.isPaged(options)) {
+                        result = ((ContactAccessorSdk5) contactAccessor).toPageResult(contacts, options);
+                    }
+                    if (options != null && options.optBoolean("binary")) {
+                        // An ArrayBuffer, decoded by contacts.js
+                        res = new PluginResult(PluginResult.Status.OK, ContactBinaryEncoder.encode(result));
+                    } else if (result instanceof JSONObject) {
+                        res = new PluginResult(PluginResult.Status.OK, (JSONObject) result);
+                    } else {
+                        res = new PluginResult(PluginResult.Status.OK, contacts);
+                    }
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, "JSON fail.", e);
+                } catch (OperationCanceledException e) {
+                    // Every waiter has been answered when it left.
+                    error = OPERATION_CANCELLED_ERROR;
+                } catch (IllegalArgumentException e) {
+                    Log.w(LOG_TAG, e.getMessage());
+                    error = INVALID_ARGUMENT_ERROR;
+                } finally {
+                    for (ContactRequest waiter : flight.complete()) {
+                        if (res != null) {
+                            waiter.getCallbackContext().sendPluginResult(res);
+                        } else {
+                            waiter.error(error);
+                        }
+                        requests.finish(waiter);
+                    }
+                }
+            }
+
+            public void dropped() {
+                for (ContactRequest waiter : flight.complete()) {
+                    waiter.error(OPERATION_CANCELLED_ERROR);
+                    requests.finish(waiter);
+                }
+            }
+        };
+        try {
+            this.scheduler.execute(ContactScheduler.Lane.INTERACTIVE, task);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, e.getMessage());
+            for (ContactRequest waiter : flight.complete()) {
+                waiter.error(PENDING_OPERATION_ERROR);
+                requests.finish(waiter);
+            }
+        }
+    }
 
     private void createAccount(String accountName, String accountType) {
         AccountManager accountManager = AccountManager.get(ContactManager.this.cordova.getActivity());
@@ -200,15 +1174,16 @@ public class ContactManager extends CordovaPlugin {
     /**
      * Launches the Contact Picker to select a single contact.
      */
-    private void pickContactAsync() {
+    private void pickContactAsync(final ContactRequest request) {
         final CordovaPlugin plugin = (CordovaPlugin) this;
         Runnable worker = new Runnable() {
             public void run() {
                 Intent contactPickerIntent = new Intent(Intent.ACTION_PICK, Contacts.CONTENT_URI);
-                plugin.cordova.startActivityForResult(plugin, contactPickerIntent, CONTACT_PICKER_RESULT);
+                plugin.cordova.startActivityForResult(plugin, contactPickerIntent,
+                        requests.registerActivity(request));
             }
         };
-        this.cordova.getThreadPool().execute(worker);
+        schedule(ContactScheduler.Lane.INTERACTIVE, request, worker);
     }
 
     /**
@@ -219,33 +1194,45 @@ public class ContactManager extends CordovaPlugin {
      * @param intent            An Intent, which can return result data to the caller (various data can be attached to Intent "extras").
      * @throws JSONException
      */
-    public void onActivityResult(int requestCode, int resultCode, final Intent intent) {
-        if (requestCode == CONTACT_PICKER_RESULT) {
-            if (resultCode == Activity.RESULT_OK) {
-                String contactId = intent.getData().getLastPathSegment();
-                // to populate contact data we require  Raw Contact ID
-                // so we do look up for contact raw id first
-                Cursor c =  this.cordova.getActivity().getContentResolver().query(RawContacts.CONTENT_URI,
-                            new String[] {RawContacts._ID}, RawContacts.CONTACT_ID + " = " + contactId, null, null);
-                if (!c.moveToFirst()) {
-                    this.callbackContext.error("Error occured while retrieving contact raw id");
-                    return;
-                }
-                String id = c.getString(c.getColumnIndex(RawContacts._ID));
+    public void onActivityResult(int requestCode, final int resultCode, final Intent intent) {
+        final ContactRequest request = requests.takeActivity(requestCode);
+        if (request == null) {
+            return;
+        }
+        // Resolving the picked contact hits the provider, keep it off the UI thread.
+        schedule(ContactScheduler.Lane.INTERACTIVE, request, new Runnable() {
+            public void run() {
+                sendPickedContact(request.getCallbackContext(), resultCode, intent);
+            }
+        });
+    }
+
+    private void sendPickedContact(CallbackContext callbackContext, int resultCode, Intent intent) {
+        if (resultCode == Activity.RESULT_OK) {
+            String contactId = intent.getData().getLastPathSegment();
+            // to populate contact data we require  Raw Contact ID
+            // so we do look up for contact raw id first
+            Cursor c =  this.cordova.getActivity().getContentResolver().query(RawContacts.CONTENT_URI,
+                        new String[] {RawContacts._ID}, RawContacts.CONTACT_ID + " = " + contactId, null, null);
+            if (!c.moveToFirst()) {
                 c.close();
+                callbackContext.error("Error occured while retrieving contact raw id");
+                return;
+            }
+            String id = c.getString(c.getColumnIndex(RawContacts._ID));
+            c.close();
 
-                try {
-                    JSONObject contact = contactAccessor.getContactById(id);
-                    this.callbackContext.success(contact);
-                    return;
-                } catch (JSONException e) {
-                    Log.e(LOG_TAG, "JSON fail.", e);
-                }
-            } else if (resultCode == Activity.RESULT_CANCELED){
-                this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT, UNKNOWN_ERROR));
+            try {
+                JSONObject contact = contactAccessor.getContactById(id);
+                callbackContext.success(contact);
                 return;
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, "JSON fail.", e);
             }
-            this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+        } else if (resultCode == Activity.RESULT_CANCELED){
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT, UNKNOWN_ERROR));
+            return;
         }
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
     }
 }
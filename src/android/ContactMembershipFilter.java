@@ -0,0 +1,294 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.util.Log;
+
+/**
+ * In-memory Bloom filter of the phone numbers and emails of the address book,
+ * answering "is this value unknown?" without any provider query.
+ * <p>
+ * A negative answer is exact; a positive one may be wrong (about 1% of the
+ * time, more once contacts were deleted or edited, since a Bloom filter
+ * can not forget) and has to be confirmed against the provider.
+ * <p>
+ * Phone numbers are keyed on their last MIN_MATCH digits, as PhoneLookup
+ * does, so that the formatting and the country prefix do not matter.
+ * Emails are keyed on their lower case address.
+ */
+public class ContactMembershipFilter {
+
+    private static final String LOG_TAG = "ContactMembershipFilter";
+
+    private static final int MIN_MATCH = 7;
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+    private static final int MIN_CAPACITY = 256;
+
+    private static final String[] PROJECTION = new String[] {
+        ContactsContract.Data.MIMETYPE,
+        ContactsContract.Data.DATA1
+    };
+
+    private static final String SELECTION = ContactsContract.Data.MIMETYPE + " IN (?,?)";
+
+    private final ContentResolver resolver;
+
+    /** The current filter, replaced as a whole so that checks need no lock. */
+    private volatile Table table;
+    /** Provider changes notified so far, and the count the filter is up to date with. */
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long syncedChanges;
+
+    public ContactMembershipFilter(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return the filter key of a phone number or an email, null if it has none.
+     */
+    public static String keyOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.indexOf('@') >= 0) {
+            String address = value.trim().toLowerCase(Locale.US);
+            return address.length() == 0 ? null : "e:" + address;
+        }
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits.append(ch);
+            }
+        }
+        if (digits.length() == 0) {
+            return null;
+        }
+        int start = Math.max(0, digits.length() - MIN_MATCH);
+        return "p:" + digits.substring(start);
+    }
+
+    public boolean isBuilt() {
+        return table != null;
+    }
+
+    /**
+     * Flag the filter as behind the provider, {@link #refresh} catches up.
+     */
+    public void markDirty() {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * @return true until a refresh started after the last change has completed.
+     */
+    public boolean isDirty() {
+        return syncedChanges != changes.get();
+    }
+
+    /**
+     * @return false if the value is certainly not in the address book.
+     */
+    public boolean mightContain(String value) {
+        String key = keyOf(value);
+        Table current = table;
+        if (key == null || current == null) {
+            return false;
+        }
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            int index = ((h1 + i * h2) & Integer.MAX_VALUE) % current.bitCount;
+            if ((current.bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the filter from a scan of the phone and email rows of the Data
+     * table. The current filter keeps answering until the new one is complete.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long seen = changes.get();
+        Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, SELECTION,
+                new String[] { Phone.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE }, null);
+        if (c == null) {
+            return;
+        }
+        // Leave room for the contacts added until the next rebuild.
+        int capacity = Math.max(MIN_CAPACITY, c.getCount() * 2);
+        int bitCount = capacity * BITS_PER_ENTRY;
+        long[] bits = new long[(bitCount + 63) / 64];
+        int entries = 0;
+        try {
+            while (c.moveToNext()) {
+                String key = keyOf(c.getString(1));
+                if (key != null) {
+                    set(bits, bitCount, key);
+                    entries++;
+                }
+            }
+        } finally {
+            c.close();
+        }
+        table = new Table(bits, bitCount, capacity, entries, 0, start, start);
+        // Only now can a negative answer be trusted again.
+        syncedChanges = seen;
+        Log.d(LOG_TAG, "Built with " + entries + " entries in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Catch up with the provider changes: add the values of the contacts
+     * updated since the last refresh, and rebuild when the stale entries
+     * (deleted or edited contacts) or the growth make the filter too imprecise.
+     * The new values are added to a copy of the filter, which then replaces it.
+     */
+    public synchronized void refresh() {
+        Table current = table;
+        if (current == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            rebuild();
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long seen = changes.get();
+        String since = String.valueOf(current.refreshedAt);
+
+        int deleted = 0;
+        Cursor c = resolver.query(ContactsContract.DeletedContacts.CONTENT_URI,
+                new String[] { ContactsContract.DeletedContacts.CONTACT_ID },
+                ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " >= ?",
+                new String[] { since }, null);
+        if (c != null) {
+            deleted = c.getCount();
+            c.close();
+        }
+
+        c = resolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION,
+                SELECTION + " AND " + ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP + " >= ?",
+                new String[] { Phone.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE, since }, null);
+        if (c == null) {
+            return;
+        }
+        long[] bits = current.bits.clone();
+        int entries = current.entries;
+        int stale = current.stale + deleted;
+        try {
+            while (c.moveToNext()) {
+                String key = keyOf(c.getString(1));
+                if (key != null) {
+                    set(bits, current.bitCount, key);
+                    entries++;
+                    // The contact may have lost a value as well, which stays in the filter.
+                    stale++;
+                }
+            }
+        } finally {
+            c.close();
+        }
+        if (entries > current.capacity || stale > current.capacity / 4) {
+            rebuild();
+            return;
+        }
+        table = new Table(bits, current.bitCount, current.capacity, entries, stale, current.builtAt, start);
+        syncedChanges = seen;
+    }
+
+    private static void set(long[] bits, int bitCount, String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            int index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a, mixed with the murmur3 finalizer so that both halves
+     * can be used as independent hashes.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        Table current = table;
+        JSONObject stats = new JSONObject();
+        stats.put("built", current != null);
+        stats.put("entries", current == null ? 0 : current.entries);
+        stats.put("stale", current == null ? 0 : current.stale);
+        stats.put("capacity", current == null ? 0 : current.capacity);
+        stats.put("bytes", current == null ? 0 : current.bits.length * 8);
+        stats.put("builtAt", current == null ? 0 : current.builtAt);
+        stats.put("dirty", isDirty());
+        return stats;
+    }
+
+    /**
+     * An immutable filter state: the bits are never written once published.
+     */
+    private static final class Table {
+        final long[] bits;
+        final int bitCount;
+        final int capacity;
+        final int entries;
+        /** Entries which may not be in the address book anymore. */
+        final int stale;
+        final long builtAt;
+        final long refreshedAt;
+
+        Table(long[] bits, int bitCount, int capacity, int entries, int stale, long builtAt, long refreshedAt) {
+            this.bits = bits;
+            this.bitCount = bitCount;
+            this.capacity = capacity;
+            this.entries = entries;
+            this.stale = stale;
+            this.builtAt = builtAt;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.RawContacts;
+import android.util.Log;
+
+/**
+ * A copy, in the application storage, of what a list screen shows of each
+ * person, so that the first screen of the app can be drawn from it at once
+ * instead of waiting for a search of the provider.
+ * <p>
+ * The mirror answers from what it holds, even when it is late on the
+ * provider: the changes made while the app was closed are caught up by
+ * {@link #reconcile()}, run in the background after startup and on every
+ * change notification. It keeps the VERSION and the contact of each raw
+ * contact, and only reads again the people whose raw contacts changed.
+ * <p>
+ * A row is {id, lookupKey, displayName, thumbnail, starred, hasPhoneNumber,
+ * phoneNumber, email}, as a summary with its primary phone number and email.
+ * <p>
+ * Searches and reconciles share a lock which {@link #close()} takes alone:
+ * once closed, the mirror is never opened again, which would create the
+ * database anew after it was deleted.
+ */
+public class ContactMirror extends SQLiteOpenHelper {
+
+    private static final String LOG_TAG = "ContactMirror";
+
+    public static final String DATABASE_NAME = "contacts_mirror.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // Contact ids per provider query.
+    private static final int BATCH_SIZE = 500;
+
+    private static final String TABLE_META = "meta";
+    private static final String TABLE_RAW = "raw_contacts";
+    private static final String TABLE_CONTACTS = "contacts";
+
+    private static final String META_RECONCILED_AT = "reconciled_at";
+
+    private static final String[] CONTACT_PROJECTION = new String[] {
+        Contacts._ID,
+        Contacts.LOOKUP_KEY,
+        Contacts.DISPLAY_NAME_PRIMARY,
+        Contacts.SORT_KEY_PRIMARY,
+        Contacts.PHOTO_THUMBNAIL_URI,
+        Contacts.STARRED,
+        Contacts.HAS_PHONE_NUMBER
+    };
+
+    private static final String CONTACT_COLUMNS = "contact_id, lookup_key, display_name, sort_key,"
+            + " thumbnail, starred, has_phone_number, phone_number, email";
+
+    private final Context context;
+    private volatile boolean dirty = true;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+
+    public ContactMirror(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        // Searches read the last committed state while a reconcile writes.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @return true if a mirror has been created in this application storage.
+     */
+    public static boolean exists(Context context) {
+        return context.getDatabasePath(DATABASE_NAME).exists();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_META + " (key TEXT PRIMARY KEY, value TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_RAW + " (raw_id INTEGER PRIMARY KEY,"
+                + " version INTEGER NOT NULL, contact_id INTEGER, account_type TEXT, account_name TEXT)");
+        db.execSQL("CREATE INDEX " + TABLE_RAW + "_account ON " + TABLE_RAW
+                + " (account_type, account_name)");
+        db.execSQL("CREATE TABLE " + TABLE_CONTACTS + " (contact_id INTEGER PRIMARY KEY,"
+                + " lookup_key TEXT, display_name TEXT, sort_key TEXT, folded TEXT, thumbnail TEXT,"
+                + " starred INTEGER NOT NULL, has_phone_number INTEGER NOT NULL,"
+                + " phone_number TEXT, email TEXT)");
+        db.execSQL("CREATE INDEX " + TABLE_CONTACTS + "_sort ON " + TABLE_CONTACTS + " (sort_key)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // It is only a copy of the provider: start again from scratch.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RAW);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONTACTS);
+        onCreate(db);
+    }
+
+    /**
+     * Flag the mirror as late on the provider, until the next reconcile.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Wait for the searches and the reconcile running, then close the
+     * database for good.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            super.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Take the shared lock, to be released with {@code lock.readLock().unlock()}.
+     * @throws IllegalStateException if the mirror has been closed.
+     */
+    private void acquire() {
+        lock.readLock().lock();
+        if (closed) {
+            lock.readLock().unlock();
+            throw new IllegalStateException("The mirror is closed");
+        }
+    }
+
+    /**
+     * @return when the mirror last caught up with the provider, 0 if it never did.
+     * @throws IllegalStateException if the mirror has been closed.
+     */
+    public long getReconciledAt() {
+        acquire();
+        try {
+            return readReconciledAt();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long readReconciledAt() {
+        Cursor c = getReadableDatabase().rawQuery(
+                "SELECT value FROM " + TABLE_META + " WHERE key = ?", new String[] { META_RECONCILED_AT });
+        try {
+            return c.moveToFirst() ? Long.parseLong(c.getString(0)) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Catch up with the provider: read again the people whose raw contacts
+     * were added, modified, moved to another person or removed since the last
+     * reconcile, and drop the people who are gone. The first reconcile reads
+     * everybody. Does nothing once the mirror is closed.
+     */
+    public synchronized void reconcile() {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            // Cleared first, so that a change notified during the reconcile sets it again.
+            dirty = false;
+
+            List<RawContact> changed = new ArrayList<RawContact>();
+            List<Long> removed = new ArrayList<Long>();
+            Set<Long> contactIds = new LinkedHashSet<Long>();
+            diffRawContacts(changed, removed, contactIds);
+
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (!changed.isEmpty() || !removed.isEmpty()) {
+                    Log.d(LOG_TAG, "reconcile: " + changed.size() + " changed, " + removed.size()
+                            + " removed raw contacts, " + contactIds.size() + " people.");
+                    writeRawContacts(db, changed, removed);
+                    writeContacts(db, new ArrayList<Long>(contactIds));
+                }
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_META + " (key, value) VALUES (?, ?)",
+                        new Object[] { META_RECONCILED_AT, String.valueOf(System.currentTimeMillis()) });
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // Still late on the provider: the next notification tries again.
+            dirty = true;
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walk the provider raw contacts and the mirrored ones, both by _ID, to
+     * find the raw contacts that are new, modified or moved to another
+     * person, and the removed ones. The people of both sides of a difference
+     * are added to contactIds.
+     */
+    private void diffRawContacts(List<RawContact> changed, List<Long> removed, Set<Long> contactIds) {
+        Cursor provider = context.getContentResolver().query(RawContacts.CONTENT_URI,
+                new String[] { RawContacts._ID, RawContacts.VERSION, RawContacts.CONTACT_ID,
+                    RawContacts.ACCOUNT_TYPE, RawContacts.ACCOUNT_NAME },
+                RawContacts.DELETED + " = 0", null, RawContacts._ID + " ASC");
+        Cursor local = getReadableDatabase().rawQuery(
+                "SELECT raw_id, version, contact_id FROM " + TABLE_RAW + " ORDER BY raw_id ASC", null);
+        try {
+            boolean hasProvider = provider.moveToNext();
+            boolean hasLocal = local.moveToNext();
+            while (hasProvider || hasLocal) {
+                long providerId = hasProvider ? provider.getLong(0) : Long.MAX_VALUE;
+                long localId = hasLocal ? local.getLong(0) : Long.MAX_VALUE;
+                if (providerId == localId) {
+                    if (provider.getInt(1) != local.getInt(1) || provider.getLong(2) != local.getLong(2)) {
+                        changed.add(new RawContact(provider));
+                        contactIds.add(provider.getLong(2));
+                        contactIds.add(local.getLong(2));
+                    }
+                    hasProvider = provider.moveToNext();
+                    hasLocal = local.moveToNext();
+                } else if (providerId < localId) {
+                    changed.add(new RawContact(provider));
+                    contactIds.add(provider.getLong(2));
+                    hasProvider = provider.moveToNext();
+                } else {
+                    removed.add(localId);
+                    contactIds.add(local.getLong(2));
+                    hasLocal = local.moveToNext();
+                }
+            }
+        } finally {
+            provider.close();
+            local.close();
+        }
+    }
+
+    private static void writeRawContacts(SQLiteDatabase db, List<RawContact> changed, List<Long> removed) {
+        for (Long rawId : removed) {
+            db.delete(TABLE_RAW, "raw_id = ?", new String[] { String.valueOf(rawId) });
+        }
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_RAW
+                + " (raw_id, version, contact_id, account_type, account_name) VALUES (?, ?, ?, ?, ?)");
+        try {
+            for (RawContact raw : changed) {
+                insert.clearBindings();
+                insert.bindLong(1, raw.rawId);
+                insert.bindLong(2, raw.version);
+                insert.bindLong(3, raw.contactId);
+                bind(insert, 4, raw.accountType);
+                bind(insert, 5, raw.accountName);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Read these people again from the provider; the ones it no longer has
+     * are dropped.
+     */
+    private void writeContacts(SQLiteDatabase db, List<Long> contactIds) {
+        ContentResolver resolver = context.getContentResolver();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_CONTACTS
+                + " (contact_id, lookup_key, display_name, sort_key, folded, thumbnail, starred,"
+                + " has_phone_number) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_CONTACTS
+                + " SET phone_number = ?, email = ? WHERE contact_id = ?");
+        try {
+            for (int from = 0; from < contactIds.size(); from += BATCH_SIZE) {
+                String ids = join(contactIds.subList(from, Math.min(from + BATCH_SIZE, contactIds.size())));
+                db.execSQL("DELETE FROM " + TABLE_CONTACTS + " WHERE contact_id IN (" + ids + ")");
+
+                Cursor c = resolver.query(Contacts.CONTENT_URI, CONTACT_PROJECTION,
+                        Contacts._ID + " IN (" + ids + ")", null, null);
+                if (c != null) {
+                    try {
+                        while (c.moveToNext()) {
+                            String displayName = c.getString(2);
+                            insert.clearBindings();
+                            insert.bindLong(1, c.getLong(0));
+                            bind(insert, 2, c.getString(1));
+                            bind(insert, 3, displayName);
+                            bind(insert, 4, c.getString(3));
+                            bind(insert, 5, displayName == null ? null : ContactTextNormalizer.fold(displayName));
+                            bind(insert, 6, c.getString(4));
+                            insert.bindLong(7, c.getInt(5));
+                            insert.bindLong(8, c.getInt(6));
+                            insert.executeInsert();
+                        }
+                    } finally {
+                        c.close();
+                    }
+                }
+
+                writePrimaries(resolver, update, ids);
+            }
+        } finally {
+            insert.close();
+            update.close();
+        }
+    }
+
+    /**
+     * Store the primary phone number and email of the people: the super
+     * primary one, else a primary one, else any.
+     */
+    private static void writePrimaries(ContentResolver resolver, SQLiteStatement update, String ids) {
+        Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI,
+                new String[] { ContactsContract.Data.CONTACT_ID, ContactsContract.Data.MIMETYPE,
+                    ContactsContract.Data.DATA1 },
+                ContactsContract.Data.MIMETYPE + " IN (?, ?) AND " + ContactsContract.Data.CONTACT_ID
+                    + " IN (" + ids + ")",
+                new String[] { Phone.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE },
+                ContactsContract.Data.CONTACT_ID + ", " + ContactsContract.Data.IS_SUPER_PRIMARY
+                    + " DESC, " + ContactsContract.Data.IS_PRIMARY + " DESC");
+        if (c == null) {
+            return;
+        }
+        try {
+            long contactId = -1;
+            String phone = null;
+            String email = null;
+            while (c.moveToNext()) {
+                if (c.getLong(0) != contactId) {
+                    if (contactId >= 0) {
+                        writePrimaries(update, contactId, phone, email);
+                    }
+                    contactId = c.getLong(0);
+                    phone = null;
+                    email = null;
+                }
+                if (phone == null && Phone.CONTENT_ITEM_TYPE.equals(c.getString(1))) {
+                    phone = c.getString(2);
+                } else if (email == null && Email.CONTENT_ITEM_TYPE.equals(c.getString(1))) {
+                    email = c.getString(2);
+                }
+            }
+            if (contactId >= 0) {
+                writePrimaries(update, contactId, phone, email);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void writePrimaries(SQLiteStatement update, long contactId, String phone, String email) {
+        update.clearBindings();
+        bind(update, 1, phone);
+        bind(update, 2, email);
+        update.bindLong(3, contactId);
+        update.executeUpdateDelete();
+    }
+
+    /**
+     * Find people in the mirror, as it is: it is not reconciled first.
+     *
+     * @param options {filter (matched at the start of the words of the name,
+     * or anywhere in the phone number and email), accountType, accountName,
+     * starred, sortOrder, limit, offset}, all optional
+     * @return {contacts, stale (true while the mirror may be late on the
+     * provider), reconciledAt}
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws IllegalStateException if the mirror has been closed.
+     */
+    public JSONObject search(JSONObject options, CancellationSignal signal) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int limit = options.has("limit") ? options.optInt("limit", -1) : -1;
+        int offset = options.optInt("offset", 0);
+        if ((options.has("limit") && limit < 0) || offset < 0) {
+            throw new IllegalArgumentException("Invalid limit or offset");
+        }
+
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<String>();
+        String filter = options.optString("filter");
+        if (filter.length() > 0) {
+            String folded = ContactTextNormalizer.fold(filter);
+            String digits = filter.replaceAll("[^0-9+]", "");
+            selection.append("(folded LIKE ? ESCAPE '\\' OR folded LIKE ? ESCAPE '\\'"
+                    + " OR email LIKE ? ESCAPE '\\'");
+            args.add(escapeLike(folded) + "%");
+            args.add("% " + escapeLike(folded) + "%");
+            args.add("%" + escapeLike(filter) + "%");
+            if (digits.length() > 0) {
+                selection.append(" OR replace(replace(replace(replace(phone_number, ' ', ''), '-', ''),"
+                        + " '(', ''), ')', '') LIKE ?");
+                args.add("%" + digits + "%");
+            }
+            selection.append(")");
+        }
+        if (options.has("starred")) {
+            selection.append(selection.length() == 0 ? "" : " AND ").append("starred = ?");
+            args.add(options.optBoolean("starred") ? "1" : "0");
+        }
+        String accountType = options.isNull("accountType") ? null : options.optString("accountType", null);
+        String accountName = options.isNull("accountName") ? null : options.optString("accountName", null);
+        if (accountType != null || accountName != null) {
+            selection.append(selection.length() == 0 ? "" : " AND ")
+                .append("contact_id IN (SELECT contact_id FROM " + TABLE_RAW + " WHERE 1");
+            if (accountType != null) {
+                selection.append(" AND account_type = ?");
+                args.add(accountType);
+            }
+            if (accountName != null) {
+                selection.append(" AND account_name = ?");
+                args.add(accountName);
+            }
+            selection.append(")");
+        }
+        String order = "desc".equalsIgnoreCase(options.optString("sortOrder")) ? " DESC" : " ASC";
+
+        acquire();
+        try {
+            JSONArray contacts = new JSONArray();
+            if (limit != 0) {
+                Cursor c = getReadableDatabase().rawQuery("SELECT " + CONTACT_COLUMNS + " FROM " + TABLE_CONTACTS
+                        + (selection.length() == 0 ? "" : " WHERE " + selection)
+                        + " ORDER BY sort_key" + order + " LIMIT " + limit + " OFFSET " + offset,
+                        args.toArray(new String[] {}));
+                try {
+                    while (c.moveToNext()) {
+                        ContactSummaries.throwIfCanceled(signal);
+                        JSONObject contact = new JSONObject();
+                        contact.put("id", c.getString(0));
+                        contact.put("lookupKey", c.getString(1));
+                        contact.put("displayName", c.getString(2));
+                        contact.put("thumbnail", c.isNull(4) ? JSONObject.NULL : c.getString(4));
+                        contact.put("starred", c.getInt(5) != 0);
+                        contact.put("hasPhoneNumber", c.getInt(6) != 0);
+                        contact.put("phoneNumber", c.isNull(7) ? JSONObject.NULL : c.getString(7));
+                        contact.put("email", c.isNull(8) ? JSONObject.NULL : c.getString(8));
+                        contacts.put(contact);
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+
+            long reconciledAt = readReconciledAt();
+            JSONObject result = new JSONObject();
+            result.put("contacts", contacts);
+            result.put("stale", dirty || reconciledAt == 0);
+            result.put("reconciledAt", reconciledAt == 0 ? JSONObject.NULL : reconciledAt);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the mirror has been closed.
+     */
+    public JSONObject getStats() throws JSONException {
+        acquire();
+        try {
+            JSONObject stats = new JSONObject();
+            SQLiteDatabase db = getReadableDatabase();
+            stats.put("contacts", DatabaseUtils.queryNumEntries(db, TABLE_CONTACTS));
+            stats.put("rawContacts", DatabaseUtils.queryNumEntries(db, TABLE_RAW));
+            long reconciledAt = readReconciledAt();
+            stats.put("reconciledAt", reconciledAt == 0 ? JSONObject.NULL : reconciledAt);
+            stats.put("dirty", dirty);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String join(List<Long> ids) {
+        StringBuilder buffer = new StringBuilder();
+        for (Long id : ids) {
+            buffer.append(buffer.length() == 0 ? "" : ",").append(id);
+        }
+        return buffer.toString();
+    }
+
+    private static void bind(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * A raw contact of the provider, as the mirror keeps it.
+     */
+    private static class RawContact {
+        final long rawId;
+        final int version;
+        final long contactId;
+        final String accountType;
+        final String accountName;
+
+        RawContact(Cursor c) {
+            this.rawId = c.getLong(0);
+            this.version = c.getInt(1);
+            this.contactId = c.getLong(2);
+            this.accountType = c.getString(3);
+            this.accountName = c.getString(4);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The page of a paged find: the limit, offset and after find options.
+ * <p>
+ * Raw contacts are paged in RawContacts._ID order, or in the order of a
+ * {@link ContactSorter sort}. The after cursor is opaque to the caller; it
+ * holds the _ID of the last raw contact of the previous page, and its sort
+ * value when sorted, so that the next page starts right after it even if
+ * contacts were added, removed or renamed in between.
+ */
+public class ContactPage {
+
+    private static final String CURSOR_PREFIX = "id:";
+
+    private final int offset;
+    private final int limit;
+    private final long after;
+    private final String afterValue;
+
+    private ContactPage(int offset, int limit, long after, String afterValue) {
+        this.offset = offset;
+        this.limit = limit;
+        this.after = after;
+        this.afterValue = afterValue;
+    }
+
+    /**
+     * @return true if the find options ask for a page, and so for a
+     * {contacts, after} result instead of an array of contacts.
+     */
+    public static boolean isPaged(JSONObject options) {
+        return options != null && (options.has("limit") || options.has("offset") || options.has("after"));
+    }
+
+    /**
+     * Read the page of the find options. Without paging options, the page is
+     * every contact, or the first one if multiple is false.
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public static ContactPage of(JSONObject options) {
+        if (options == null) {
+            return new ContactPage(0, Integer.MAX_VALUE, -1, null);
+        }
+        int limit = options.optBoolean("multiple", true) ? Integer.MAX_VALUE : 1;
+        if (options.has("limit") && !options.isNull("limit")) {
+            limit = Math.min(limit, options.optInt("limit", -1));
+        }
+        int offset = options.optInt("offset", 0);
+        if (limit < 0 || offset < 0) {
+            throw new IllegalArgumentException("Invalid limit or offset");
+        }
+        long after = -1;
+        String afterValue = null;
+        String cursor = options.isNull("after") ? null : options.optString("after", null);
+        if (cursor != null) {
+            if (!cursor.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            String[] parts = cursor.substring(CURSOR_PREFIX.length()).split(":", 2);
+            try {
+                after = Long.parseLong(parts[0]);
+                if (parts.length > 1) {
+                    afterValue = URLDecoder.decode(parts[1], "UTF-8");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        return new ContactPage(offset, limit, after, afterValue);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the _ID the page starts after, -1 for none.
+     */
+    public long getAfter() {
+        return after;
+    }
+
+    /**
+     * @return the sort value of the raw contact the page starts after, null if not sorted.
+     */
+    public String getAfterValue() {
+        return afterValue;
+    }
+
+    public boolean isBounded() {
+        return offset > 0 || limit != Integer.MAX_VALUE || after >= 0;
+    }
+
+    /**
+     * @return how many raw contacts, from the cursor on, have to be read to fill the page.
+     */
+    public int getReadLimit() {
+        return limit == Integer.MAX_VALUE ? limit : (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    }
+
+    /**
+     * Cut the page out of a set of raw contact ids.
+     * @return the ids of the page, in _ID order.
+     */
+    public Set<String> apply(Set<String> rawIds) {
+        List<Long> sorted = new ArrayList<Long>(rawIds.size());
+        for (String id : rawIds) {
+            long rawId = Long.parseLong(id);
+            if (rawId > after) {
+                sorted.add(rawId);
+            }
+        }
+        Collections.sort(sorted);
+        Set<String> page = new LinkedHashSet<String>();
+        for (int i = offset; i < sorted.size() && page.size() < limit; i++) {
+            page.add(String.valueOf(sorted.get(i)));
+        }
+        return page;
+    }
+
+    /**
+     * @return the raw contact id of the last contact of a page, null if empty.
+     */
+    public static String lastRawId(JSONArray contacts) throws JSONException {
+        return contacts.length() == 0 ? null : contacts.getJSONObject(contacts.length() - 1).getString("rawId");
+    }
+
+    /**
+     * @param lastSortValue the sort value of the last contact, null if not sorted
+     * @return the result of a paged find: {contacts, after}, after being
+     * the cursor of the next page, or null if this one is the last.
+     */
+    public JSONObject toResult(JSONArray contacts, String lastSortValue) throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("contacts", contacts);
+        Object next = JSONObject.NULL;
+        if (limit != Integer.MAX_VALUE && contacts.length() >= limit && contacts.length() > 0) {
+            String cursor = CURSOR_PREFIX + lastRawId(contacts);
+            if (lastSortValue != null) {
+                try {
+                    cursor += ":" + URLEncoder.encode(lastSortValue, "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    // UTF-8 is always supported
+                }
+            }
+            next = cursor;
+        }
+        result.put("after", next);
+        return result;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.PhoneLookup;
+import android.provider.ContactsContract.RawContacts;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+
+/**
+ * Phone number normalization and formatting-insensitive lookups.
+ * <p>
+ * Numbers are compared on their E.164 form (Phone.NORMALIZED_NUMBER) when
+ * it can be computed, and through PhoneLookup otherwise, which matches on
+ * the trailing digits whatever the formatting ("+33 6 12..." and "0612...").
+ */
+public class ContactPhoneNumbers {
+
+    private final Context context;
+    private String countryIso;
+
+    public ContactPhoneNumbers(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @return the upper case ISO 3166 code of the country of the device,
+     * from the SIM or the network, or the locale as a last resort.
+     */
+    public synchronized String getCountryIso() {
+        if (countryIso == null) {
+            TelephonyManager telephony = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            String iso = null;
+            if (telephony != null) {
+                iso = telephony.getSimCountryIso();
+                if (iso == null || iso.length() == 0) {
+                    iso = telephony.getNetworkCountryIso();
+                }
+            }
+            if (iso == null || iso.length() == 0) {
+                iso = Locale.getDefault().getCountry();
+            }
+            countryIso = iso.toUpperCase(Locale.US);
+        }
+        return countryIso;
+    }
+
+    /**
+     * @return the E.164 form of the number, null if it can not be computed.
+     */
+    public String toE164(String number) {
+        if (number == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        return PhoneNumberUtils.formatNumberToE164(number, getCountryIso());
+    }
+
+    /**
+     * @return the dialable characters of the number (digits, '+', '*', '#').
+     */
+    public static String stripSeparators(String number) {
+        if (number == null) {
+            return null;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return PhoneNumberUtils.stripSeparators(number);
+        }
+        return PhoneNumberUtils.normalizeNumber(number);
+    }
+
+    /**
+     * Find the raw contacts having a phone number equal to the given one,
+     * whatever the formatting of both.
+     *
+     * @param accountType restricts to this account if accountName is given too
+     * @param accountName restricts to this account if accountType is given too
+     * @return the raw contact ids
+     * @throws OperationCanceledException if the signal is triggered
+     */
+    public Set<String> lookupRawContactIds(String number, String accountType, String accountName,
+            CancellationSignal signal) {
+        ContentResolver resolver = context.getContentResolver();
+        Set<String> rawIds = new HashSet<String>();
+        Set<String> contactIds = new HashSet<String>();
+
+        String accountSelection = "";
+        String[] accountArgs = new String[0];
+        if (accountType != null && accountName != null) {
+            accountSelection = " AND " + RawContacts.ACCOUNT_TYPE + " = ? AND " + RawContacts.ACCOUNT_NAME + " = ?";
+            accountArgs = new String[] { accountType, accountName };
+        }
+
+        // Exact match on the stored E.164 form.
+        String e164 = toE164(number);
+        if (e164 != null) {
+            Cursor c = query(resolver, ContactsContract.Data.CONTENT_URI,
+                    new String[] { ContactsContract.Data.RAW_CONTACT_ID },
+                    ContactsContract.Data.MIMETYPE + " = ? AND " + Phone.NORMALIZED_NUMBER + " = ?"
+                        + accountSelection,
+                    concat(new String[] { Phone.CONTENT_ITEM_TYPE, e164 }, accountArgs), null, signal);
+            if (c != null) {
+                try {
+                    while (c.moveToNext()) {
+                        rawIds.add(c.getString(0));
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+        }
+
+        // Suffix match on the reversed digits, done by the provider.
+        String stripped = stripSeparators(number);
+        if (stripped != null && stripped.length() > 0) {
+            Cursor c = query(resolver,
+                    Uri.withAppendedPath(PhoneLookup.CONTENT_FILTER_URI, Uri.encode(stripped)),
+                    new String[] { PhoneLookup._ID }, null, null, null, signal);
+            if (c != null) {
+                try {
+                    while (c.moveToNext()) {
+                        contactIds.add(c.getString(0));
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+        }
+
+        if (contactIds.isEmpty()) {
+            return rawIds;
+        }
+
+        // PhoneLookup gives aggregated contacts: keep their raw contacts
+        // which hold the number themselves.
+        Cursor c = query(resolver, ContactsContract.Data.CONTENT_URI,
+                new String[] { ContactsContract.Data.RAW_CONTACT_ID, Phone.NUMBER },
+                ContactsContract.Data.MIMETYPE + " = ? AND " + ContactsContract.Data.CONTACT_ID
+                    + " IN (" + join(contactIds) + ")" + accountSelection,
+                concat(new String[] { Phone.CONTENT_ITEM_TYPE }, accountArgs), null, signal);
+        if (c == null) {
+            return rawIds;
+        }
+        try {
+            while (c.moveToNext()) {
+                if (PhoneNumberUtils.compare(stripped, c.getString(1))) {
+                    rawIds.add(c.getString(0));
+                }
+            }
+        } finally {
+            c.close();
+        }
+        return rawIds;
+    }
+
+    /**
+     * Query with the signal where the platform supports it (API 16), and
+     * only check it before the query otherwise.
+     *
+     * @throws OperationCanceledException if the signal is triggered
+     */
+    static Cursor query(ContentResolver resolver, Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder, CancellationSignal signal) {
+        if (signal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return resolver.query(uri, projection, selection, selectionArgs, sortOrder, signal);
+        }
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    private static String[] concat(String[] a, String[] b) {
+        String[] result = new String[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Join numeric ids for an IN clause.
+     */
+    static String join(Iterable<String> ids) {
+        StringBuilder buffer = new StringBuilder();
+        for (String id : ids) {
+            buffer.append(buffer.length() == 0 ? "" : ",").append(Long.parseLong(id));
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * A typed search predicate (the "where" find option), compiled to a provider
+ * selection with bound arguments.
+ * <p>
+ * Leaves compare one field: {field, eq}, {field, in: [..]}, {field, prefix},
+ * {field, gt / gte / lt / lte} and {field, isNull: true|false}. They are
+ * combined with {and: [..]} and {or: [..]}.
+ * <p>
+ * The selection runs on RawContactsEntity, where a row is one data item of a
+ * raw contact: a leaf on a data field (name.familyName, emails...) only holds
+ * on the rows of its mimetype, while a leaf on a raw contact field (dirty,
+ * sourceId...) holds on all the rows of the raw contact. So an AND of leaves
+ * on different mimetypes can not be one selection; such a node
+ * {@link #isSelection() is not a selection}, and its children have to be
+ * queried separately and their ids intersected.
+ */
+public class ContactPredicate {
+
+    /**
+     * The raw contact fields, with their column.
+     */
+    private static final Map<String, String> RAW_COLUMNS = new HashMap<String, String>();
+    static {
+        RAW_COLUMNS.put("id", ContactsContract.Data.CONTACT_ID);
+        RAW_COLUMNS.put("rawId", RawContacts._ID);
+        RAW_COLUMNS.put("accountType", RawContacts.ACCOUNT_TYPE);
+        RAW_COLUMNS.put("accountName", RawContacts.ACCOUNT_NAME);
+        RAW_COLUMNS.put("dirty", RawContacts.DIRTY);
+        RAW_COLUMNS.put("deleted", RawContacts.DELETED);
+        RAW_COLUMNS.put("sourceId", RawContacts.SOURCE_ID);
+        RAW_COLUMNS.put("sync1", RawContacts.SYNC1);
+        RAW_COLUMNS.put("sync2", RawContacts.SYNC2);
+        RAW_COLUMNS.put("sync3", RawContacts.SYNC3);
+        RAW_COLUMNS.put("sync4", RawContacts.SYNC4);
+    }
+
+    private static final String[] COMPARISONS = new String[] { "gt", "gte", "lt", "lte" };
+    private static final String[] OPERATORS = new String[] { ">", ">=", "<", "<=" };
+
+    private final String operator;
+    private final List<ContactPredicate> children;
+    private final String selection;
+    private final List<String> args;
+    private final Set<String> mimetypes;
+
+    private ContactPredicate(String operator, List<ContactPredicate> children) {
+        this.operator = operator;
+        this.children = children;
+        Set<String> all = new HashSet<String>();
+        for (ContactPredicate child : children) {
+            all.addAll(child.mimetypes);
+        }
+        this.mimetypes = Collections.unmodifiableSet(all);
+        if (isSelection()) {
+            StringBuilder buffer = new StringBuilder("(");
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < children.size(); i++) {
+                buffer.append(i == 0 ? "" : " " + operator + " ").append(children.get(i).selection);
+                values.addAll(children.get(i).args);
+            }
+            this.selection = buffer.append(")").toString();
+            this.args = values;
+        } else {
+            this.selection = null;
+            this.args = null;
+        }
+    }
+
+    private ContactPredicate(String selection, List<String> args, String mimetype) {
+        this.operator = null;
+        this.children = Collections.emptyList();
+        this.selection = selection;
+        this.args = args;
+        this.mimetypes = mimetype == null ? Collections.<String>emptySet() : Collections.singleton(mimetype);
+    }
+
+    /**
+     * Parse a predicate.
+     *
+     * @param json the predicate, as given in the find options
+     * @param dataColumns the column of each data field (name.familyName...)
+     * @param mimetypes the mimetype of each data field base name (name...)
+     * @throws IllegalArgumentException if the predicate is malformed or uses an unknown field
+     */
+    public static ContactPredicate parse(JSONObject json, Map<String, String> dataColumns,
+            Map<String, String> mimetypes) {
+        if (json == null) {
+            throw new IllegalArgumentException("Missing predicate");
+        }
+        if (json.has("and") || json.has("or")) {
+            String operator = json.has("and") ? "AND" : "OR";
+            JSONArray operands = json.optJSONArray(json.has("and") ? "and" : "or");
+            if (operands == null || operands.length() == 0) {
+                throw new IllegalArgumentException(operator + " needs an array of predicates");
+            }
+            List<ContactPredicate> children = new ArrayList<ContactPredicate>();
+            for (int i = 0; i < operands.length(); i++) {
+                children.add(parse(operands.optJSONObject(i), dataColumns, mimetypes));
+            }
+            return children.size() == 1 ? children.get(0) : new ContactPredicate(operator, children);
+        }
+
+        String field = json.optString("field", null);
+        if (field == null) {
+            throw new IllegalArgumentException("Missing predicate field");
+        }
+        String column = RAW_COLUMNS.get(field);
+        String mimetype = null;
+        if (column == null) {
+            if (field.equals("displayName")) {
+                field = "name";
+            }
+            String baseKey = field.split("\\.")[0];
+            mimetype = mimetypes.get(baseKey);
+            column = dataColumns.get(field);
+            if (column == null || mimetype == null || column.equals(mimetype)) {
+                // birthday and photos map to their mimetype, not to a column
+                throw new IllegalArgumentException("Unknown predicate field: " + field);
+            }
+        }
+
+        List<String> args = new ArrayList<String>();
+        StringBuilder sql = new StringBuilder("(");
+        int comparisons = 0;
+        if (json.has("eq")) {
+            Object value = json.opt("eq");
+            if (value == JSONObject.NULL) {
+                sql.append(column).append(" IS NULL");
+            } else {
+                sql.append(column).append(" = ?");
+                args.add(toArg(value));
+            }
+            comparisons++;
+        }
+        if (json.has("in")) {
+            JSONArray values = json.optJSONArray("in");
+            if (values == null) {
+                throw new IllegalArgumentException("in needs an array of values");
+            }
+            appendAnd(sql, comparisons++);
+            if (values.length() == 0) {
+                sql.append("0");
+            } else {
+                sql.append(column).append(" IN (");
+                for (int i = 0; i < values.length(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                    args.add(toArg(values.opt(i)));
+                }
+                sql.append(")");
+            }
+        }
+        if (json.has("prefix")) {
+            // A range rather than a LIKE, so that the provider can use its indexes.
+            String prefix = json.optString("prefix");
+            appendAnd(sql, comparisons++);
+            if (prefix.length() == 0) {
+                sql.append(column).append(" IS NOT NULL");
+            } else {
+                char last = prefix.charAt(prefix.length() - 1);
+                sql.append(column).append(" >= ?");
+                args.add(prefix);
+                if (last != Character.MAX_VALUE) {
+                    sql.append(" AND ").append(column).append(" < ?");
+                    args.add(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+                }
+            }
+        }
+        for (int i = 0; i < COMPARISONS.length; i++) {
+            if (json.has(COMPARISONS[i])) {
+                appendAnd(sql, comparisons++);
+                sql.append(column).append(' ').append(OPERATORS[i]).append(" ?");
+                args.add(toArg(json.opt(COMPARISONS[i])));
+            }
+        }
+        if (json.has("isNull")) {
+            appendAnd(sql, comparisons++);
+            sql.append(column).append(json.optBoolean("isNull", true) ? " IS NULL" : " IS NOT NULL");
+        }
+        if (comparisons == 0) {
+            throw new IllegalArgumentException("No comparison for field: " + field);
+        }
+
+        if (mimetype != null) {
+            sql.append(" AND ").append(ContactsContract.Data.MIMETYPE).append(" = ?");
+            args.add(mimetype);
+        }
+        sql.append(")");
+        return new ContactPredicate(sql.toString(), args, mimetype);
+    }
+
+    private static void appendAnd(StringBuilder sql, int comparisons) {
+        if (comparisons > 0) {
+            sql.append(" AND ");
+        }
+    }
+
+    private static String toArg(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? "1" : "0";
+        }
+        if (value == null || value == JSONObject.NULL) {
+            throw new IllegalArgumentException("null is only allowed with eq");
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return true if the predicate holds on single RawContactsEntity rows,
+     * so that {@link #getSelection} is the whole predicate.
+     */
+    public boolean isSelection() {
+        if (operator == null) {
+            return true;
+        }
+        int withData = 0;
+        for (ContactPredicate child : children) {
+            if (!child.isSelection()) {
+                return false;
+            }
+            if (!child.mimetypes.isEmpty()) {
+                withData++;
+            }
+        }
+        return operator.equals("OR") || withData <= 1 || mimetypes.size() <= 1;
+    }
+
+    public boolean isAnd() {
+        return "AND".equals(operator);
+    }
+
+    /**
+     * @return the operands of an AND or OR, empty for a leaf.
+     */
+    public List<ContactPredicate> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the selection, null if {@link #isSelection} is false.
+     */
+    public String getSelection() {
+        return selection;
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+}
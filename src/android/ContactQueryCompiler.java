@@ -0,0 +1,254 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * Compiles the search fields and the desired fields of a find into the
+ * selection and the projection of its provider queries, and caches them:
+ * a search with the same fields reuses the compiled plan, only the bound
+ * arguments change.
+ * <p>
+ * Search fields are normalized (["*"] expands to every field, "emails" and
+ * "emails.value" are one column) and grouped by mimetype, so that a find on
+ * several fields of one kind tests the mimetype once:
+ * (mimetype = ? AND (data2 LIKE ? OR data3 LIKE ?)).
+ */
+public class ContactQueryCompiler {
+
+    private static final int MAX_PLANS = 32;
+
+    private final Map<String, String> columns;
+    private final Map<String, String> mimetypes;
+    private final String[] baseColumns;
+
+    private final Map<String, Selection> selections = lruCache();
+    private final Map<String, String[]> projections = lruCache();
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param columns the column of each search field (name.familyName...)
+     * @param mimetypes the mimetype of each field base name (name...)
+     * @param baseColumns the columns always read
+     */
+    public ContactQueryCompiler(Map<String, String> columns, Map<String, String> mimetypes,
+            String[] baseColumns) {
+        this.columns = columns;
+        this.mimetypes = mimetypes;
+        this.baseColumns = baseColumns;
+    }
+
+    private static <V> Map<String, V> lruCache() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_PLANS;
+            }
+        };
+    }
+
+    /**
+     * @return the selection of the raw contacts having one of the fields matching the
+     * search term, restricted to an account if withAccount is true.
+     */
+    public synchronized Selection getSelection(JSONArray fields, boolean withAccount) {
+        Set<String> normalized = normalize(fields);
+        String key = normalized + (withAccount ? "|account" : "");
+        Selection selection = selections.get(key);
+        if (selection == null) {
+            misses++;
+            selection = compileSelection(normalized, withAccount);
+            selections.put(key, selection);
+        } else {
+            hits++;
+        }
+        return selection;
+    }
+
+    /**
+     * @param mask the contact fields and sub-fields to return
+     * @return the columns to read to populate them.
+     */
+    public synchronized String[] getProjection(ContactFieldMask mask) {
+        String key = mask.toString();
+        String[] projection = projections.get(key);
+        if (projection == null) {
+            misses++;
+            Set<String> columns = new LinkedHashSet<String>();
+            Collections.addAll(columns, baseColumns);
+            columns.addAll(mask.getColumns());
+            projection = columns.toArray(new String[] {});
+            projections.put(key, projection);
+        } else {
+            hits++;
+        }
+        return projection;
+    }
+
+    /**
+     * @return the distinct known search fields, sorted; ["*"] is every field.
+     */
+    private Set<String> normalize(JSONArray fields) {
+        Set<String> normalized = new TreeSet<String>();
+        boolean wildcard = fields.length() == 1 && "*".equals(fields.optString(0));
+        if (wildcard) {
+            normalized.addAll(columns.keySet());
+        } else {
+            for (int i = 0; i < fields.length(); i++) {
+                normalized.add(fields.optString(i));
+            }
+        }
+        return normalized;
+    }
+
+    private Selection compileSelection(Set<String> fields, boolean withAccount) {
+        // mimetype ("" for the raw contact columns) -> columns
+        Map<String, Set<String>> groups = new LinkedHashMap<String, Set<String>>();
+        boolean byId = false;
+        for (String field : fields) {
+            String column = columns.get(field);
+            String mimetype = mimetypes.get(field.split("\\.")[0]);
+            if (field.equals("id")) {
+                byId = true;
+                continue;
+            }
+            if (column == null || mimetypes.containsValue(column)) {
+                // unknown, or a kind without a searchable column (birthday, photos)
+                continue;
+            }
+            String group = mimetype == null ? "" : mimetype;
+            if (!groups.containsKey(group)) {
+                groups.put(group, new LinkedHashSet<String>());
+            }
+            groups.get(group).add(column);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        // literal values (String) and placeholders (Selection.Arg)
+        List<Object> args = new ArrayList<Object>();
+        if (byId) {
+            sql.append("(" + ContactsContract.Data.CONTACT_ID + " = ?)");
+            args.add(Selection.Arg.ID);
+        }
+        for (Map.Entry<String, Set<String>> group : groups.entrySet()) {
+            StringBuilder likes = new StringBuilder();
+            for (String column : group.getValue()) {
+                likes.append(likes.length() == 0 ? "" : " OR ").append(column).append(" LIKE ?");
+            }
+            sql.append(sql.length() == 0 ? "" : " OR ");
+            if (group.getKey().length() == 0) {
+                sql.append("(").append(likes).append(")");
+            } else {
+                sql.append("(" + ContactsContract.Data.MIMETYPE + " = ? AND (").append(likes).append("))");
+                args.add(group.getKey());
+            }
+            for (int i = 0; i < group.getValue().size(); i++) {
+                args.add(Selection.Arg.TERM);
+            }
+        }
+        if (sql.length() == 0) {
+            // No searchable field: nothing matches.
+            sql.append("0");
+        }
+
+        if (withAccount) {
+            sql.insert(0, '(').append(") AND " + RawContacts.ACCOUNT_TYPE + " = ? AND "
+                    + RawContacts.ACCOUNT_NAME + " = ?");
+            args.add(Selection.Arg.ACCOUNT_TYPE);
+            args.add(Selection.Arg.ACCOUNT_NAME);
+        }
+        return new Selection(sql.toString(), args.toArray());
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("selections", selections.size());
+        stats.put("projections", projections.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+
+    /**
+     * A compiled selection, with the placeholders of its arguments.
+     */
+    public static class Selection {
+        /** The arguments bound at search time. */
+        enum Arg { TERM, ID, ACCOUNT_TYPE, ACCOUNT_NAME }
+
+        private final String selection;
+        /** The literal arguments, as String, and the placeholders, as Arg. */
+        private final Object[] template;
+
+        Selection(String selection, Object[] template) {
+            this.selection = selection;
+            this.template = template;
+        }
+
+        public String getSelection() {
+            return selection;
+        }
+
+        /**
+         * @param term the LIKE pattern, "%filter%"
+         * @return the arguments of the selection for this search.
+         */
+        public String[] bind(String term, String accountType, String accountName) {
+            String[] args = new String[template.length];
+            for (int i = 0; i < args.length; i++) {
+                if (!(template[i] instanceof Arg)) {
+                    args[i] = (String) template[i];
+                    continue;
+                }
+                switch ((Arg) template[i]) {
+                    case TERM:
+                        args[i] = term;
+                        break;
+                    case ID:
+                        args[i] = term.substring(1, term.length() - 1);
+                        break;
+                    case ACCOUNT_TYPE:
+                        args[i] = accountType;
+                        break;
+                    case ACCOUNT_NAME:
+                        args[i] = accountName;
+                        break;
+                }
+            }
+            return args;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.CancellationSignal;
+import android.provider.ContactsContract.Contacts;
+
+/**
+ * The top contacts of a ranking: the favorites, the most contacted, the most
+ * recently contacted, or those with the best local usage score.
+ * <p>
+ * The first three are ranked by the provider, with the selection, the order
+ * and the limit of a single Contacts query. Recent Android versions no longer
+ * keep times_contacted and last_time_contacted up to date, so the app can
+ * also record the use of a contact itself: each use adds one to a score which
+ * halves every half-life. The scores are kept in SharedPreferences; the best
+ * ones are ranked in memory, then only those contacts are read.
+ */
+public class ContactRanking {
+
+    public static final String PREFERENCES_NAME = "ContactUsageScores";
+
+    /** The default half-life of a usage score: two weeks. */
+    public static final long DEFAULT_HALF_LIFE = 14L * 24 * 60 * 60 * 1000;
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private static final String[] EXTRA_COLUMNS = new String[] {
+        Contacts.TIMES_CONTACTED, Contacts.LAST_TIME_CONTACTED
+    };
+    private static final String[] EXTRA_KEYS = new String[] { "timesContacted", "lastTimeContacted" };
+
+    private final ContactSummaries summaries;
+    private final SharedPreferences scores;
+
+    public ContactRanking(Context context, ContactSummaries summaries) {
+        this.summaries = summaries;
+        this.scores = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Rank contacts.
+     *
+     * @param options {rank ("starred", "frequent", "recent" or "score"), limit,
+     * halfLife (ms, for "score"), primary, accountType, accountName}
+     * @return the summaries of the top contacts, best first, with their
+     * timesContacted and lastTimeContacted, and their score for "score".
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public JSONArray top(JSONObject options, CancellationSignal signal) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        String rank = options.optString("rank", "starred");
+        JSONObject page = new JSONObject();
+        page.put("limit", options.optInt("limit", DEFAULT_LIMIT));
+        if (options.has("primary")) {
+            page.put("primary", options.get("primary"));
+        }
+
+        StringBuilder selection = new StringBuilder();
+        String sortOrder;
+        if (rank.equals("starred")) {
+            selection.append(Contacts.STARRED + " = 1");
+            sortOrder = Contacts.SORT_KEY_PRIMARY + " ASC";
+        } else if (rank.equals("frequent")) {
+            selection.append(Contacts.TIMES_CONTACTED + " > 0");
+            sortOrder = Contacts.TIMES_CONTACTED + " DESC, " + Contacts.LAST_TIME_CONTACTED + " DESC";
+        } else if (rank.equals("recent")) {
+            selection.append(Contacts.LAST_TIME_CONTACTED + " > 0");
+            sortOrder = Contacts.LAST_TIME_CONTACTED + " DESC";
+        } else if (rank.equals("score")) {
+            return topScores(options, page, signal);
+        } else {
+            throw new IllegalArgumentException("Unknown rank: " + rank);
+        }
+        if (!summaries.appendAccount(selection, options, signal)) {
+            return new JSONArray();
+        }
+        return summaries.read(Contacts.CONTENT_URI, EXTRA_COLUMNS, EXTRA_KEYS, selection.toString(), null,
+                sortOrder, page, signal);
+    }
+
+    /**
+     * The contacts with the best usage scores. Only the scored contacts of the
+     * account are candidates; they are read best first, limit at a time, until
+     * limit of them still exist. The scores of the contacts which do not are
+     * dropped.
+     */
+    private JSONArray topScores(JSONObject options, JSONObject page, CancellationSignal signal)
+            throws JSONException {
+        int limit = page.getInt("limit");
+        long halfLife = options.optLong("halfLife", DEFAULT_HALF_LIFE);
+        if (limit < 0 || halfLife <= 0) {
+            throw new IllegalArgumentException("Invalid limit or halfLife");
+        }
+        final Map<String, Double> current = currentScores(halfLife);
+        Set<String> accountIds = summaries.accountContactIds(options, signal);
+        List<String> candidates = new ArrayList<String>();
+        List<String> gone = new ArrayList<String>();
+        for (String contactId : current.keySet()) {
+            if (!isContactId(contactId)) {
+                // Recorded before the ids were checked
+                gone.add(contactId);
+            } else if (accountIds == null || accountIds.contains(contactId)) {
+                candidates.add(contactId);
+            }
+        }
+        Collections.sort(candidates, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return Double.compare(current.get(b), current.get(a));
+            }
+        });
+
+        page.remove("limit");
+        JSONArray ranked = new JSONArray();
+        int next = 0;
+        while (ranked.length() < limit && next < candidates.size()) {
+            List<String> ids = candidates.subList(next,
+                    Math.min(candidates.size(), next + limit - ranked.length()));
+            next += ids.size();
+            JSONArray found = summaries.read(Contacts.CONTENT_URI, EXTRA_COLUMNS, EXTRA_KEYS,
+                    Contacts._ID + " IN (" + ContactPhoneNumbers.join(ids) + ")", null, null, page, signal);
+
+            Map<String, JSONObject> byId = new HashMap<String, JSONObject>();
+            for (int i = 0; i < found.length(); i++) {
+                byId.put(found.getJSONObject(i).getString("id"), found.getJSONObject(i));
+            }
+            for (String contactId : ids) {
+                JSONObject summary = byId.get(contactId);
+                if (summary != null) {
+                    summary.put("score", current.get(contactId));
+                    ranked.put(summary);
+                } else {
+                    gone.add(contactId);
+                }
+            }
+        }
+        forget(gone);
+        return ranked;
+    }
+
+    /**
+     * Drop the scores of contacts which no longer exist.
+     */
+    private synchronized void forget(List<String> contactIds) {
+        if (contactIds.isEmpty()) {
+            return;
+        }
+        SharedPreferences.Editor editor = scores.edit();
+        for (String contactId : contactIds) {
+            editor.remove(contactId);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Record a use of a contact: its score, decayed to now, gets the weight added.
+     *
+     * @param weight usually 1
+     * @return the new score.
+     * @throws IllegalArgumentException if contactId is not a number or halfLife not positive
+     */
+    public synchronized double record(String contactId, double weight, long halfLife) {
+        if (!isContactId(contactId)) {
+            throw new IllegalArgumentException("Invalid contact id: " + contactId);
+        }
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("Invalid halfLife: " + halfLife);
+        }
+        long now = System.currentTimeMillis();
+        double score = decay(scores.getString(contactId, null), now, halfLife) + weight;
+        if (score <= 0) {
+            scores.edit().remove(contactId).apply();
+            return 0;
+        }
+        scores.edit().putString(contactId, score + "@" + now).apply();
+        return score;
+    }
+
+    /**
+     * Forget all the usage scores.
+     */
+    public synchronized void clear() {
+        scores.edit().clear().apply();
+    }
+
+    private static boolean isContactId(String contactId) {
+        try {
+            return contactId != null && Long.parseLong(contactId) >= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private synchronized Map<String, Double> currentScores(long halfLife) {
+        long now = System.currentTimeMillis();
+        Map<String, Double> current = new HashMap<String, Double>();
+        for (Map.Entry<String, ?> entry : scores.getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                current.put(entry.getKey(), decay((String) entry.getValue(), now, halfLife));
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param stored "score@time", as written by record, may be null
+     * @return the stored score, halved every halfLife since it was stored.
+     */
+    private static double decay(String stored, long now, long halfLife) {
+        if (stored == null) {
+            return 0;
+        }
+        int at = stored.indexOf('@');
+        try {
+            double score = Double.parseDouble(stored.substring(0, at));
+            long time = Long.parseLong(stored.substring(at + 1));
+            return score * Math.pow(0.5, Math.max(0, now - time) / (double) halfLife);
+        } catch (RuntimeException e) {
+            // Unreadable: start over
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+
+import android.os.CancellationSignal;
+
+/**
+ * An in-flight plugin operation: everything needed to answer it, so that
+ * concurrent operations never share state.
+ */
+public class ContactRequest {
+
+    private final String id;
+    private final String action;
+    private final JSONArray args;
+    private final CallbackContext callbackContext;
+    private final CancellationSignal signal = new CancellationSignal();
+
+    ContactRequest(String id, String action, JSONArray args, CallbackContext callbackContext) {
+        this.id = id;
+        this.action = action;
+        this.args = args;
+        this.callbackContext = callbackContext;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public JSONArray getArgs() {
+        return args;
+    }
+
+    public CallbackContext getCallbackContext() {
+        return callbackContext;
+    }
+
+    public CancellationSignal getSignal() {
+        return signal;
+    }
+
+    public boolean isCancelled() {
+        return signal.isCanceled();
+    }
+
+    /**
+     * Answer the request with one of the ContactManager error codes.
+     */
+    public void error(int code) {
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, code));
+    }
+}
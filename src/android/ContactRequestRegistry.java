@@ -0,0 +1,119 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+
+/**
+ * Keeps the in-flight requests by id.
+ * <p>
+ * The id is the one given by the javascript side when there is one (to be
+ * able to cancel a search), the cordova callback id otherwise. Requests
+ * waiting for an activity result (contact picker) are also indexed by
+ * their activity request code.
+ */
+public class ContactRequestRegistry {
+
+    private static final int REQUEST_CODE_RANGE = 1000;
+
+    private final ConcurrentMap<String, ContactRequest> requests = new ConcurrentHashMap<String, ContactRequest>();
+    private final Map<Integer, ContactRequest> activityRequests = new ConcurrentHashMap<Integer, ContactRequest>();
+    private final AtomicInteger activitySequence = new AtomicInteger();
+    private final int baseRequestCode;
+
+    /**
+     * @param baseRequestCode first activity request code handed out by {@link #registerActivity}.
+     */
+    public ContactRequestRegistry(int baseRequestCode) {
+        this.baseRequestCode = baseRequestCode;
+    }
+
+    /**
+     * Create and keep a request.
+     * @param id id given by the caller, may be null.
+     * @throws IllegalArgumentException if a pending request already has this id
+     */
+    public ContactRequest register(String id, String action, JSONArray args, CallbackContext callbackContext) {
+        if (id == null) {
+            id = callbackContext.getCallbackId();
+        }
+        ContactRequest request = new ContactRequest(id, action, args, callbackContext);
+        if (requests.putIfAbsent(id, request) != null) {
+            throw new IllegalArgumentException("Request id already in use: " + id);
+        }
+        return request;
+    }
+
+    public ContactRequest get(String id) {
+        return requests.get(id);
+    }
+
+    /**
+     * Forget a request, once it has been answered.
+     */
+    public void finish(ContactRequest request) {
+        requests.remove(request.getId());
+    }
+
+    /**
+     * Trigger the cancellation signal of a pending request.
+     * @return false if there is no such pending request.
+     */
+    public boolean cancel(String id) {
+        ContactRequest request = requests.get(id);
+        if (request == null) {
+            return false;
+        }
+        request.getSignal().cancel();
+        return true;
+    }
+
+    /**
+     * Attach a request to a new activity request code.
+     * @return the request code to give to startActivityForResult.
+     */
+    public int registerActivity(ContactRequest request) {
+        int requestCode = baseRequestCode
+                + (activitySequence.getAndIncrement() & Integer.MAX_VALUE) % REQUEST_CODE_RANGE;
+        activityRequests.put(requestCode, request);
+        return requestCode;
+    }
+
+    /**
+     * @return the request waiting for this activity result, null if it is not one of ours.
+     */
+    public ContactRequest takeActivity(int requestCode) {
+        return activityRequests.remove(requestCode);
+    }
+
+    public boolean isAwaitingActivity(ContactRequest request) {
+        return activityRequests.containsValue(request);
+    }
+
+    public int size() {
+        return requests.size();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+/**
+ * Writes the result of a find to a file instead of sending it to the
+ * WebView, for full exports and sync snapshots.
+ * <p>
+ * The matching raw contact ids are selected first, then the contacts are
+ * read a batch at a time and each one is written as soon as it is read,
+ * through a buffered writer on a FileChannel: neither the result nor its
+ * JSON text is ever held in memory as a whole. The file is written under a
+ * temporary name and renamed once complete, so that a reader never sees a
+ * partial result.
+ */
+public class ContactResultFile {
+
+    // Raw contacts read per query.
+    private static final int BATCH_SIZE = 200;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+    private final ContactAccessorSdk5 accessor;
+
+    public ContactResultFile(Context context, ContactAccessorSdk5 accessor) {
+        this.context = context;
+        this.accessor = accessor;
+    }
+
+    /**
+     * Run a find and write its contacts to a file.
+     *
+     * @param fields the search fields, as for a find
+     * @param options the find options, with toFile: true or {directory
+     * ("cache", the default, or "data"), name, format ("json", the default,
+     * a JSON array, or "ndjson", one contact per line)}
+     * @return {path, size (in bytes), count (of contacts)}
+     * @throws IllegalArgumentException if an option is invalid, or the find is paged
+     * @throws IOException if the file cannot be written
+     */
+    public JSONObject write(JSONArray fields, JSONObject options, CancellationSignal signal)
+            throws JSONException, IOException {
+        if (ContactPage.isPaged(options)) {
+            throw new IllegalArgumentException("toFile writes the whole result: limit, offset and after are not supported");
+        }
+        JSONObject spec = options.optJSONObject("toFile");
+        if (spec == null) {
+            spec = new JSONObject();
+        }
+        String format = spec.optString("format", "json");
+        if (!format.equals("json") && !format.equals("ndjson")) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        String directory = spec.optString("directory", "cache");
+        File dir;
+        if (directory.equals("cache")) {
+            dir = context.getCacheDir();
+        } else if (directory.equals("data")) {
+            dir = context.getFilesDir();
+        } else {
+            throw new IllegalArgumentException("Unknown directory: " + directory);
+        }
+        String name = spec.isNull("name") ? null : spec.optString("name", null);
+        if (name == null) {
+            name = "contacts-" + System.currentTimeMillis() + "." + format;
+        } else if (name.length() == 0 || name.indexOf('/') >= 0 || name.equals(".") || name.equals("..")) {
+            throw new IllegalArgumentException("Invalid file name: " + name);
+        }
+        boolean array = format.equals("json");
+
+        long[] rawIds = accessor.selectRawIds(fields, options, signal);
+
+        File file = new File(dir, name);
+        File partial = new File(dir, name + ".part");
+        int count = 0;
+        boolean complete = false;
+        FileOutputStream stream = new FileOutputStream(partial);
+        FileChannel channel = stream.getChannel();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), "UTF-8"),
+                BUFFER_SIZE);
+        try {
+            writer.write(array ? "[" : "");
+            for (int from = 0; from < rawIds.length; from += BATCH_SIZE) {
+                List<String> batch = new ArrayList<String>(BATCH_SIZE);
+                for (int i = from; i < Math.min(from + BATCH_SIZE, rawIds.length); i++) {
+                    batch.add(String.valueOf(rawIds[i]));
+                }
+                JSONArray contacts = accessor.readRawContacts(batch, options, signal);
+                for (int i = 0; i < contacts.length(); i++) {
+                    if (array && count > 0) {
+                        writer.write(",");
+                    }
+                    writer.write(contacts.getJSONObject(i).toString());
+                    writer.write("\n");
+                    count++;
+                }
+            }
+            writer.write(array ? "]" : "");
+            writer.flush();
+            channel.force(false);
+            complete = true;
+        } finally {
+            writer.close();
+            if (!complete) {
+                partial.delete();
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial + " to " + file);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("path", file.getAbsolutePath());
+        result.put("size", file.length());
+        result.put("count", count);
+        return result;
+    }
+}
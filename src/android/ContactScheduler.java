@@ -0,0 +1,329 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Executor dedicated to the contacts plugin, so that a burst of writes does
+ * not starve searches nor the other plugins sharing cordova's thread pool.
+ * <p>
+ * Work is split in two lanes:
+ * <ul>
+ * <li>INTERACTIVE: search, getContactById, pick. Always dequeued before bulk work.
+ * <li>BULK: save, remove, sync. At most bulkParallelism of them run at once, so
+ * that a worker is left for interactive requests.
+ * </ul>
+ * Each lane has a bounded queue; submitting to a full lane throws a
+ * {@link RejectedExecutionException}.
+ */
+public class ContactScheduler {
+
+    public enum Lane { INTERACTIVE, BULK }
+
+    /**
+     * A command which must be told when the scheduler drops it unrun, to
+     * answer its request.
+     */
+    public interface Droppable extends Runnable {
+        void dropped();
+    }
+
+    private static final String LOG_TAG = "ContactScheduler";
+
+    public static final int DEFAULT_PARALLELISM = 3;
+    public static final int DEFAULT_BULK_PARALLELISM = 1;
+    public static final int DEFAULT_INTERACTIVE_CAPACITY = 64;
+    public static final int DEFAULT_BULK_CAPACITY = 512;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LaneStats interactiveStats = new LaneStats(DEFAULT_INTERACTIVE_CAPACITY);
+    private final LaneStats bulkStats = new LaneStats(DEFAULT_BULK_CAPACITY);
+
+    // Bulk tasks waiting for a bulk slot, they are not in the executor queue yet.
+    private final ArrayDeque<Task> bulkPending = new ArrayDeque<Task>();
+    private int bulkActive = 0;
+    private int bulkParallelism = DEFAULT_BULK_PARALLELISM;
+
+    public ContactScheduler() {
+        executor = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new WorkerFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a command on the given lane.
+     * @param lane the lane of the command
+     * @param command the work to do
+     * @throws RejectedExecutionException if the lane queue is full or the scheduler is shut down.
+     */
+    public void execute(Lane lane, Runnable command) {
+        Task task = new Task(lane, command, sequence.getAndIncrement());
+        LaneStats stats = statsOf(lane);
+
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Contacts scheduler is shut down");
+            }
+            if (stats.queued.get() >= stats.capacity) {
+                stats.rejected.incrementAndGet();
+                throw new RejectedExecutionException("Contacts " + lane + " lane is full");
+            }
+            stats.queued.incrementAndGet();
+
+            if (lane == Lane.BULK) {
+                if (bulkActive >= bulkParallelism) {
+                    bulkPending.add(task);
+                    return;
+                }
+                bulkActive++;
+            }
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shut down meanwhile: the task was never queued.
+            stats.queued.decrementAndGet();
+            if (lane == Lane.BULK) {
+                synchronized (this) {
+                    bulkActive--;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Update the scheduler settings. Missing keys are left untouched.
+     * @param options parallelism, bulkParallelism, interactiveCapacity, bulkCapacity
+     */
+    public void configure(JSONObject options) {
+        int parallelism = Math.max(1, options.optInt("parallelism", executor.getMaximumPoolSize()));
+        if (parallelism > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(parallelism);
+            executor.setCorePoolSize(parallelism);
+        } else {
+            executor.setCorePoolSize(parallelism);
+            executor.setMaximumPoolSize(parallelism);
+        }
+
+        interactiveStats.capacity = Math.max(1,
+                options.optInt("interactiveCapacity", interactiveStats.capacity));
+        bulkStats.capacity = Math.max(1, options.optInt("bulkCapacity", bulkStats.capacity));
+
+        ArrayDeque<Task> released = new ArrayDeque<Task>();
+        synchronized (this) {
+            bulkParallelism = Math.max(1, Math.min(parallelism,
+                    options.optInt("bulkParallelism", bulkParallelism)));
+            while (bulkActive < bulkParallelism && !bulkPending.isEmpty()) {
+                bulkActive++;
+                released.add(bulkPending.poll());
+            }
+        }
+        for (Task task : released) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                drop(task);
+            }
+        }
+    }
+
+    /**
+     * @return the settings and the queue metrics of both lanes.
+     */
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("parallelism", executor.getMaximumPoolSize());
+        synchronized (this) {
+            stats.put("bulkParallelism", bulkParallelism);
+        }
+        stats.put("interactive", interactiveStats.toJSON());
+        stats.put("bulk", bulkStats.toJSON());
+        return stats;
+    }
+
+    /**
+     * Drop queued work and interrupt running one. The dropped commands which
+     * are {@link Droppable} are told so.
+     */
+    public void shutdown() {
+        List<Runnable> dropped = new ArrayList<Runnable>();
+        synchronized (this) {
+            dropped.addAll(bulkPending);
+            bulkPending.clear();
+        }
+        dropped.addAll(executor.shutdownNow());
+        for (Runnable task : dropped) {
+            drop(task);
+        }
+    }
+
+    /**
+     * Tell a task which will never run that it was dropped, if it is {@link Droppable}.
+     */
+    private void drop(Runnable task) {
+        Runnable command = task instanceof Task ? ((Task) task).command : task;
+        if (command instanceof Droppable) {
+            try {
+                ((Droppable) command).dropped();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Cannot answer a dropped task.", e);
+            }
+        }
+    }
+
+    private LaneStats statsOf(Lane lane) {
+        return lane == Lane.INTERACTIVE ? interactiveStats : bulkStats;
+    }
+
+    private void onStart(Task task) {
+        LaneStats stats = statsOf(task.lane);
+        long wait = SystemClock.elapsedRealtime() - task.enqueuedAt;
+        stats.queued.decrementAndGet();
+        stats.running.incrementAndGet();
+        stats.totalWait.addAndGet(wait);
+        long max;
+        do {
+            max = stats.maxWait.get();
+        } while (wait > max && !stats.maxWait.compareAndSet(max, wait));
+
+        Process.setThreadPriority(task.lane == Lane.INTERACTIVE
+                ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    private void onFinish(Task task) {
+        LaneStats stats = statsOf(task.lane);
+        stats.running.decrementAndGet();
+        stats.completed.incrementAndGet();
+
+        if (task.lane == Lane.BULK) {
+            Task next;
+            synchronized (this) {
+                next = bulkPending.poll();
+                if (next == null) {
+                    bulkActive--;
+                }
+            }
+            if (next != null) {
+                try {
+                    executor.execute(next);
+                } catch (RejectedExecutionException e) {
+                    Log.w(LOG_TAG, "Dropping bulk task, scheduler is shut down.");
+                    drop(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued command, ordered by lane first then by submission order.
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        final Lane lane;
+        final Runnable command;
+        final long seq;
+        final long enqueuedAt;
+
+        Task(Lane lane, Runnable command, long seq) {
+            this.lane = lane;
+            this.command = command;
+            this.seq = seq;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+
+        public void run() {
+            onStart(this);
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Task failed on " + lane + " lane.", e);
+            } finally {
+                onFinish(this);
+            }
+        }
+
+        public int compareTo(Task other) {
+            if (lane != other.lane) {
+                return lane.ordinal() - other.lane.ordinal();
+            }
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    /**
+     * Queue metrics of one lane.
+     */
+    private static class LaneStats {
+        volatile int capacity;
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong totalWait = new AtomicLong();
+        final AtomicLong maxWait = new AtomicLong();
+
+        LaneStats(int capacity) {
+            this.capacity = capacity;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            long done = completed.get() + running.get();
+            json.put("capacity", capacity);
+            json.put("queued", queued.get());
+            json.put("running", running.get());
+            json.put("completed", completed.get());
+            json.put("rejected", rejected.get());
+            json.put("avgWaitMs", done == 0 ? 0 : totalWait.get() / done);
+            json.put("maxWaitMs", maxWait.get());
+            return json;
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "contacts-worker-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.CancellationSignal;
+
+/**
+ * Single-flight for searches: a search identical to one already queued or
+ * running joins it and gets the same result, instead of scanning the
+ * provider again.
+ */
+public class ContactSearchCoalescer {
+
+    private final Map<String, Flight> flights = new HashMap<String, Flight>();
+    private long started = 0;
+    private long deduplicated = 0;
+
+    /**
+     * Attach a request to the flight of its key, creating the flight if needed.
+     * The request which creates the flight is its leader: it has to run the
+     * search and then {@link Flight#complete} it.
+     */
+    public synchronized Flight join(String key, ContactRequest request) {
+        Flight flight = flights.get(key);
+        if (flight == null) {
+            flight = new Flight(key, request);
+            flights.put(key, flight);
+            started++;
+        } else {
+            deduplicated++;
+        }
+        flight.waiters.add(request);
+        return flight;
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("started", started);
+        stats.put("deduplicated", deduplicated);
+        stats.put("inFlight", flights.size());
+        return stats;
+    }
+
+    /**
+     * Build the key of a search: the same for two searches which give the same result.
+     * Field lists are sorted and de-duplicated, the other options are taken in key order.
+     */
+    public static String keyOf(JSONArray fields, JSONObject options) throws JSONException {
+        StringBuilder key = new StringBuilder();
+        key.append(sortedSet(fields));
+
+        if (options == null) {
+            return key.toString();
+        }
+
+        key.append("|filter=").append(options.optString("filter"));
+        key.append("|multiple=").append(options.optBoolean("multiple", true));
+        key.append("|account=").append(options.optString("accountType", null))
+            .append('/').append(options.optString("accountName", null));
+        key.append("|desired=").append(sortedSet(options.optJSONArray("desiredFields")));
+
+        // Any other option changes the result as well.
+        List<String> names = new ArrayList<String>();
+        Iterator<String> it = options.keys();
+        while (it.hasNext()) {
+            names.add(it.next());
+        }
+        Collections.sort(names);
+        for (String name : names) {
+            if (name.equals("requestId") || name.equals("filter") || name.equals("multiple")
+                    || name.equals("accountType") || name.equals("accountName")
+                    || name.equals("desiredFields")) {
+                continue;
+            }
+            key.append('|').append(name).append('=').append(options.opt(name));
+        }
+        return key.toString();
+    }
+
+    private static String sortedSet(JSONArray array) throws JSONException {
+        if (array == null) {
+            return "[]";
+        }
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < array.length(); i++) {
+            String value = array.getString(i);
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+        }
+        Collections.sort(values);
+        return values.toString();
+    }
+
+    /**
+     * One provider search, shared by all the requests waiting for it.
+     */
+    public class Flight {
+        private final String key;
+        private final ContactRequest leader;
+        private final List<ContactRequest> waiters = new ArrayList<ContactRequest>();
+        private final CancellationSignal signal = new CancellationSignal();
+
+        Flight(String key, ContactRequest leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        public boolean isLeader(ContactRequest request) {
+            return leader == request;
+        }
+
+        /**
+         * @return the signal to give to the search, it is cancelled once every waiter left.
+         */
+        public CancellationSignal getSignal() {
+            return signal;
+        }
+
+        /**
+         * Remove a waiter, typically when its request is cancelled.
+         * @return false if the request was not waiting anymore (already answered).
+         */
+        public boolean detach(ContactRequest request) {
+            boolean empty;
+            synchronized (ContactSearchCoalescer.this) {
+                if (!waiters.remove(request)) {
+                    return false;
+                }
+                empty = waiters.isEmpty();
+                if (empty && flights.get(key) == this) {
+                    flights.remove(key);
+                }
+            }
+            if (empty) {
+                signal.cancel();
+            }
+            return true;
+        }
+
+        /**
+         * Close the flight: requests joining from now start a new search.
+         * @return the requests to answer.
+         */
+        public List<ContactRequest> complete() {
+            synchronized (ContactSearchCoalescer.this) {
+                if (flights.get(key) == this) {
+                    flights.remove(key);
+                }
+                List<ContactRequest> result = new ArrayList<ContactRequest>(waiters);
+                waiters.clear();
+                return result;
+            }
+        }
+    }
+}
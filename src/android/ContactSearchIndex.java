@@ -0,0 +1,582 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Nickname;
+import android.provider.ContactsContract.CommonDataKinds.Note;
+import android.provider.ContactsContract.CommonDataKinds.Organization;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.RawContacts;
+import android.provider.ContactsContract.RawContactsEntity;
+import android.util.Log;
+
+/**
+ * Local full-text index of the searchable contact fields (names, nickname,
+ * emails, phones, organization and note), stored in the application
+ * databases as a SQLite FTS4 table with one document per raw contact.
+ * <p>
+ * The index keeps the VERSION of each raw contact: {@link #sync} compares it
+ * with the provider and only re-indexes what changed. {@link #rebuild}
+ * re-indexes everything.
+ * <p>
+ * Documents and search strings are folded (accents and case) with
+ * {@link ContactTextNormalizer}, so "helene" finds "Hélène" with a plain
+ * LIKE or MATCH on the stored keys.
+ */
+public class ContactSearchIndex extends SQLiteOpenHelper {
+
+    private static final String LOG_TAG = "ContactSearchIndex";
+
+    public static final String DATABASE_NAME = "contacts_search_index.db";
+    // 2: the documents are folded with ContactTextNormalizer.
+    private static final int DATABASE_VERSION = 2;
+
+    // Raw contacts re-indexed per provider query.
+    private static final int BATCH_SIZE = 500;
+
+    private static final String TABLE_RAW = "raw_contacts";
+    private static final String TABLE_FTS = "contacts_fts";
+    private static final String TABLE_META = "meta";
+    private static final String META_BUILT_AT = "builtAt";
+
+    private static final String COL_DISPLAY_NAME = "display_name";
+    private static final String COL_GIVEN_NAME = "given_name";
+    private static final String COL_FAMILY_NAME = "family_name";
+    private static final String COL_MIDDLE_NAME = "middle_name";
+    private static final String COL_PREFIX = "name_prefix";
+    private static final String COL_SUFFIX = "name_suffix";
+    private static final String COL_NICKNAME = "nickname";
+    private static final String COL_EMAILS = "emails";
+    private static final String COL_PHONES = "phones";
+    private static final String COL_ORG_NAME = "org_name";
+    private static final String COL_ORG_DEPARTMENT = "org_department";
+    private static final String COL_ORG_TITLE = "org_title";
+    private static final String COL_NOTE = "note";
+
+    private static final String[] FTS_COLUMNS = new String[] {
+        COL_DISPLAY_NAME, COL_GIVEN_NAME, COL_FAMILY_NAME, COL_MIDDLE_NAME,
+        COL_PREFIX, COL_SUFFIX, COL_NICKNAME, COL_EMAILS, COL_PHONES,
+        COL_ORG_NAME, COL_ORG_DEPARTMENT, COL_ORG_TITLE, COL_NOTE
+    };
+
+    /**
+     * The JavaScript search fields the index can answer, with their index column.
+     */
+    private static final Map<String, String> FIELD_COLUMNS = new HashMap<String, String>();
+    static {
+        FIELD_COLUMNS.put("displayName", COL_DISPLAY_NAME);
+        FIELD_COLUMNS.put("name", COL_DISPLAY_NAME);
+        FIELD_COLUMNS.put("name.formatted", COL_DISPLAY_NAME);
+        FIELD_COLUMNS.put("name.givenName", COL_GIVEN_NAME);
+        FIELD_COLUMNS.put("name.familyName", COL_FAMILY_NAME);
+        FIELD_COLUMNS.put("name.middleName", COL_MIDDLE_NAME);
+        FIELD_COLUMNS.put("name.honorificPrefix", COL_PREFIX);
+        FIELD_COLUMNS.put("name.honorificSuffix", COL_SUFFIX);
+        FIELD_COLUMNS.put("nickname", COL_NICKNAME);
+        FIELD_COLUMNS.put("emails", COL_EMAILS);
+        FIELD_COLUMNS.put("emails.value", COL_EMAILS);
+        FIELD_COLUMNS.put("phoneNumbers", COL_PHONES);
+        FIELD_COLUMNS.put("phoneNumbers.value", COL_PHONES);
+        FIELD_COLUMNS.put("organizations", COL_ORG_NAME);
+        FIELD_COLUMNS.put("organizations.name", COL_ORG_NAME);
+        FIELD_COLUMNS.put("organizations.department", COL_ORG_DEPARTMENT);
+        FIELD_COLUMNS.put("organizations.title", COL_ORG_TITLE);
+        FIELD_COLUMNS.put("note", COL_NOTE);
+    }
+
+    /**
+     * The provider columns read to build the documents.
+     */
+    private static final String[] ENTITY_PROJECTION;
+    static {
+        Set<String> columns = new LinkedHashSet<String>();
+        columns.add(RawContacts._ID);
+        columns.add(RawContacts.VERSION);
+        columns.add(RawContacts.ACCOUNT_TYPE);
+        columns.add(RawContacts.ACCOUNT_NAME);
+        columns.add(ContactsContract.Data.MIMETYPE);
+        columns.add(StructuredName.DISPLAY_NAME);
+        columns.add(StructuredName.GIVEN_NAME);
+        columns.add(StructuredName.FAMILY_NAME);
+        columns.add(StructuredName.MIDDLE_NAME);
+        columns.add(StructuredName.PREFIX);
+        columns.add(StructuredName.SUFFIX);
+        columns.add(Nickname.NAME);
+        columns.add(Email.ADDRESS);
+        columns.add(Phone.NUMBER);
+        columns.add(Organization.COMPANY);
+        columns.add(Organization.DEPARTMENT);
+        columns.add(Organization.TITLE);
+        columns.add(Note.NOTE);
+        ENTITY_PROJECTION = columns.toArray(new String[] {});
+    }
+
+    private final Context context;
+    private volatile boolean dirty = true;
+
+    public ContactSearchIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        // Searches read the last committed documents while a sync writes.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @return true if an index has been created in this application storage.
+     */
+    public static boolean exists(Context context) {
+        return context.getDatabasePath(DATABASE_NAME).exists();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_META + " (key TEXT PRIMARY KEY, value TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_RAW + " (raw_id INTEGER PRIMARY KEY,"
+                + " version INTEGER NOT NULL, account_type TEXT, account_name TEXT)");
+        db.execSQL("CREATE INDEX " + TABLE_RAW + "_account ON " + TABLE_RAW
+                + " (account_type, account_name)");
+
+        StringBuilder fts = new StringBuilder("CREATE VIRTUAL TABLE " + TABLE_FTS + " USING fts4(");
+        for (int i = 0; i < FTS_COLUMNS.length; i++) {
+            fts.append(i == 0 ? "" : ", ").append(FTS_COLUMNS[i]);
+        }
+        fts.append(")");
+        db.execSQL(fts.toString());
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // It is only a cache of the provider: start again from scratch.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RAW);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FTS);
+        onCreate(db);
+    }
+
+    /**
+     * Flag the index as late on the provider, until the next sync.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public boolean isBuilt() {
+        Cursor c = getReadableDatabase().rawQuery(
+                "SELECT value FROM " + TABLE_META + " WHERE key = ?", new String[] { META_BUILT_AT });
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Drop every document and index the whole provider again.
+     */
+    public synchronized void rebuild() {
+        SQLiteDatabase db = getWritableDatabase();
+        dirty = false;
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_RAW, null, null);
+            db.delete(TABLE_FTS, null, null);
+            Cursor c = context.getContentResolver().query(RawContactsEntity.CONTENT_URI,
+                    ENTITY_PROJECTION, RawContacts.DELETED + " = 0", null, RawContacts._ID + " ASC");
+            writeDocuments(db, c);
+
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_META + " (key, value) VALUES (?, ?)",
+                    new Object[] { META_BUILT_AT, String.valueOf(System.currentTimeMillis()) });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Re-index the raw contacts whose VERSION changed since they were indexed,
+     * and drop the removed ones.
+     */
+    public synchronized void sync() {
+        if (!isBuilt()) {
+            rebuild();
+            return;
+        }
+        dirty = false;
+
+        List<Long> changed = new ArrayList<Long>();
+        List<Long> removed = new ArrayList<Long>();
+        diffVersions(changed, removed);
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        Log.d(LOG_TAG, "sync: " + changed.size() + " changed, " + removed.size() + " removed.");
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Long rawId : removed) {
+                deleteDocument(db, rawId);
+            }
+            ContentResolver resolver = context.getContentResolver();
+            for (int from = 0; from < changed.size(); from += BATCH_SIZE) {
+                List<Long> batch = changed.subList(from, Math.min(from + BATCH_SIZE, changed.size()));
+                Cursor c = resolver.query(RawContactsEntity.CONTENT_URI, ENTITY_PROJECTION,
+                        RawContacts._ID + " IN (" + join(batch) + ")", null, RawContacts._ID + " ASC");
+                writeDocuments(db, c);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Walk the provider raw contacts and the indexed ones, both by _ID, to find
+     * the new or modified raw contacts and the removed ones.
+     */
+    private void diffVersions(List<Long> changed, List<Long> removed) {
+        Cursor provider = context.getContentResolver().query(RawContacts.CONTENT_URI,
+                new String[] { RawContacts._ID, RawContacts.VERSION }, RawContacts.DELETED + " = 0", null,
+                RawContacts._ID + " ASC");
+        Cursor local = getReadableDatabase().rawQuery(
+                "SELECT raw_id, version FROM " + TABLE_RAW + " ORDER BY raw_id ASC", null);
+        try {
+            boolean hasProvider = provider.moveToNext();
+            boolean hasLocal = local.moveToNext();
+            while (hasProvider || hasLocal) {
+                long providerId = hasProvider ? provider.getLong(0) : Long.MAX_VALUE;
+                long localId = hasLocal ? local.getLong(0) : Long.MAX_VALUE;
+                if (providerId == localId) {
+                    if (provider.getInt(1) != local.getInt(1)) {
+                        changed.add(providerId);
+                    }
+                    hasProvider = provider.moveToNext();
+                    hasLocal = local.moveToNext();
+                } else if (providerId < localId) {
+                    changed.add(providerId);
+                    hasProvider = provider.moveToNext();
+                } else {
+                    removed.add(localId);
+                    hasLocal = local.moveToNext();
+                }
+            }
+        } finally {
+            provider.close();
+            local.close();
+        }
+    }
+
+    /**
+     * Index the raw contacts of a RawContactsEntity cursor sorted by _ID, then close it.
+     */
+    private void writeDocuments(SQLiteDatabase db, Cursor c) {
+        SQLiteStatement insertRaw = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_RAW
+                + " (raw_id, version, account_type, account_name) VALUES (?, ?, ?, ?)");
+        StringBuilder sql = new StringBuilder("INSERT INTO " + TABLE_FTS + " (docid");
+        for (String column : FTS_COLUMNS) {
+            sql.append(", ").append(column);
+        }
+        sql.append(") VALUES (?");
+        for (int i = 0; i < FTS_COLUMNS.length; i++) {
+            sql.append(", ?");
+        }
+        sql.append(")");
+        SQLiteStatement insertFts = db.compileStatement(sql.toString());
+
+        try {
+            Document doc = null;
+            int colId = c.getColumnIndex(RawContacts._ID);
+            while (c.moveToNext()) {
+                long rawId = c.getLong(colId);
+                if (doc == null || doc.rawId != rawId) {
+                    if (doc != null) {
+                        doc.write(db, insertRaw, insertFts);
+                    }
+                    doc = new Document(c, rawId);
+                }
+                doc.add(c);
+            }
+            if (doc != null) {
+                doc.write(db, insertRaw, insertFts);
+            }
+        } finally {
+            c.close();
+            insertRaw.close();
+            insertFts.close();
+        }
+    }
+
+    private static void deleteDocument(SQLiteDatabase db, long rawId) {
+        String[] args = new String[] { String.valueOf(rawId) };
+        db.delete(TABLE_RAW, "raw_id = ?", args);
+        db.delete(TABLE_FTS, "docid = ?", args);
+    }
+
+    /**
+     * Find the raw contacts matching a search, in the documents as last
+     * synced: a dirty index is not synced first, the sync queued on the
+     * change notification catches up in the background.
+     * <p>
+     * The prefix mode is an FTS MATCH on the index. The substring mode is a
+     * LIKE '%filter%' on every document of the searched columns: it spares
+     * the provider, but its cost grows with the size of the address book.
+     *
+     * @param fields the JavaScript fields searched
+     * @param filter the search string, as typed
+     * @param accountType restricts to this account if accountName is given too
+     * @param accountName restricts to this account if accountType is given too
+     * @param prefix match the start of words (FTS MATCH) instead of any substring
+     * @return the raw contact ids, or null if the index can not answer this
+     * search, or has never been built.
+     */
+    public Set<String> search(JSONArray fields, String filter, String accountType,
+            String accountName, boolean prefix) {
+        Set<String> columns = columnsOf(fields);
+        if (columns == null || filter == null || filter.length() == 0 || !isBuilt()) {
+            return null;
+        }
+        filter = ContactTextNormalizer.fold(filter);
+
+        String accountClause = "";
+        List<String> accountArgs = new ArrayList<String>();
+        if (accountType != null && accountName != null) {
+            accountClause = " AND docid IN (SELECT raw_id FROM " + TABLE_RAW
+                    + " WHERE account_type = ? AND account_name = ?)";
+            accountArgs.add(accountType);
+            accountArgs.add(accountName);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<String> args = new ArrayList<String>();
+        if (prefix) {
+            List<String> tokens = tokenize(filter);
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            // MATCH can not be ORed, so there is one select per column.
+            for (String column : columns) {
+                if (sql.length() > 0) {
+                    sql.append(" UNION ");
+                }
+                sql.append("SELECT docid FROM " + TABLE_FTS + " WHERE " + TABLE_FTS + " MATCH ?")
+                    .append(accountClause);
+                StringBuilder match = new StringBuilder();
+                for (String token : tokens) {
+                    match.append(match.length() == 0 ? "" : " ")
+                        .append(column).append(':').append(token).append('*');
+                }
+                args.add(match.toString());
+                args.addAll(accountArgs);
+            }
+        } else {
+            sql.append("SELECT docid FROM " + TABLE_FTS + " WHERE (");
+            boolean first = true;
+            for (String column : columns) {
+                sql.append(first ? "" : " OR ").append(column).append(" LIKE ?");
+                args.add("%" + filter + "%");
+                first = false;
+            }
+            sql.append(")").append(accountClause);
+            args.addAll(accountArgs);
+        }
+
+        Set<String> ids = new HashSet<String>();
+        Cursor c = getReadableDatabase().rawQuery(sql.toString(), args.toArray(new String[] {}));
+        try {
+            while (c.moveToNext()) {
+                ids.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return ids;
+    }
+
+    /**
+     * @return the index columns of the JavaScript fields, null if one of them is not indexed.
+     */
+    private static Set<String> columnsOf(JSONArray fields) {
+        if (fields == null || fields.length() == 0) {
+            return null;
+        }
+        Set<String> columns = new LinkedHashSet<String>();
+        for (int i = 0; i < fields.length(); i++) {
+            String column = FIELD_COLUMNS.get(fields.optString(i));
+            if (column == null) {
+                return null;
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * Split a search string in FTS tokens, dropping the FTS query syntax.
+     */
+    private static List<String> tokenize(String filter) {
+        List<String> tokens = new ArrayList<String>();
+        for (String token : filter.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 0) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        SQLiteDatabase db = getReadableDatabase();
+        stats.put("contacts", DatabaseUtils.queryNumEntries(db, TABLE_RAW));
+        Cursor c = db.rawQuery("SELECT value FROM " + TABLE_META + " WHERE key = ?",
+                new String[] { META_BUILT_AT });
+        try {
+            stats.put("builtAt", c.moveToFirst() ? Long.parseLong(c.getString(0)) : JSONObject.NULL);
+        } finally {
+            c.close();
+        }
+        stats.put("dirty", dirty);
+        return stats;
+    }
+
+    private static String join(List<Long> ids) {
+        StringBuilder buffer = new StringBuilder();
+        for (Long id : ids) {
+            buffer.append(buffer.length() == 0 ? "" : ",").append(id);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * The searchable text of one raw contact, gathered from its data rows.
+     */
+    private static class Document {
+        final long rawId;
+        final int version;
+        final String accountType;
+        final String accountName;
+        final Map<String, StringBuilder> values = new HashMap<String, StringBuilder>();
+
+        Document(Cursor c, long rawId) {
+            this.rawId = rawId;
+            this.version = c.getInt(c.getColumnIndex(RawContacts.VERSION));
+            this.accountType = c.getString(c.getColumnIndex(RawContacts.ACCOUNT_TYPE));
+            this.accountName = c.getString(c.getColumnIndex(RawContacts.ACCOUNT_NAME));
+        }
+
+        void add(Cursor c) {
+            String mimetype = c.getString(c.getColumnIndex(ContactsContract.Data.MIMETYPE));
+            if (StructuredName.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                append(COL_DISPLAY_NAME, c, StructuredName.DISPLAY_NAME);
+                append(COL_GIVEN_NAME, c, StructuredName.GIVEN_NAME);
+                append(COL_FAMILY_NAME, c, StructuredName.FAMILY_NAME);
+                append(COL_MIDDLE_NAME, c, StructuredName.MIDDLE_NAME);
+                append(COL_PREFIX, c, StructuredName.PREFIX);
+                append(COL_SUFFIX, c, StructuredName.SUFFIX);
+            } else if (Nickname.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                append(COL_NICKNAME, c, Nickname.NAME);
+            } else if (Email.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                append(COL_EMAILS, c, Email.ADDRESS);
+            } else if (Phone.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                String number = c.getString(c.getColumnIndex(Phone.NUMBER));
+                if (number != null) {
+                    // Also index the bare digits, so that "0612" finds "06 12 34 56 78".
+                    append(COL_PHONES, number);
+                    append(COL_PHONES, number.replaceAll("[^0-9+]", ""));
+                }
+            } else if (Organization.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                append(COL_ORG_NAME, c, Organization.COMPANY);
+                append(COL_ORG_DEPARTMENT, c, Organization.DEPARTMENT);
+                append(COL_ORG_TITLE, c, Organization.TITLE);
+            } else if (Note.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                append(COL_NOTE, c, Note.NOTE);
+            }
+        }
+
+        private void append(String column, Cursor c, String providerColumn) {
+            append(column, c.getString(c.getColumnIndex(providerColumn)));
+        }
+
+        private void append(String column, String value) {
+            if (value == null || value.length() == 0) {
+                return;
+            }
+            value = ContactTextNormalizer.fold(value);
+            StringBuilder buffer = values.get(column);
+            if (buffer == null) {
+                values.put(column, new StringBuilder(value));
+            } else {
+                buffer.append('\n').append(value);
+            }
+        }
+
+        void write(SQLiteDatabase db, SQLiteStatement insertRaw, SQLiteStatement insertFts) {
+            deleteDocument(db, rawId);
+
+            insertRaw.clearBindings();
+            insertRaw.bindLong(1, rawId);
+            insertRaw.bindLong(2, version);
+            bind(insertRaw, 3, accountType);
+            bind(insertRaw, 4, accountName);
+            insertRaw.executeInsert();
+
+            insertFts.clearBindings();
+            insertFts.bindLong(1, rawId);
+            for (int i = 0; i < FTS_COLUMNS.length; i++) {
+                StringBuilder value = values.get(FTS_COLUMNS[i]);
+                bind(insertFts, i + 2, value == null ? null : value.toString());
+            }
+            insertFts.executeInsert();
+        }
+
+        private static void bind(SQLiteStatement statement, int index, String value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, value);
+            }
+        }
+    }
+}
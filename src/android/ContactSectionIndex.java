@@ -0,0 +1,183 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.text.Collator;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.CancellationSignal;
+
+/**
+ * The sections of the sorted contact list, for an alphabetic fast-scroll:
+ * the label of each section, its count and the offset of its first contact.
+ * <p>
+ * Contacts are bucketed by the first letter of their sort name, the way
+ * ICU's AlphabeticIndex does: a letter goes to the bucket of its base letter
+ * when the locale does not tell them apart ("É" is in "E" in French), and to
+ * its own bucket otherwise ("Å" after "Z" in Swedish). Hangul syllables go
+ * to the bucket of their initial consonant, a run of CJK ideographs to one
+ * bucket, digits and symbols to "#", and the contacts without a name to "…".
+ * <p>
+ * Only the names cached by the {@link ContactSorter} are read, never the
+ * contacts: recomputing the sections after a change reads the names of the
+ * modified contacts only.
+ */
+public class ContactSectionIndex {
+
+    public static final String OTHERS = "#";
+    public static final String UNNAMED = "…";
+
+    // The compatibility jamo of the 19 initial consonants of Hangul syllables.
+    private static final String HANGUL_INITIALS =
+            "ㄱㄲㄴㄷㄸㄹㅁㅂㅃㅅ"
+            + "ㅆㅇㅈㅉㅊㅋㅌㅍㅎ";
+    private static final int HANGUL_FIRST = 0xAC00;
+    private static final int HANGUL_LAST = 0xD7A3;
+    private static final int HANGUL_INITIAL_SPAN = 21 * 28;
+
+    private final ContactSorter sorter;
+
+    public ContactSectionIndex(ContactSorter sorter) {
+        this.sorter = sorter;
+    }
+
+    /**
+     * Compute the sections.
+     *
+     * @param options {sortBy, sortOrder, accountType, accountName, locale}, may be null
+     * @return {locale, total, sections: [{label, offset, count}]}, the offsets
+     * being the positions in a find with the same sort and account.
+     * @throws IllegalArgumentException if the sortBy option is unknown.
+     */
+    public JSONObject compute(JSONObject options, CancellationSignal signal) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int field = ContactSorter.fieldIndex(options.optString("sortBy", "displayName"));
+        boolean descending = "desc".equalsIgnoreCase(options.optString("sortOrder"));
+        String accountType = options.isNull("accountType") ? null : options.optString("accountType", null);
+        String accountName = options.isNull("accountName") ? null : options.optString("accountName", null);
+        Locale locale = toLocale(options.isNull("locale") ? null : options.optString("locale", null));
+
+        Collator primary = Collator.getInstance(locale);
+        primary.setStrength(Collator.PRIMARY);
+
+        List<String> sorted = sorter.sort(null, accountType, accountName, field, descending, locale, signal);
+        JSONArray sections = new JSONArray();
+        String current = null;
+        int start = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            String label = labelOf(sorter.getValue(sorted.get(i), field), locale, primary);
+            if (label == null) {
+                // An ideograph gets the label of the run it starts.
+                label = current != null && isIdeograph(current.codePointAt(0))
+                        ? current : firstLetter(sorter.getValue(sorted.get(i), field));
+            }
+            if (!label.equals(current)) {
+                if (current != null) {
+                    sections.put(section(current, start, i - start));
+                }
+                current = label;
+                start = i;
+            }
+        }
+        if (current != null) {
+            sections.put(section(current, start, sorted.size() - start));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("locale", locale.toString());
+        result.put("total", sorted.size());
+        result.put("sections", sections);
+        return result;
+    }
+
+    private static JSONObject section(String label, int offset, int count) throws JSONException {
+        JSONObject section = new JSONObject();
+        section.put("label", label);
+        section.put("offset", offset);
+        section.put("count", count);
+        return section;
+    }
+
+    /**
+     * @return the bucket label of a name, null for an ideograph.
+     */
+    static String labelOf(String name, Locale locale, Collator primary) {
+        String trimmed = name == null ? "" : name.trim();
+        if (trimmed.length() == 0) {
+            return UNNAMED;
+        }
+        int codePoint = trimmed.codePointAt(0);
+        if (codePoint >= HANGUL_FIRST && codePoint <= HANGUL_LAST) {
+            return String.valueOf(HANGUL_INITIALS.charAt((codePoint - HANGUL_FIRST) / HANGUL_INITIAL_SPAN));
+        }
+        if (!Character.isLetter(codePoint)) {
+            return OTHERS;
+        }
+        if (isIdeograph(codePoint)) {
+            return null;
+        }
+
+        String letter = new String(Character.toChars(codePoint));
+        String upper = letter.toUpperCase(locale);
+        if (upper.codePointCount(0, upper.length()) != 1) {
+            // ß would become SS
+            upper = letter;
+        }
+        String base = ContactTextNormalizer.fold(letter).toUpperCase(locale);
+        if (base.length() > 0 && !base.equals(upper) && primary.compare(base, upper) == 0) {
+            // É in E, but also ß (SS) in S
+            return base.substring(0, 1);
+        }
+        return upper;
+    }
+
+    private static String firstLetter(String name) {
+        return new String(Character.toChars(name.trim().codePointAt(0)));
+    }
+
+    private static boolean isIdeograph(int codePoint) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(codePoint);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_B
+                || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS;
+    }
+
+    /**
+     * @param tag a locale such as "fr", "sv-SE" or "pt_BR", null for the device locale
+     */
+    static Locale toLocale(String tag) {
+        if (tag == null || tag.length() == 0) {
+            return Locale.getDefault();
+        }
+        String[] parts = tag.split("[-_]");
+        if (parts.length == 1) {
+            return new Locale(parts[0]);
+        }
+        return new Locale(parts[0], parts[1]);
+    }
+}
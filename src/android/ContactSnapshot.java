@@ -0,0 +1,555 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.provider.ContactsContract.Contacts;
+
+/**
+ * A read-only snapshot of the summaries of every person, in a file mapped in
+ * memory: opening it only maps the file, and a page or a prefix search reads
+ * the records where they are, without loading the address book.
+ * <p>
+ * Layout, big-endian:
+ * <ul>
+ * <li>the header: "CSNP", the version, the count of records, the count of
+ * words, the offsets of the words and of the string heap, the build time and
+ * the locale (a string of the heap)</li>
+ * <li>the records, {@link #RECORD_SIZE} bytes each, sorted by the collation
+ * key of the name in the locale: the contact _ID, the offset and length in
+ * the heap of the lookup key, the name, the folded name and the thumbnail
+ * URI (offset -1 for none), and the flags (starred, hasPhoneNumber)</li>
+ * <li>the words: for the start of each word of each folded name, the record
+ * and the offset of the word in the folded name, sorted by the UTF-8 bytes
+ * from there on. The words starting with a prefix are next to each other,
+ * and found with two binary searches.</li>
+ * <li>the string heap, in UTF-8</li>
+ * </ul>
+ * The snapshot is written to a temporary file as the people are read, then
+ * renamed over the previous one: a reader keeps the mapping it has, and the
+ * next open maps the new file.
+ */
+public class ContactSnapshot {
+
+    public static final String FILE_NAME = "contacts.snapshot";
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = new byte[] { 'C', 'S', 'N', 'P' };
+
+    // magic, version, records, words, words offset, heap offset, built at, locale offset and length
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4 + 8 + 4 + 4;
+
+    // _ID, four strings (offset and length), flags
+    static final int RECORD_SIZE = 8 + 4 * 8 + 4;
+
+    private static final int WORD_SIZE = 8;
+
+    private static final int FLAG_STARRED = 1;
+    private static final int FLAG_HAS_PHONE_NUMBER = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] PROJECTION = new String[] {
+        Contacts._ID,
+        Contacts.LOOKUP_KEY,
+        Contacts.DISPLAY_NAME_PRIMARY,
+        Contacts.PHOTO_THUMBNAIL_URI,
+        Contacts.STARRED,
+        Contacts.HAS_PHONE_NUMBER
+    };
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int records;
+    private final int words;
+    private final int wordsOffset;
+    private final int heapOffset;
+    private final long builtAt;
+    private final String locale;
+    private volatile boolean stale;
+
+    private ContactSnapshot(File file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length && i < buffer.capacity(); i++) {
+            magic[i] = buffer.get(i);
+        }
+        if (buffer.capacity() < HEADER_SIZE || !Arrays.equals(magic, MAGIC) || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a contacts snapshot: " + file);
+        }
+        this.records = buffer.getInt(8);
+        this.words = buffer.getInt(12);
+        this.wordsOffset = buffer.getInt(16);
+        this.heapOffset = buffer.getInt(20);
+        this.builtAt = buffer.getLong(24);
+        if (wordsOffset != HEADER_SIZE + records * RECORD_SIZE
+                || heapOffset != wordsOffset + words * WORD_SIZE || heapOffset > buffer.capacity()) {
+            throw new IOException("Truncated contacts snapshot: " + file);
+        }
+        this.locale = string(buffer.getInt(32), buffer.getInt(36));
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @throws IOException if it cannot be read, or is not a snapshot of this version
+     */
+    public static ContactSnapshot open(File file) throws IOException {
+        RandomAccessFile stream = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = stream.getChannel();
+            // The mapping stays valid once the file is closed, or replaced.
+            return new ContactSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read every person and write a new snapshot, which replaces the file
+     * once complete. One build runs at a time.
+     *
+     * @return the new snapshot, mapped
+     * @throws IOException if the file cannot be written
+     */
+    public static synchronized ContactSnapshot build(ContentResolver resolver, File file, Locale locale,
+            CancellationSignal signal) throws IOException {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY);
+
+        // The strings go to the heap file as the people are read; only the
+        // sort keys, the folded names and the heap references stay in memory.
+        File heapFile = new File(file.getPath() + ".heap");
+        File partial = new File(file.getPath() + ".part");
+        List<Entry> entries = new ArrayList<Entry>();
+        boolean complete = false;
+        try {
+            Heap heap = new Heap(heapFile);
+            try {
+                Cursor c = resolver.query(Contacts.CONTENT_URI, PROJECTION, null, null, null);
+                if (c != null) {
+                    try {
+                        while (c.moveToNext()) {
+                            ContactSummaries.throwIfCanceled(signal);
+                            entries.add(new Entry(c, heap, collator));
+                        }
+                    } finally {
+                        c.close();
+                    }
+                }
+                heap.localeRef = heap.add(locale.toString());
+            } finally {
+                heap.close();
+            }
+
+            Collections.sort(entries, ORDER);
+            long[] wordRefs = words(entries);
+            ContactSummaries.throwIfCanceled(signal);
+
+            write(partial, heapFile, entries, wordRefs, heap);
+            complete = true;
+        } finally {
+            heapFile.delete();
+            if (!complete) {
+                partial.delete();
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial + " to " + file);
+        }
+        return open(file);
+    }
+
+    /**
+     * @return the starts of the words of the folded names, as (record << 32 |
+     * offset in the folded name), sorted by the bytes from there on.
+     */
+    private static long[] words(final List<Entry> entries) {
+        int count = 0;
+        for (Entry entry : entries) {
+            count += entry.wordStarts.length;
+        }
+        Long[] refs = new Long[count];
+        int n = 0;
+        for (int record = 0; record < entries.size(); record++) {
+            for (int start : entries.get(record).wordStarts) {
+                refs[n++] = ((long) record << 32) | start;
+            }
+        }
+        Arrays.sort(refs, new Comparator<Long>() {
+            public int compare(Long a, Long b) {
+                byte[] x = entries.get((int) (a >>> 32)).folded;
+                byte[] y = entries.get((int) (b >>> 32)).folded;
+                int i = (int) (long) a;
+                int j = (int) (long) b;
+                while (i < x.length && j < y.length) {
+                    int d = (x[i++] & 0xFF) - (y[j++] & 0xFF);
+                    if (d != 0) {
+                        return d;
+                    }
+                }
+                return (x.length - i) - (y.length - j);
+            }
+        });
+        long[] words = new long[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = refs[i];
+        }
+        return words;
+    }
+
+    private static void write(File partial, File heapFile, List<Entry> entries, long[] words, Heap heap)
+            throws IOException {
+        FileOutputStream stream = new FileOutputStream(partial);
+        FileChannel channel = stream.getChannel();
+        try {
+            int wordsOffset = HEADER_SIZE + entries.size() * RECORD_SIZE;
+            ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+            out.put(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(entries.size());
+            out.putInt(words.length);
+            out.putInt(wordsOffset);
+            out.putInt(wordsOffset + words.length * WORD_SIZE);
+            out.putLong(System.currentTimeMillis());
+            out.putInt(heap.localeRef[0]);
+            out.putInt(heap.localeRef[1]);
+            for (Entry entry : entries) {
+                if (out.remaining() < RECORD_SIZE) {
+                    drain(channel, out);
+                }
+                out.putLong(entry.contactId);
+                for (int[] ref : entry.refs) {
+                    out.putInt(ref[0]);
+                    out.putInt(ref[1]);
+                }
+                out.putInt(entry.flags);
+            }
+            for (long word : words) {
+                if (out.remaining() < WORD_SIZE) {
+                    drain(channel, out);
+                }
+                out.putInt((int) (word >>> 32));
+                out.putInt((int) word);
+            }
+            drain(channel, out);
+
+            FileChannel heapChannel = new RandomAccessFile(heapFile, "r").getChannel();
+            try {
+                long position = 0;
+                long size = heapChannel.size();
+                while (position < size) {
+                    position += heapChannel.transferTo(position, size - position, channel);
+                }
+            } finally {
+                heapChannel.close();
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+            stream.close();
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flag the snapshot as older than the provider, until it is rebuilt.
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Read a page of the snapshot.
+     *
+     * @param options {prefix (matched at the start of the words of the
+     * names, ignoring accents and case), limit, offset}, all optional
+     * @return {contacts (summaries, in the order of the names), total (the
+     * count of people matching), builtAt, stale}
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public JSONObject read(JSONObject options, CancellationSignal signal) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int limit = options.has("limit") ? options.optInt("limit", -1) : Integer.MAX_VALUE;
+        int offset = options.optInt("offset", 0);
+        if (limit < 0 || offset < 0) {
+            throw new IllegalArgumentException("Invalid limit or offset");
+        }
+        String prefix = options.optString("prefix");
+
+        int[] matches = null;
+        int total = records;
+        if (prefix.length() > 0) {
+            matches = find(ContactTextNormalizer.fold(prefix).getBytes(UTF_8));
+            total = matches.length;
+        }
+
+        JSONArray contacts = new JSONArray();
+        for (int i = offset; i < total && contacts.length() < limit; i++) {
+            ContactSummaries.throwIfCanceled(signal);
+            contacts.put(summary(matches == null ? i : matches[i]));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("contacts", contacts);
+        result.put("total", total);
+        result.put("builtAt", builtAt);
+        result.put("stale", stale);
+        return result;
+    }
+
+    /**
+     * @return the records having a word starting with the prefix, in order.
+     */
+    private int[] find(byte[] prefix) {
+        int from = search(prefix, false);
+        int to = search(prefix, true);
+        int[] found = new int[to - from];
+        for (int i = from; i < to; i++) {
+            found[i - from] = buffer.getInt(wordsOffset + i * WORD_SIZE);
+        }
+        Arrays.sort(found);
+        // A person matches once, whatever the count of its words matching.
+        int n = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (n == 0 || found[n - 1] != found[i]) {
+                found[n++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * @param after false for the first word starting with the prefix or
+     * after it, true for the first word after all those starting with it
+     */
+    private int search(byte[] prefix, boolean after) {
+        int low = 0;
+        int high = words;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareWord(middle, prefix);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare the start of a word with a prefix, in the mapped file.
+     *
+     * @return 0 if the word starts with the prefix
+     */
+    private int compareWord(int word, byte[] prefix) {
+        int record = buffer.getInt(wordsOffset + word * WORD_SIZE);
+        int start = buffer.getInt(wordsOffset + word * WORD_SIZE + 4);
+        int base = HEADER_SIZE + record * RECORD_SIZE;
+        int position = heapOffset + buffer.getInt(base + 8 + 2 * 8) + start;
+        int length = buffer.getInt(base + 8 + 2 * 8 + 4) - start;
+        for (int i = 0; i < prefix.length; i++) {
+            if (i == length) {
+                return -1;
+            }
+            int d = (buffer.get(position + i) & 0xFF) - (prefix[i] & 0xFF);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    private JSONObject summary(int record) throws JSONException {
+        int base = HEADER_SIZE + record * RECORD_SIZE;
+        int flags = buffer.getInt(base + 8 + 4 * 8);
+        JSONObject summary = new JSONObject();
+        summary.put("id", String.valueOf(buffer.getLong(base)));
+        summary.put("lookupKey", nullable(heapString(base, 0)));
+        summary.put("displayName", nullable(heapString(base, 1)));
+        summary.put("thumbnail", nullable(heapString(base, 3)));
+        summary.put("starred", (flags & FLAG_STARRED) != 0);
+        summary.put("hasPhoneNumber", (flags & FLAG_HAS_PHONE_NUMBER) != 0);
+        return summary;
+    }
+
+    private String heapString(int base, int index) {
+        int offset = buffer.getInt(base + 8 + index * 8);
+        return offset < 0 ? null : string(offset, buffer.getInt(base + 8 + index * 8 + 4));
+    }
+
+    private String string(int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(heapOffset + offset);
+        slice.limit(heapOffset + offset + length);
+        return UTF_8.decode(slice).toString();
+    }
+
+    private static Object nullable(String value) {
+        return value == null ? JSONObject.NULL : value;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("contacts", records);
+        stats.put("size", buffer.capacity());
+        stats.put("builtAt", builtAt);
+        stats.put("locale", locale);
+        stats.put("stale", stale);
+        return stats;
+    }
+
+    /**
+     * By collation key, the people without a name last, then by _ID.
+     */
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if ((a.key == null) != (b.key == null)) {
+                return a.key == null ? 1 : -1;
+            }
+            int result = a.key == null ? 0 : a.key.compareTo(b.key);
+            return result != 0 ? result : (a.contactId < b.contactId ? -1 : (a.contactId == b.contactId ? 0 : 1));
+        }
+    };
+
+    /**
+     * One person while the snapshot is built: its strings are already in the heap.
+     */
+    private static class Entry {
+        final long contactId;
+        // lookup key, name, folded name, thumbnail: {offset, length} in the heap
+        final int[][] refs = new int[4][];
+        final int flags;
+        final CollationKey key;
+        final byte[] folded;
+        final int[] wordStarts;
+
+        Entry(Cursor c, Heap heap, Collator collator) throws IOException {
+            contactId = c.getLong(0);
+            String name = c.getString(2);
+            name = name == null || name.trim().length() == 0 ? null : name.trim();
+            String fold = name == null ? "" : ContactTextNormalizer.fold(name);
+            folded = fold.getBytes(UTF_8);
+            refs[0] = heap.add(c.getString(1));
+            refs[1] = heap.add(name);
+            refs[2] = heap.add(fold);
+            refs[3] = heap.add(c.getString(3));
+            flags = (c.getInt(4) != 0 ? FLAG_STARRED : 0) | (c.getInt(5) != 0 ? FLAG_HAS_PHONE_NUMBER : 0);
+            key = name == null ? null : collator.getCollationKey(name);
+            wordStarts = wordStarts(fold);
+        }
+
+        /**
+         * @return the byte offsets of the words of a folded name.
+         */
+        private static int[] wordStarts(String fold) {
+            int[] starts = new int[fold.length()];
+            int n = 0;
+            int bytes = 0;
+            boolean inWord = false;
+            for (int i = 0; i < fold.length(); ) {
+                int cp = fold.codePointAt(i);
+                boolean letter = Character.isLetterOrDigit(cp);
+                if (letter && !inWord) {
+                    starts[n++] = bytes;
+                }
+                inWord = letter;
+                bytes += cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+                i += Character.charCount(cp);
+            }
+            return Arrays.copyOf(starts, n);
+        }
+    }
+
+    /**
+     * The string heap, written to a file as it grows.
+     */
+    private static class Heap {
+        private final OutputStream out;
+        private int size;
+        int[] localeRef;
+
+        Heap(File file) throws IOException {
+            out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        }
+
+        /**
+         * @return {offset, length} of the string, {-1, 0} for null.
+         */
+        int[] add(String value) throws IOException {
+            if (value == null) {
+                return new int[] { -1, 0 };
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            out.write(bytes);
+            int[] ref = new int[] { size, bytes.length };
+            size += bytes.length;
+            return ref;
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+}
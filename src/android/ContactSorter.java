@@ -0,0 +1,397 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * Sorts raw contacts by name, in the order of the device locale.
+ * <p>
+ * The names and their CollationKey are cached per raw contact with its
+ * VERSION, the keys for the last MAX_LOCALES locales used. Once
+ * {@link #setWatched watched}, the _ID and VERSION of every raw contact are
+ * only read again after a change notification ({@link #markDirty}), and the
+ * names of the ones which changed since. Contacts without a value for the
+ * sort field come last.
+ */
+public class ContactSorter {
+
+    /** The fields contacts can be sorted by, with their StructuredName column. */
+    private static final String[] FIELDS = new String[] { "displayName", "familyName", "givenName" };
+    private static final String[] COLUMNS = new String[] {
+        StructuredName.DISPLAY_NAME, StructuredName.FAMILY_NAME, StructuredName.GIVEN_NAME
+    };
+
+    // Names read per provider query.
+    private static final int BATCH_SIZE = 500;
+    // Locales the collation keys are kept for.
+    private static final int MAX_LOCALES = 2;
+
+    private final ContentResolver resolver;
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+    private final Locale[] locales = new Locale[MAX_LOCALES];
+    private final Collator[] collators = new Collator[MAX_LOCALES];
+    private final long[] lastUsed = new long[MAX_LOCALES];
+    private long uses = 0;
+
+    /** Change notifications so far, and the count the cache is up to date with. */
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long syncedChanges = -1;
+    private volatile boolean watched;
+
+    public ContactSorter(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return the index of a sort field, to give to the other methods.
+     * @throws IllegalArgumentException if contacts can not be sorted by this field.
+     */
+    public static int fieldIndex(String field) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(field)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sort field: " + field);
+    }
+
+    /**
+     * @param watched true when every provider change is reported to
+     * {@link #markDirty}: the raw contacts are then only read again after one.
+     */
+    public void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * Flag the cache as behind the provider: the next sort reads the raw contacts again.
+     */
+    public void markDirty() {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Sort raw contacts.
+     *
+     * @param rawIds the raw contacts to sort, null for all of them
+     * @param field the index of the sort field
+     * @param descending reverse the order
+     * @return the raw contact ids, sorted.
+     */
+    public List<String> sort(Set<String> rawIds, int field, boolean descending,
+            CancellationSignal signal) {
+        return sort(rawIds, null, null, field, descending, Locale.getDefault(), signal);
+    }
+
+    /**
+     * Sort raw contacts, in the order of a locale.
+     *
+     * @param rawIds the raw contacts to sort, null for all of them
+     * @param accountType only sort the raw contacts of this account, if not null
+     * @param accountName only sort the raw contacts of this account, if not null
+     * @param field the index of the sort field
+     * @param descending reverse the order
+     * @return the raw contact ids, sorted.
+     */
+    public synchronized List<String> sort(Set<String> rawIds, String accountType, String accountName,
+            int field, boolean descending, Locale locale, CancellationSignal signal) {
+        refresh(false, signal);
+        if (rawIds != null && !entries.keySet().containsAll(toLongs(rawIds))) {
+            // Written after the last notification, which is still on its way.
+            refresh(true, signal);
+        }
+        int slot = slot(locale);
+
+        List<Entry> sorted = new ArrayList<Entry>();
+        if (rawIds == null) {
+            for (Entry entry : entries.values()) {
+                if ((accountType == null || accountType.equals(entry.accountType))
+                        && (accountName == null || accountName.equals(entry.accountName))) {
+                    sorted.add(entry);
+                }
+            }
+        } else {
+            for (String id : rawIds) {
+                Entry entry = entries.get(Long.valueOf(id));
+                if (entry != null) {
+                    sorted.add(entry);
+                }
+            }
+        }
+        for (Entry entry : sorted) {
+            key(entry, field, slot);
+        }
+        Collections.sort(sorted, comparator(field, descending, slot));
+
+        List<String> result = new ArrayList<String>(sorted.size());
+        for (Entry entry : sorted) {
+            result.add(String.valueOf(entry.rawId));
+        }
+        return result;
+    }
+
+    /**
+     * Cut a page out of sorted raw contacts.
+     *
+     * @param sorted raw contact ids from {@link #sort}, with the same field and order,
+     * in the order of the device locale
+     * @return the ids of the page, in order.
+     */
+    public synchronized List<String> page(List<String> sorted, ContactPage page, int field, boolean descending) {
+        int slot = slot(Locale.getDefault());
+        int start = 0;
+        if (page.getAfter() >= 0) {
+            // The position right after the cursor, even if its contact is gone or was renamed.
+            Entry cursor = new Entry(page.getAfter(), 0);
+            if (page.getAfterValue() != null) {
+                cursor.values[field] = page.getAfterValue();
+            } else {
+                Entry previous = entries.get(page.getAfter());
+                cursor.values[field] = previous == null ? null : previous.values[field];
+            }
+            key(cursor, field, slot);
+            Comparator<Entry> comparator = comparator(field, descending, slot);
+            int low = 0;
+            int high = sorted.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Entry entry = entries.get(Long.valueOf(sorted.get(middle)));
+                // A raw contact removed since the sort counts as before the cursor.
+                if (entry == null || comparator.compare(entry, cursor) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            start = low;
+        }
+        start = (int) Math.min(sorted.size(), (long) start + page.getOffset());
+        int end = (int) Math.min(sorted.size(), (long) start + page.getLimit());
+        return sorted.subList(start, end);
+    }
+
+    /**
+     * @return the value a raw contact is sorted on, "" if it has none.
+     */
+    public synchronized String getValue(String rawId, int field) {
+        Entry entry = rawId == null ? null : entries.get(Long.valueOf(rawId));
+        return entry == null || entry.values[field] == null ? "" : entry.values[field];
+    }
+
+    /**
+     * Forget the cached names and keys.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        syncedChanges = -1;
+    }
+
+    /**
+     * @return the index of the collator of a locale and of its keys, created
+     * in place of the least recently used one if needed.
+     */
+    private int slot(Locale locale) {
+        int slot = 0;
+        for (int i = 0; i < MAX_LOCALES; i++) {
+            if (locale.equals(locales[i])) {
+                lastUsed[i] = ++uses;
+                return i;
+            }
+            if (lastUsed[i] < lastUsed[slot]) {
+                slot = i;
+            }
+        }
+        locales[slot] = locale;
+        collators[slot] = Collator.getInstance(locale);
+        collators[slot].setStrength(Collator.SECONDARY);
+        lastUsed[slot] = ++uses;
+        for (Entry entry : entries.values()) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                entry.keys[slot * FIELDS.length + i] = null;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Catch up with the provider: drop the removed raw contacts, and read the
+     * names of the new and modified ones. Does nothing while watched and no
+     * change was notified, unless forced.
+     */
+    private void refresh(boolean force, CancellationSignal signal) {
+        long notified = changes.get();
+        if (!force && watched && syncedChanges == notified) {
+            return;
+        }
+
+        // The new or modified raw contacts are only published with their names
+        // read, so that an interrupted refresh reads them again next time.
+        Set<Long> seen = new HashSet<Long>();
+        Map<Long, Entry> fresh = new HashMap<Long, Entry>();
+        Cursor c = resolver.query(RawContacts.CONTENT_URI,
+                new String[] { RawContacts._ID, RawContacts.VERSION, RawContacts.ACCOUNT_TYPE,
+                    RawContacts.ACCOUNT_NAME }, RawContacts.DELETED + " = 0", null, null);
+        if (c == null) {
+            return;
+        }
+        try {
+            while (c.moveToNext()) {
+                throwIfCanceled(signal);
+                long rawId = c.getLong(0);
+                int version = c.getInt(1);
+                seen.add(rawId);
+                Entry entry = entries.get(rawId);
+                if (entry == null || entry.version != version) {
+                    entry = new Entry(rawId, version);
+                    entry.accountType = c.getString(2);
+                    entry.accountName = c.getString(3);
+                    fresh.put(rawId, entry);
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        String[] projection = new String[COLUMNS.length + 1];
+        projection[0] = ContactsContract.Data.RAW_CONTACT_ID;
+        System.arraycopy(COLUMNS, 0, projection, 1, COLUMNS.length);
+        List<Long> changed = new ArrayList<Long>(fresh.keySet());
+        for (int from = 0; from < changed.size(); from += BATCH_SIZE) {
+            throwIfCanceled(signal);
+            List<Long> batch = changed.subList(from, Math.min(from + BATCH_SIZE, changed.size()));
+            StringBuilder ids = new StringBuilder();
+            for (Long rawId : batch) {
+                ids.append(ids.length() == 0 ? "" : ",").append(rawId);
+            }
+            c = resolver.query(ContactsContract.Data.CONTENT_URI, projection,
+                    ContactsContract.Data.MIMETYPE + " = ? AND "
+                    + ContactsContract.Data.RAW_CONTACT_ID + " IN (" + ids + ")",
+                    new String[] { StructuredName.CONTENT_ITEM_TYPE }, null);
+            if (c == null) {
+                return;
+            }
+            try {
+                while (c.moveToNext()) {
+                    Entry entry = fresh.get(c.getLong(0));
+                    if (entry != null) {
+                        for (int i = 0; i < COLUMNS.length; i++) {
+                            entry.values[i] = c.getString(i + 1);
+                        }
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        entries.keySet().retainAll(seen);
+        entries.putAll(fresh);
+        syncedChanges = notified;
+    }
+
+    private CollationKey key(Entry entry, int field, int slot) {
+        int index = slot * FIELDS.length + field;
+        if (entry.keys[index] == null) {
+            String value = entry.values[field];
+            entry.keys[index] = collators[slot].getCollationKey(value == null ? "" : value.trim());
+        }
+        return entry.keys[index];
+    }
+
+    private static Set<Long> toLongs(Set<String> ids) {
+        Set<Long> longs = new HashSet<Long>();
+        for (String id : ids) {
+            longs.add(Long.valueOf(id));
+        }
+        return longs;
+    }
+
+    /**
+     * By collation key, the contacts without a value last, then by _ID.
+     */
+    private Comparator<Entry> comparator(final int field, final boolean descending, final int slot) {
+        return new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                boolean aEmpty = isEmpty(a.values[field]);
+                boolean bEmpty = isEmpty(b.values[field]);
+                int result;
+                if (aEmpty != bEmpty) {
+                    return aEmpty ? 1 : -1;
+                }
+                result = aEmpty ? 0 : key(a, field, slot).compareTo(key(b, field, slot));
+                if (result == 0) {
+                    result = a.rawId < b.rawId ? -1 : (a.rawId == b.rawId ? 0 : 1);
+                }
+                return descending ? -result : result;
+            }
+        };
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().length() == 0;
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * The account and names of a raw contact, at a VERSION.
+     */
+    private static class Entry {
+        final long rawId;
+        final int version;
+        String accountType;
+        String accountName;
+        final String[] values = new String[FIELDS.length];
+        /** Per locale slot, then per field. */
+        final CollationKey[] keys = new CollationKey[MAX_LOCALES * FIELDS.length];
+
+        Entry(long rawId, int version) {
+            this.rawId = rawId;
+            this.version = version;
+        }
+    }
+}
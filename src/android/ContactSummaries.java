@@ -0,0 +1,278 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.RawContacts;
+
+/**
+ * Summaries of people for list screens, read from the aggregated Contacts
+ * table: one row per person, whatever the number of accounts it comes from,
+ * instead of one row per data item of every raw contact.
+ * <p>
+ * A summary is {id, lookupKey, displayName, thumbnail, starred,
+ * hasPhoneNumber}, with the primary phone number or email of the person when
+ * asked for, read with one more query for the whole page.
+ */
+public class ContactSummaries {
+
+    // Contact ids per Data query.
+    private static final int BATCH_SIZE = 500;
+
+    private static final String[] PROJECTION = new String[] {
+        Contacts._ID,
+        Contacts.LOOKUP_KEY,
+        Contacts.DISPLAY_NAME_PRIMARY,
+        Contacts.PHOTO_THUMBNAIL_URI,
+        Contacts.STARRED,
+        Contacts.HAS_PHONE_NUMBER
+    };
+
+    private final ContentResolver resolver;
+
+    public ContactSummaries(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Find people.
+     *
+     * @param options {filter, accountType, accountName, starred, primary
+     * ("phone" or "email"), sortOrder, limit, offset}, all optional
+     * @return the summaries, sorted by name.
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public JSONArray find(JSONObject options, CancellationSignal signal) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        String filter = options.optString("filter");
+        Uri uri = filter.length() == 0 ? Contacts.CONTENT_URI
+                : Uri.withAppendedPath(Contacts.CONTENT_FILTER_URI, Uri.encode(filter));
+
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<String>();
+        if (options.has("starred")) {
+            selection.append(Contacts.STARRED + " = ?");
+            args.add(options.optBoolean("starred") ? "1" : "0");
+        }
+        if (!appendAccount(selection, options, signal)) {
+            return new JSONArray();
+        }
+        String sortOrder = Contacts.SORT_KEY_PRIMARY
+                + ("desc".equalsIgnoreCase(options.optString("sortOrder")) ? " DESC" : " ASC");
+
+        return read(uri, null, null, selection.length() == 0 ? null : selection.toString(),
+                args.toArray(new String[] {}), sortOrder, options, signal);
+    }
+
+    /**
+     * Restrict a selection of Contacts to the people having a raw contact in
+     * the account of the options, if any.
+     * @return false if nobody does.
+     */
+    boolean appendAccount(StringBuilder selection, JSONObject options, CancellationSignal signal) {
+        Set<String> contactIds = accountContactIds(options, signal);
+        if (contactIds == null) {
+            return true;
+        }
+        if (contactIds.isEmpty()) {
+            return false;
+        }
+        selection.append(selection.length() == 0 ? "" : " AND ");
+        selection.append(Contacts._ID + " IN (" + ContactPhoneNumbers.join(contactIds) + ")");
+        return true;
+    }
+
+    /**
+     * @return the ids of the people having a raw contact in the account of the
+     * options, null if the options have no account.
+     */
+    Set<String> accountContactIds(JSONObject options, CancellationSignal signal) {
+        String accountType = options.isNull("accountType") ? null : options.optString("accountType", null);
+        String accountName = options.isNull("accountName") ? null : options.optString("accountName", null);
+        if (accountType == null && accountName == null) {
+            return null;
+        }
+        StringBuilder rawSelection = new StringBuilder(RawContacts.DELETED + " = 0");
+        List<String> rawArgs = new ArrayList<String>();
+        if (accountType != null) {
+            rawSelection.append(" AND " + RawContacts.ACCOUNT_TYPE + " = ?");
+            rawArgs.add(accountType);
+        }
+        if (accountName != null) {
+            rawSelection.append(" AND " + RawContacts.ACCOUNT_NAME + " = ?");
+            rawArgs.add(accountName);
+        }
+        Set<String> contactIds = new LinkedHashSet<String>();
+        Cursor c = resolver.query(RawContacts.CONTENT_URI, new String[] { RawContacts.CONTACT_ID },
+                rawSelection.toString(), rawArgs.toArray(new String[] {}), null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    if (!c.isNull(0)) {
+                        contactIds.add(c.getString(0));
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        throwIfCanceled(signal);
+        return contactIds;
+    }
+
+    /**
+     * Read a page of summaries.
+     *
+     * @param extraColumns more numeric Contacts columns to read, may be null
+     * @param extraKeys the keys of the extra columns in the summaries
+     * @param options the limit, offset and primary options
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    JSONArray read(Uri uri, String[] extraColumns, String[] extraKeys, String selection, String[] args,
+            String sortOrder, JSONObject options, CancellationSignal signal) throws JSONException {
+        int limit = options.has("limit") ? options.optInt("limit", -1) : Integer.MAX_VALUE;
+        int offset = options.optInt("offset", 0);
+        String primary = options.isNull("primary") ? null : options.optString("primary", null);
+        if (limit < 0 || offset < 0) {
+            throw new IllegalArgumentException("Invalid limit or offset");
+        }
+        if (primary != null && !primary.equals("phone") && !primary.equals("email")) {
+            throw new IllegalArgumentException("Invalid primary: " + primary);
+        }
+        if (limit == 0) {
+            return new JSONArray();
+        }
+        if (limit != Integer.MAX_VALUE) {
+            uri = uri.buildUpon().appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY,
+                    String.valueOf((long) offset + limit)).build();
+        }
+
+        String[] projection = PROJECTION;
+        if (extraColumns != null) {
+            projection = new String[PROJECTION.length + extraColumns.length];
+            System.arraycopy(PROJECTION, 0, projection, 0, PROJECTION.length);
+            System.arraycopy(extraColumns, 0, projection, PROJECTION.length, extraColumns.length);
+        }
+
+        Map<String, JSONObject> summaries = new LinkedHashMap<String, JSONObject>();
+        Cursor c = resolver.query(uri, projection, selection, args, sortOrder);
+        if (c == null) {
+            return new JSONArray();
+        }
+        try {
+            if (offset > 0 && !c.moveToPosition(offset - 1)) {
+                return new JSONArray();
+            }
+            while (summaries.size() < limit && c.moveToNext()) {
+                throwIfCanceled(signal);
+                JSONObject summary = new JSONObject();
+                summary.put("id", c.getString(0));
+                summary.put("lookupKey", c.getString(1));
+                summary.put("displayName", c.getString(2));
+                summary.put("thumbnail", c.isNull(3) ? JSONObject.NULL : c.getString(3));
+                summary.put("starred", c.getInt(4) != 0);
+                summary.put("hasPhoneNumber", c.getInt(5) != 0);
+                for (int i = PROJECTION.length; i < projection.length; i++) {
+                    summary.put(extraKeys[i - PROJECTION.length], c.getLong(i));
+                }
+                summaries.put(c.getString(0), summary);
+            }
+        } finally {
+            c.close();
+        }
+
+        if ("phone".equals(primary)) {
+            readPrimary(summaries, Phone.CONTENT_ITEM_TYPE, "phoneNumber", signal);
+        } else if ("email".equals(primary)) {
+            readPrimary(summaries, Email.CONTENT_ITEM_TYPE, "email", signal);
+        }
+
+        JSONArray result = new JSONArray();
+        for (JSONObject summary : summaries.values()) {
+            result.put(summary);
+        }
+        return result;
+    }
+
+    /**
+     * Add the primary phone number or email of each person: the super
+     * primary one, else a primary one, else any.
+     */
+    private void readPrimary(Map<String, JSONObject> summaries, String mimetype, String key,
+            CancellationSignal signal) throws JSONException {
+        List<String> ids = new ArrayList<String>(summaries.keySet());
+        for (JSONObject summary : summaries.values()) {
+            summary.put(key, JSONObject.NULL);
+        }
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            throwIfCanceled(signal);
+            List<String> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            Cursor c = resolver.query(ContactsContract.Data.CONTENT_URI,
+                    new String[] { ContactsContract.Data.CONTACT_ID, ContactsContract.Data.DATA1 },
+                    ContactsContract.Data.MIMETYPE + " = ? AND " + ContactsContract.Data.CONTACT_ID
+                        + " IN (" + ContactPhoneNumbers.join(batch) + ")",
+                    new String[] { mimetype },
+                    ContactsContract.Data.CONTACT_ID + ", " + ContactsContract.Data.IS_SUPER_PRIMARY
+                        + " DESC, " + ContactsContract.Data.IS_PRIMARY + " DESC");
+            if (c == null) {
+                continue;
+            }
+            try {
+                String previous = null;
+                while (c.moveToNext()) {
+                    String contactId = c.getString(0);
+                    if (!contactId.equals(previous)) {
+                        summaries.get(contactId).put(key, c.getString(1));
+                        previous = contactId;
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+    }
+
+    static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Folds text to the key searches are compared on: "Hélène", "HELENE" and
+ * "hélène" all become "helene".
+ * <p>
+ * The text is decomposed (NFKD), its combining marks (accents, cedillas...)
+ * are dropped, the letters which do not decompose (œ, æ, ø, ß...) are
+ * spelled out, and the case is folded.
+ */
+public final class ContactTextNormalizer {
+
+    private ContactTextNormalizer() {
+    }
+
+    /**
+     * @return the search key of the text, null for null.
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (isAscii(text)) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char ch = decomposed.charAt(i);
+            int type = Character.getType(ch);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+            switch (ch) {
+                case 'Œ': case 'œ': folded.append("oe"); break;
+                case 'Æ': case 'æ': folded.append("ae"); break;
+                case 'Ø': case 'ø': folded.append('o'); break;
+                case 'Đ': case 'đ': folded.append('d'); break;
+                case 'Ł': case 'ł': folded.append('l'); break;
+                case 'ß': folded.append("ss"); break;
+                default: folded.append(Character.toLowerCase(ch));
+            }
+        }
+        return folded.toString();
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,480 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Event;
+import android.provider.ContactsContract.CommonDataKinds.Im;
+import android.provider.ContactsContract.CommonDataKinds.Nickname;
+import android.provider.ContactsContract.CommonDataKinds.Note;
+import android.provider.ContactsContract.CommonDataKinds.Organization;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.Photo;
+import android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.provider.ContactsContract.RawContacts;
+import android.provider.ContactsContract.RawContactsEntity;
+import android.util.SparseArray;
+
+/**
+ * Exports raw contacts to a vCard 3.0 or 4.0 file.
+ * <p>
+ * The raw contacts of the export are selected like a find, then their data
+ * rows are read a batch at a time, in _ID order: each contact is written as
+ * soon as its last row has been read, through a buffered writer on a
+ * FileChannel, so memory does not grow with the number of contacts. Photos
+ * are Base64-encoded straight into the file, without building the encoded
+ * string.
+ */
+public class ContactVCardExporter {
+
+    /** Receives the progress of an export. */
+    public interface Progress {
+        /** @param done the contacts read so far, written or skipped */
+        void onProgress(int done, int total);
+    }
+
+    // Raw contacts read per query, and between two progress reports.
+    private static final int BATCH_SIZE = 200;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Octets per line, without the line break (RFC 6350, 3.2).
+    private static final int LINE_LENGTH = 75;
+
+    private static final String[] PROJECTION = new String[] {
+        RawContacts._ID, ContactsContract.Data.MIMETYPE,
+        ContactsContract.Data.DATA1, ContactsContract.Data.DATA2, ContactsContract.Data.DATA3,
+        ContactsContract.Data.DATA4, ContactsContract.Data.DATA5, ContactsContract.Data.DATA6,
+        ContactsContract.Data.DATA7, ContactsContract.Data.DATA8, ContactsContract.Data.DATA9,
+        ContactsContract.Data.DATA10, ContactsContract.Data.DATA15
+    };
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /** The vCard TYPE of the Android phone types. */
+    static final SparseArray<String> PHONE_TYPES = new SparseArray<String>();
+    /** The vCard TYPE of the Android email, address and website types. */
+    static final SparseArray<String> CONTACT_TYPES = new SparseArray<String>();
+    /** The IMPP URI scheme of the Android IM protocols. */
+    static final SparseArray<String> IM_SCHEMES = new SparseArray<String>();
+    static {
+        PHONE_TYPES.put(Phone.TYPE_HOME, "home,voice");
+        PHONE_TYPES.put(Phone.TYPE_MOBILE, "cell");
+        PHONE_TYPES.put(Phone.TYPE_WORK, "work,voice");
+        PHONE_TYPES.put(Phone.TYPE_FAX_WORK, "work,fax");
+        PHONE_TYPES.put(Phone.TYPE_FAX_HOME, "home,fax");
+        PHONE_TYPES.put(Phone.TYPE_PAGER, "pager");
+        PHONE_TYPES.put(Phone.TYPE_OTHER, "voice");
+        PHONE_TYPES.put(Phone.TYPE_CAR, "car");
+        PHONE_TYPES.put(Phone.TYPE_ISDN, "isdn");
+        PHONE_TYPES.put(Phone.TYPE_OTHER_FAX, "fax");
+        PHONE_TYPES.put(Phone.TYPE_WORK_MOBILE, "work,cell");
+        PHONE_TYPES.put(Phone.TYPE_WORK_PAGER, "work,pager");
+        PHONE_TYPES.put(Phone.TYPE_MMS, "msg");
+        PHONE_TYPES.put(Phone.TYPE_TTY_TDD, "textphone");
+
+        CONTACT_TYPES.put(Email.TYPE_HOME, "home");
+        CONTACT_TYPES.put(Email.TYPE_WORK, "work");
+
+        IM_SCHEMES.put(Im.PROTOCOL_AIM, "aim");
+        IM_SCHEMES.put(Im.PROTOCOL_GOOGLE_TALK, "xmpp");
+        IM_SCHEMES.put(Im.PROTOCOL_ICQ, "icq");
+        IM_SCHEMES.put(Im.PROTOCOL_JABBER, "xmpp");
+        IM_SCHEMES.put(Im.PROTOCOL_MSN, "msnim");
+        IM_SCHEMES.put(Im.PROTOCOL_QQ, "qq");
+        IM_SCHEMES.put(Im.PROTOCOL_SKYPE, "skype");
+        IM_SCHEMES.put(Im.PROTOCOL_YAHOO, "ymsgr");
+    }
+
+    private final ContentResolver resolver;
+    private final ContactAccessorSdk5 accessor;
+
+    public ContactVCardExporter(ContentResolver resolver, ContactAccessorSdk5 accessor) {
+        this.resolver = resolver;
+        this.accessor = accessor;
+    }
+
+    /**
+     * Export raw contacts.
+     *
+     * @param options the find options selecting the contacts (filter, fields
+     * (every field by default), accountType, accountName, where...) and the
+     * vCard version, "3.0" (the default) or "4.0"
+     * @param path the file to write, replaced if it exists
+     * @return {path, size (in bytes), count (of contacts)}
+     * @throws IllegalArgumentException if an option is invalid
+     * @throws IOException if the file cannot be written
+     */
+    public JSONObject export(JSONObject options, String path, Progress progress, CancellationSignal signal)
+            throws JSONException, IOException {
+        options = options == null ? new JSONObject() : new JSONObject(options.toString());
+        String version = options.optString("version", "3.0");
+        if (!version.equals("3.0") && !version.equals("4.0")) {
+            throw new IllegalArgumentException("Unknown vCard version: " + version);
+        }
+        File file = toFile(path);
+        JSONArray fields = options.optJSONArray("fields");
+        if (fields == null || fields.length() == 0) {
+            fields = new JSONArray().put("*");
+        }
+        // In _ID order, whole
+        options.remove("sortBy");
+        options.remove("limit");
+        options.remove("offset");
+        options.remove("after");
+        long[] rawIds = accessor.selectRawIds(fields, options, signal);
+
+        File partial = new File(file.getPath() + ".part");
+        int count = 0;
+        boolean complete = false;
+        FileOutputStream stream = new FileOutputStream(partial);
+        FileChannel channel = stream.getChannel();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), "UTF-8"),
+                BUFFER_SIZE);
+        try {
+            VCard card = new VCard(writer, version.equals("4.0"));
+            for (int from = 0; from < rawIds.length; from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, rawIds.length);
+                count += exportBatch(rawIds, from, to, card, signal);
+                if (progress != null) {
+                    progress.onProgress(to, rawIds.length);
+                }
+            }
+            writer.flush();
+            channel.force(false);
+            complete = true;
+        } finally {
+            writer.close();
+            if (!complete) {
+                partial.delete();
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial + " to " + file);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("path", file.getAbsolutePath());
+        result.put("size", file.length());
+        result.put("count", count);
+        return result;
+    }
+
+    /**
+     * @param path an absolute path, or a file:// URL
+     */
+    static File toFile(String path) {
+        if (path != null && path.startsWith("file://")) {
+            path = Uri.parse(path).getPath();
+        }
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Not an absolute path: " + path);
+        }
+        return new File(path);
+    }
+
+    /**
+     * Write the raw contacts [from, to) of rawIds, which are sorted.
+     * @return the number of contacts written.
+     */
+    private int exportBatch(long[] rawIds, int from, int to, VCard card, CancellationSignal signal)
+            throws IOException {
+        List<String> batch = new ArrayList<String>(to - from);
+        for (int i = from; i < to; i++) {
+            batch.add(String.valueOf(rawIds[i]));
+        }
+        Cursor c = resolver.query(RawContactsEntity.CONTENT_URI, PROJECTION,
+                RawContacts._ID + " IN (" + ContactPhoneNumbers.join(batch) + ") AND "
+                    + RawContacts.DELETED + " = 0",
+                null, RawContacts._ID + " ASC", signal);
+        if (c == null) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            long current = -1;
+            while (c.moveToNext()) {
+                if (signal != null && signal.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                long rawId = c.getLong(0);
+                if (rawId != current) {
+                    if (current != -1 && card.end()) {
+                        count++;
+                    }
+                    card.begin();
+                    current = rawId;
+                }
+                card.add(c);
+            }
+            if (current != -1 && card.end()) {
+                count++;
+            }
+        } finally {
+            c.close();
+        }
+        return count;
+    }
+
+    /**
+     * The contact being written: its data rows are collected as properties,
+     * then written at once with the photo last.
+     */
+    private static class VCard {
+        private final Writer writer;
+        private final boolean v4;
+        private final StringBuilder properties = new StringBuilder();
+        private String formattedName;
+        private String name;
+        private boolean birthday;
+        private byte[] photo;
+        private int column;
+
+        VCard(Writer writer, boolean v4) {
+            this.writer = writer;
+            this.v4 = v4;
+        }
+
+        void begin() {
+            properties.setLength(0);
+            formattedName = null;
+            name = null;
+            birthday = false;
+            photo = null;
+        }
+
+        void add(Cursor c) {
+            String mimetype = c.getString(1);
+            if (mimetype == null) {
+                // A raw contact without data
+                return;
+            }
+            if (mimetype.equals(StructuredName.CONTENT_ITEM_TYPE)) {
+                formattedName = get(c, StructuredName.DISPLAY_NAME);
+                name = join(get(c, StructuredName.FAMILY_NAME), get(c, StructuredName.GIVEN_NAME),
+                        get(c, StructuredName.MIDDLE_NAME), get(c, StructuredName.PREFIX),
+                        get(c, StructuredName.SUFFIX));
+            } else if (mimetype.equals(Nickname.CONTENT_ITEM_TYPE)) {
+                property("NICKNAME", null, escape(get(c, Nickname.NAME)));
+            } else if (mimetype.equals(Phone.CONTENT_ITEM_TYPE)) {
+                property("TEL", PHONE_TYPES.get(getInt(c, Phone.TYPE)), escape(get(c, Phone.NUMBER)));
+            } else if (mimetype.equals(Email.CONTENT_ITEM_TYPE)) {
+                property("EMAIL", CONTACT_TYPES.get(getInt(c, Email.TYPE)), escape(get(c, Email.ADDRESS)));
+            } else if (mimetype.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
+                property("ADR", CONTACT_TYPES.get(getInt(c, StructuredPostal.TYPE)),
+                        join(get(c, StructuredPostal.POBOX), get(c, StructuredPostal.NEIGHBORHOOD),
+                            get(c, StructuredPostal.STREET), get(c, StructuredPostal.CITY),
+                            get(c, StructuredPostal.REGION), get(c, StructuredPostal.POSTCODE),
+                            get(c, StructuredPostal.COUNTRY)));
+            } else if (mimetype.equals(Organization.CONTENT_ITEM_TYPE)) {
+                property("ORG", null, join(get(c, Organization.COMPANY), get(c, Organization.DEPARTMENT)));
+                if (get(c, Organization.TITLE).length() > 0) {
+                    property("TITLE", null, escape(get(c, Organization.TITLE)));
+                }
+            } else if (mimetype.equals(Im.CONTENT_ITEM_TYPE)) {
+                String scheme = IM_SCHEMES.get(getInt(c, Im.PROTOCOL));
+                property("IMPP", null, (scheme == null ? "im" : scheme) + ":" + escape(get(c, Im.DATA)));
+            } else if (mimetype.equals(Website.CONTENT_ITEM_TYPE)) {
+                property("URL", null, get(c, Website.URL));
+            } else if (mimetype.equals(Note.CONTENT_ITEM_TYPE)) {
+                property("NOTE", null, escape(get(c, Note.NOTE)));
+            } else if (mimetype.equals(Event.CONTENT_ITEM_TYPE)) {
+                int type = getInt(c, Event.TYPE);
+                if (type == Event.TYPE_BIRTHDAY && !birthday) {
+                    property("BDAY", null, get(c, Event.START_DATE));
+                    birthday = true;
+                } else if (type == Event.TYPE_ANNIVERSARY && v4) {
+                    property("ANNIVERSARY", null, get(c, Event.START_DATE));
+                }
+            } else if (mimetype.equals(Photo.CONTENT_ITEM_TYPE) && photo == null) {
+                photo = c.getBlob(c.getColumnIndex(Photo.PHOTO));
+            }
+        }
+
+        /**
+         * @return false if the contact had nothing to export, and no card was written.
+         */
+        boolean end() throws IOException {
+            if (formattedName == null && name == null && properties.length() == 0 && photo == null) {
+                return false;
+            }
+            line("BEGIN:VCARD");
+            line(v4 ? "VERSION:4.0" : "VERSION:3.0");
+            line("FN:" + escape(formattedName == null ? "" : formattedName));
+            if (name != null || !v4) {
+                line("N:" + (name == null ? ";;;;" : name));
+            }
+            writer.write(properties.toString());
+            if (photo != null) {
+                writePhoto();
+            }
+            line("END:VCARD");
+            return true;
+        }
+
+        private void property(String name, String type, String value) {
+            if (value == null || value.length() == 0) {
+                return;
+            }
+            properties.append(name);
+            if (type != null) {
+                properties.append(";TYPE=").append(type);
+            }
+            properties.append(':').append(value);
+            fold(properties);
+        }
+
+        /**
+         * Fold the last line of the properties, then end it.
+         */
+        private static void fold(StringBuilder properties) {
+            int newline = properties.lastIndexOf("\r\n");
+            int start = newline < 0 ? 0 : newline + 2;
+            int octets = 0;
+            for (int i = start; i < properties.length(); i++) {
+                char ch = properties.charAt(i);
+                int size = ch < 0x80 ? 1 : ch < 0x800 ? 2 : Character.isHighSurrogate(ch) ? 4 : 3;
+                if (octets + size > LINE_LENGTH) {
+                    properties.insert(i, "\r\n ");
+                    i += 3;
+                    octets = 1;
+                }
+                octets += size;
+                if (Character.isHighSurrogate(ch)) {
+                    // Never split a pair
+                    i++;
+                }
+            }
+            properties.append("\r\n");
+        }
+
+        private void line(String line) throws IOException {
+            StringBuilder folded = new StringBuilder(line);
+            fold(folded);
+            writer.write(folded.toString());
+        }
+
+        /**
+         * Write the photo in Base64, folded, as it is encoded.
+         */
+        private void writePhoto() throws IOException {
+            boolean png = photo.length > 3 && (photo[0] & 0xFF) == 0x89 && photo[1] == 'P';
+            String header = v4
+                    ? "PHOTO:data:image/" + (png ? "png" : "jpeg") + ";base64,"
+                    : "PHOTO;ENCODING=b;TYPE=" + (png ? "PNG" : "JPEG") + ":";
+            writer.write(header);
+            column = header.length();
+            for (int i = 0; i < photo.length; i += 3) {
+                int b0 = photo[i] & 0xFF;
+                int b1 = i + 1 < photo.length ? photo[i + 1] & 0xFF : 0;
+                int b2 = i + 2 < photo.length ? photo[i + 2] & 0xFF : 0;
+                base64(BASE64[b0 >> 2]);
+                base64(BASE64[((b0 & 0x03) << 4) | (b1 >> 4)]);
+                base64(i + 1 < photo.length ? BASE64[((b1 & 0x0F) << 2) | (b2 >> 6)] : '=');
+                base64(i + 2 < photo.length ? BASE64[b2 & 0x3F] : '=');
+            }
+            writer.write("\r\n");
+        }
+
+        private void base64(char ch) throws IOException {
+            if (column == LINE_LENGTH) {
+                writer.write("\r\n ");
+                column = 1;
+            }
+            writer.write(ch);
+            column++;
+        }
+
+        private static String get(Cursor c, String column) {
+            String value = c.getString(c.getColumnIndex(column));
+            return value == null ? "" : value;
+        }
+
+        private static int getInt(Cursor c, String column) {
+            return c.getInt(c.getColumnIndex(column));
+        }
+
+        /**
+         * @return the components of a structured value, escaped; null if all are empty.
+         */
+        private static String join(String... components) {
+            StringBuilder value = new StringBuilder();
+            boolean empty = true;
+            for (int i = 0; i < components.length; i++) {
+                if (i > 0) {
+                    value.append(';');
+                }
+                value.append(escape(components[i]));
+                empty &= components[i].length() == 0;
+            }
+            return empty ? null : value.toString();
+        }
+    }
+
+    /**
+     * Escape a text value (RFC 6350, 3.4).
+     */
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '\\':
+                case ',':
+                case ';':
+                    escaped.append('\\').append(ch);
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    escaped.append(ch);
+            }
+        }
+        return escaped.toString();
+    }
+}
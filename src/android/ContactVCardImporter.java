@@ -0,0 +1,627 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.RemoteException;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+/**
+ * Imports a vCard 3.0 or 4.0 file as new raw contacts.
+ * <p>
+ * The file is parsed a line at a time: each card is turned into a contact,
+ * as the JavaScript Contact object would have it, then into the operations
+ * save builds for a new contact. The operations of consecutive cards are
+ * applied together, in batches bounded by their number of operations and
+ * the size of their cards. A card which cannot be read, or a batch which
+ * fails, does not stop the import: the cards of a failed batch are applied
+ * again one by one, and the cards which still fail are reported.
+ */
+public class ContactVCardImporter {
+
+    private static final String LOG_TAG = "ContactVCardImporter";
+
+    /** Receives the progress of an import. */
+    public interface Progress {
+        void onProgress(int cards, long bytesRead, long size);
+    }
+
+    // The contacts provider refuses batches of more than 500 operations without yield points.
+    private static final int MAX_OPERATIONS = 400;
+
+    // The characters of the cards of a batch, which also bounds its binder transaction.
+    private static final int MAX_CHARACTERS = 256 * 1024;
+
+    /** The contact phone types of the vCard TEL types. */
+    private static final Map<String, String> PHONE_TYPES = new HashMap<String, String>();
+    /** The contact IM types of the IMPP schemes and of the X- IM properties. */
+    private static final Map<String, String> IM_TYPES = new HashMap<String, String>();
+    static {
+        PHONE_TYPES.put("cell", "mobile");
+        PHONE_TYPES.put("home", "home");
+        PHONE_TYPES.put("work", "work");
+        PHONE_TYPES.put("fax", "other fax");
+        PHONE_TYPES.put("home,fax", "home fax");
+        PHONE_TYPES.put("work,fax", "work fax");
+        PHONE_TYPES.put("pager", "pager");
+        PHONE_TYPES.put("work,pager", "work pager");
+        PHONE_TYPES.put("work,cell", "work mobile");
+        PHONE_TYPES.put("car", "car");
+        PHONE_TYPES.put("isdn", "isdn");
+        PHONE_TYPES.put("msg", "mms");
+        PHONE_TYPES.put("textphone", "tty tdd");
+
+        IM_TYPES.put("aim", "aim");
+        IM_TYPES.put("xmpp", "jabber");
+        IM_TYPES.put("icq", "icq");
+        IM_TYPES.put("msnim", "msb");
+        IM_TYPES.put("qq", "qq");
+        IM_TYPES.put("skype", "skype");
+        IM_TYPES.put("ymsgr", "yahoo");
+        IM_TYPES.put("X-AIM", "aim");
+        IM_TYPES.put("X-JABBER", "jabber");
+        IM_TYPES.put("X-GOOGLE-TALK", "gtalk");
+        IM_TYPES.put("X-ICQ", "icq");
+        IM_TYPES.put("X-MSN", "msb");
+        IM_TYPES.put("X-QQ", "qq");
+        IM_TYPES.put("X-SKYPE", "skype");
+        IM_TYPES.put("X-YAHOO", "yahoo");
+    }
+
+    private final ContentResolver resolver;
+    private final ContactAccessorSdk5 accessor;
+
+    public ContactVCardImporter(ContentResolver resolver, ContactAccessorSdk5 accessor) {
+        this.resolver = resolver;
+        this.accessor = accessor;
+    }
+
+    /**
+     * Import the cards of a file.
+     *
+     * @param path an absolute path, or a file:// URL
+     * @param accountType the account of the new contacts, as for save
+     * @param accountName the account of the new contacts, as for save
+     * @return {total, imported, failed, errors: [{card, line, message}]}: the
+     * cards are numbered from 1, line is the line of their BEGIN.
+     * @throws IllegalArgumentException if the path is not absolute
+     * @throws IOException if the file cannot be read
+     */
+    public JSONObject importFile(String path, String accountType, String accountName, Progress progress,
+            CancellationSignal signal) throws IOException, JSONException {
+        File file = ContactVCardExporter.toFile(path);
+        String[] account = accessor.resolveAccount(accountType, accountName);
+
+        Batch batch = new Batch(account[0], account[1]);
+        FileInputStream stream = new FileInputStream(file);
+        FileChannel channel = stream.getChannel();
+        long size = channel.size();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), "UTF-8"));
+        try {
+            Parser parser = new Parser(reader);
+            Card card;
+            while ((card = parser.next()) != null) {
+                if (signal != null && signal.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                batch.add(card);
+                if (batch.isFull()) {
+                    batch.apply();
+                    if (progress != null) {
+                        progress.onProgress(batch.total, channel.position(), size);
+                    }
+                }
+            }
+            batch.apply();
+            if (progress != null) {
+                progress.onProgress(batch.total, size, size);
+            }
+        } finally {
+            reader.close();
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("total", batch.total);
+        result.put("imported", batch.imported);
+        result.put("failed", batch.errors.length());
+        result.put("errors", batch.errors);
+        return result;
+    }
+
+    /**
+     * The cards waiting to be applied, with their operations.
+     */
+    private class Batch {
+        final String accountType;
+        final String accountName;
+        final ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        final List<Card> cards = new ArrayList<Card>();
+        final JSONArray errors = new JSONArray();
+        int characters;
+        int total;
+        int imported;
+
+        Batch(String accountType, String accountName) {
+            this.accountType = accountType;
+            this.accountName = accountName;
+        }
+
+        void add(Card card) throws JSONException {
+            total++;
+            card.number = total;
+            if (card.error != null) {
+                error(card, card.error);
+                return;
+            }
+            int start = ops.size();
+            try {
+                accessor.addInsertOps(ops, card.contact, accountType, accountName);
+            } catch (RuntimeException e) {
+                ops.subList(start, ops.size()).clear();
+                error(card, e.toString());
+                return;
+            }
+            cards.add(card);
+            characters += card.characters;
+        }
+
+        boolean isFull() {
+            return ops.size() >= MAX_OPERATIONS || characters >= MAX_CHARACTERS;
+        }
+
+        void apply() throws JSONException {
+            if (cards.isEmpty()) {
+                return;
+            }
+            try {
+                resolver.applyBatch(ContactsContract.AUTHORITY, ops);
+                imported += cards.size();
+            } catch (RemoteException e) {
+                applyOneByOne();
+            } catch (OperationApplicationException e) {
+                applyOneByOne();
+            } catch (RuntimeException e) {
+                // The provider throws its own errors (SQLiteException...) as they are
+                Log.w(LOG_TAG, "Batch failed: " + e);
+                applyOneByOne();
+            }
+            ops.clear();
+            cards.clear();
+            characters = 0;
+        }
+
+        /**
+         * Apply the cards of a failed batch alone, to find the ones which fail.
+         */
+        private void applyOneByOne() throws JSONException {
+            for (Card card : cards) {
+                ArrayList<ContentProviderOperation> single = new ArrayList<ContentProviderOperation>();
+                try {
+                    accessor.addInsertOps(single, card.contact, accountType, accountName);
+                    resolver.applyBatch(ContactsContract.AUTHORITY, single);
+                    imported++;
+                } catch (RemoteException e) {
+                    error(card, e.toString());
+                } catch (OperationApplicationException e) {
+                    error(card, e.toString());
+                } catch (RuntimeException e) {
+                    error(card, e.toString());
+                }
+            }
+        }
+
+        private void error(Card card, String message) throws JSONException {
+            Log.w(LOG_TAG, "Card " + card.number + " (line " + card.line + "): " + message);
+            JSONObject error = new JSONObject();
+            error.put("card", card.number);
+            error.put("line", card.line);
+            error.put("message", message);
+            errors.put(error);
+        }
+    }
+
+    /**
+     * A card, as a contact.
+     */
+    static class Card {
+        final JSONObject contact = new JSONObject();
+        int number;
+        int line;
+        int characters;
+        String error;
+    }
+
+    /**
+     * An incremental vCard parser: reads one card at a time.
+     */
+    static class Parser {
+        private final BufferedReader reader;
+        private String lookahead;
+        private int lineNumber;
+
+        Parser(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the next card, null at the end of the file.
+         */
+        Card next() throws IOException {
+            Card card = null;
+            int depth = 0;
+            String line;
+            while ((line = nextLine()) != null) {
+                Property property = Property.parse(line);
+                if (property == null) {
+                    // Blank, or not a content line
+                    continue;
+                }
+                if (property.name.equals("BEGIN") && property.value.equalsIgnoreCase("VCARD")) {
+                    if (card == null) {
+                        card = new Card();
+                        card.line = lineNumber;
+                    }
+                    // Nested cards (AGENT...) are skipped
+                    depth++;
+                } else if (card == null) {
+                    continue;
+                } else if (property.name.equals("END") && property.value.equalsIgnoreCase("VCARD")) {
+                    depth--;
+                    if (depth == 0) {
+                        return card;
+                    }
+                } else if (depth == 1) {
+                    card.characters += line.length();
+                    if (card.error == null) {
+                        try {
+                            add(card.contact, property);
+                        } catch (JSONException e) {
+                            card.error = e.getMessage();
+                        } catch (RuntimeException e) {
+                            card.error = "Invalid " + property.name + " at line " + lineNumber + ": " + e;
+                        }
+                    }
+                }
+            }
+            if (card != null && card.error == null) {
+                card.error = "Missing END:VCARD";
+            }
+            return card;
+        }
+
+        /**
+         * @return the next line, unfolded, null at the end of the file.
+         */
+        private String nextLine() throws IOException {
+            String line = lookahead != null ? lookahead : reader.readLine();
+            lookahead = null;
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            StringBuilder unfolded = null;
+            while ((lookahead = reader.readLine()) != null
+                    && lookahead.length() > 0 && (lookahead.charAt(0) == ' ' || lookahead.charAt(0) == '\t')) {
+                if (unfolded == null) {
+                    unfolded = new StringBuilder(line);
+                }
+                unfolded.append(lookahead, 1, lookahead.length());
+                lineNumber++;
+            }
+            return unfolded == null ? line : unfolded.toString();
+        }
+    }
+
+    /**
+     * A content line: [group.]NAME;PARAM=VALUE,...:value
+     */
+    static class Property {
+        String name;
+        Map<String, Set<String>> params = new HashMap<String, Set<String>>();
+        String value;
+
+        /**
+         * @return the property, null if the line is not a content line.
+         */
+        static Property parse(String line) {
+            Property property = new Property();
+            List<String> parts = new ArrayList<String>();
+            boolean quoted = false;
+            int start = 0;
+            int colon = -1;
+            for (int i = 0; i < line.length() && colon < 0; i++) {
+                char ch = line.charAt(i);
+                if (ch == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (ch == ';' || ch == ':')) {
+                    parts.add(line.substring(start, i));
+                    start = i + 1;
+                    if (ch == ':') {
+                        colon = i;
+                    }
+                }
+            }
+            if (colon < 0 || parts.get(0).length() == 0) {
+                return null;
+            }
+            String name = parts.get(0);
+            property.name = name.substring(name.indexOf('.') + 1).toUpperCase(Locale.US);
+            property.value = line.substring(colon + 1);
+            for (int i = 1; i < parts.size(); i++) {
+                String param = parts.get(i);
+                int equals = param.indexOf('=');
+                // vCard 2.1 bare types: TEL;CELL:...
+                String key = equals < 0 ? "TYPE" : param.substring(0, equals).toUpperCase(Locale.US);
+                String values = equals < 0 ? param : param.substring(equals + 1);
+                Set<String> set = property.params.get(key);
+                if (set == null) {
+                    set = new LinkedHashSet<String>();
+                    property.params.put(key, set);
+                }
+                if (!key.equals("TYPE") && !key.equals("ENCODING")) {
+                    // LABEL...: a single value, kept as it is
+                    set.add(unescape(unquote(values)));
+                    continue;
+                }
+                for (String value : unquote(values).split(",")) {
+                    set.add(unquote(value.trim()).toLowerCase(Locale.US));
+                }
+            }
+            return property;
+        }
+
+        private static String unquote(String value) {
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                return value.substring(1, value.length() - 1);
+            }
+            return value;
+        }
+
+        boolean hasType(String type) {
+            Set<String> types = params.get("TYPE");
+            return types != null && types.contains(type);
+        }
+
+        String param(String key) {
+            Set<String> values = params.get(key);
+            return values == null || values.isEmpty() ? null : values.iterator().next();
+        }
+    }
+
+    /**
+     * Add a property of a card to its contact.
+     */
+    static void add(JSONObject contact, Property property) throws JSONException {
+        String name = property.name;
+        String value = property.value;
+        if (name.equals("FN")) {
+            contact.put("displayName", unescape(value));
+        } else if (name.equals("N")) {
+            List<String> parts = split(value, ';');
+            JSONObject contactName = new JSONObject();
+            putPart(contactName, "familyName", parts, 0);
+            putPart(contactName, "givenName", parts, 1);
+            putPart(contactName, "middleName", parts, 2);
+            putPart(contactName, "honorificPrefix", parts, 3);
+            putPart(contactName, "honorificSuffix", parts, 4);
+            contact.put("name", contactName);
+        } else if (name.equals("NICKNAME")) {
+            contact.put("nickname", unescape(value));
+        } else if (name.equals("NOTE")) {
+            contact.put("note", unescape(value));
+        } else if (name.equals("TEL")) {
+            String number = unescape(value);
+            if (number.startsWith("tel:")) {
+                number = number.substring(4);
+            }
+            item(contact, "phoneNumbers", phoneType(property), number);
+        } else if (name.equals("EMAIL")) {
+            item(contact, "emails", contactType(property), unescape(value));
+        } else if (name.equals("URL")) {
+            item(contact, "urls", contactType(property), value);
+        } else if (name.equals("ADR")) {
+            List<String> parts = split(value, ';');
+            JSONObject address = new JSONObject();
+            address.put("type", contactType(property));
+            String label = property.param("LABEL");
+            if (label != null) {
+                address.put("formatted", label);
+            }
+            putPart(address, "streetAddress", parts, 2);
+            putPart(address, "locality", parts, 3);
+            putPart(address, "region", parts, 4);
+            putPart(address, "postalCode", parts, 5);
+            putPart(address, "country", parts, 6);
+            array(contact, "addresses").put(address);
+        } else if (name.equals("ORG")) {
+            List<String> parts = split(value, ';');
+            JSONObject organization = organization(contact);
+            putPart(organization, "name", parts, 0);
+            putPart(organization, "department", parts, 1);
+        } else if (name.equals("TITLE")) {
+            organization(contact).put("title", unescape(value));
+        } else if (name.equals("IMPP")) {
+            int colon = value.indexOf(':');
+            String scheme = colon < 0 ? "" : value.substring(0, colon).toLowerCase(Locale.US);
+            String type = IM_TYPES.get(scheme);
+            item(contact, "ims", type == null ? "custom" : type, unescape(value.substring(colon + 1)));
+        } else if (IM_TYPES.containsKey(name)) {
+            item(contact, "ims", IM_TYPES.get(name), unescape(value));
+        } else if (name.equals("BDAY")) {
+            // "about", which save turns into an event, as it does with the birthday of a contact
+            item(contact, "about", "birthday", date(value));
+        } else if (name.equals("ANNIVERSARY")) {
+            item(contact, "about", "anniversary", date(value));
+        } else if (name.equals("RELATED")) {
+            String type = property.param("TYPE");
+            item(contact, "relations", type == null ? "relative" : type, unescape(value));
+        } else if (name.equals("PHOTO")) {
+            String data = value;
+            if (data.startsWith("data:")) {
+                // 4.0: a data URI
+                int comma = data.indexOf(',');
+                if (comma < 0 || !data.substring(0, comma).endsWith(";base64")) {
+                    return;
+                }
+                data = data.substring(comma + 1);
+            } else if (!"b".equals(property.param("ENCODING")) && !"base64".equals(property.param("ENCODING"))) {
+                // A URL: not fetched
+                return;
+            }
+            if (!contact.has("photos")) {
+                item(contact, "photos", "base64", data);
+            }
+        }
+    }
+
+    private static JSONArray array(JSONObject contact, String key) throws JSONException {
+        JSONArray array = contact.optJSONArray(key);
+        if (array == null) {
+            array = new JSONArray();
+            contact.put(key, array);
+        }
+        return array;
+    }
+
+    private static void item(JSONObject contact, String key, String type, String value) throws JSONException {
+        JSONObject item = new JSONObject();
+        item.put("type", type);
+        item.put("value", value);
+        array(contact, key).put(item);
+    }
+
+    private static JSONObject organization(JSONObject contact) throws JSONException {
+        JSONArray organizations = array(contact, "organizations");
+        if (organizations.length() == 0) {
+            organizations.put(new JSONObject());
+        }
+        return organizations.getJSONObject(organizations.length() - 1);
+    }
+
+    private static void putPart(JSONObject object, String key, List<String> parts, int index) throws JSONException {
+        if (index < parts.size() && parts.get(index).length() > 0) {
+            object.put(key, parts.get(index));
+        }
+    }
+
+    private static String phoneType(Property property) {
+        boolean home = property.hasType("home");
+        boolean work = property.hasType("work");
+        String kind = property.hasType("cell") ? "cell" : property.hasType("fax") ? "fax"
+                : property.hasType("pager") ? "pager" : null;
+        String type = null;
+        if (kind != null) {
+            type = PHONE_TYPES.get(work ? "work," + kind : home ? "home," + kind : kind);
+            if (type == null) {
+                type = PHONE_TYPES.get(kind);
+            }
+        } else if (home || work) {
+            type = work ? "work" : "home";
+        } else {
+            for (String candidate : new String[] { "car", "isdn", "msg", "textphone" }) {
+                if (property.hasType(candidate)) {
+                    type = PHONE_TYPES.get(candidate);
+                }
+            }
+        }
+        return type == null ? "other" : type;
+    }
+
+    private static String contactType(Property property) {
+        return property.hasType("work") ? "work" : property.hasType("home") ? "home" : "other";
+    }
+
+    /**
+     * @return the date of a date or date-time, "19900517" as "1990-05-17".
+     */
+    static String date(String value) {
+        int time = value.indexOf('T');
+        String date = time < 0 ? value : value.substring(0, time);
+        if (date.length() == 8 && date.matches("\\d{8}")) {
+            date = date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6);
+        }
+        return date;
+    }
+
+    /**
+     * Split a structured value on a separator which is not escaped, and unescape the parts.
+     */
+    static List<String> split(String value, char separator) {
+        List<String> parts = new ArrayList<String>();
+        StringBuilder part = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length()) {
+                part.append(ch).append(value.charAt(++i));
+            } else if (ch == separator) {
+                parts.add(unescape(part.toString()));
+                part.setLength(0);
+            } else {
+                part.append(ch);
+            }
+        }
+        parts.add(unescape(part.toString()));
+        return parts;
+    }
+
+    /**
+     * Unescape a text value (RFC 6350, 3.4).
+     */
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                unescaped.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                unescaped.append(ch);
+            }
+        }
+        return unescaped.toString();
+    }
+}
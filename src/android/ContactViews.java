@@ -0,0 +1,214 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+
+package org.apache.cordova.contacts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+
+/**
+ * Windowed views over the result of a find, for virtualized lists.
+ * <p>
+ * Opening a view runs the find without reading any contact, and keeps the
+ * matching raw contact ids, in their sort order, in a long[]. Reading a
+ * window of rows then reads just those contacts, with one query.
+ * <p>
+ * A view expires when it has not been read for its timeout. When the
+ * contacts change, the views are re-run in the background; their generation
+ * is then incremented, so that the caller knows its rows moved.
+ */
+public class ContactViews {
+
+    /** The default time a view is kept without being read. */
+    public static final long DEFAULT_TIMEOUT = 5 * 60 * 1000;
+
+    /** The most rows read at once. */
+    public static final int MAX_WINDOW = 1000;
+
+    private final ContactAccessorSdk5 accessor;
+    private final Map<String, View> views = new HashMap<String, View>();
+    private int nextId = 1;
+
+    public ContactViews(ContactAccessorSdk5 accessor) {
+        this.accessor = accessor;
+    }
+
+    /**
+     * Open a view.
+     *
+     * @param fields the search fields, as for a find
+     * @param options the find options, with an optional timeout (in ms)
+     * @return {viewId, total, generation}
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public JSONObject open(JSONArray fields, JSONObject options, CancellationSignal signal) throws JSONException {
+        long timeout = options == null ? DEFAULT_TIMEOUT : options.optLong("timeout", DEFAULT_TIMEOUT);
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        }
+        View view = new View(fields, options, timeout);
+        view.ids = accessor.selectRawIds(fields, options, signal);
+        synchronized (this) {
+            expire();
+            view.id = "view" + nextId++;
+            views.put(view.id, view);
+        }
+        return view.toJSON();
+    }
+
+    /**
+     * Read the rows [from, to) of a view.
+     *
+     * @param desiredFields the contact fields to read, all of them if null or empty
+     * @return {viewId, total, generation, from, contacts}, or null if the view
+     * does not exist or has expired.
+     */
+    public JSONObject read(String viewId, int from, int to, JSONArray desiredFields, CancellationSignal signal)
+            throws JSONException {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid window: " + from + "-" + to);
+        }
+        View view;
+        long[] ids;
+        int generation;
+        synchronized (this) {
+            expire();
+            view = views.get(viewId);
+            if (view == null) {
+                return null;
+            }
+            view.lastRead = SystemClock.elapsedRealtime();
+            ids = view.ids;
+            generation = view.generation;
+        }
+
+        int start = Math.min(from, ids.length);
+        int end = Math.min(Math.min(to, ids.length), start + MAX_WINDOW);
+        List<String> window = new ArrayList<String>(end - start);
+        for (int i = start; i < end; i++) {
+            window.add(String.valueOf(ids[i]));
+        }
+        JSONObject options = new JSONObject();
+        if (desiredFields != null) {
+            options.put("desiredFields", desiredFields);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("viewId", viewId);
+        result.put("total", ids.length);
+        result.put("generation", generation);
+        result.put("from", start);
+        result.put("contacts", accessor.readRawContacts(window, options, signal));
+        return result;
+    }
+
+    /**
+     * Release a view.
+     * @return false if there was no such view.
+     */
+    public synchronized boolean close(String viewId) {
+        return views.remove(viewId) != null;
+    }
+
+    /**
+     * @return true if there is a view to keep up to date.
+     */
+    public synchronized boolean isEmpty() {
+        expire();
+        return views.isEmpty();
+    }
+
+    /**
+     * Run the find of every open view again, after a change of the contacts.
+     */
+    public void refresh() {
+        List<View> open;
+        synchronized (this) {
+            expire();
+            open = new ArrayList<View>(views.values());
+        }
+        for (View view : open) {
+            long[] ids = accessor.selectRawIds(view.fields, view.options, null);
+            synchronized (this) {
+                view.ids = ids;
+                view.generation++;
+            }
+        }
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        expire();
+        long rows = 0;
+        for (View view : views.values()) {
+            rows += view.ids.length;
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("views", views.size());
+        stats.put("rows", rows);
+        return stats;
+    }
+
+    private void expire() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<View> it = views.values().iterator();
+        while (it.hasNext()) {
+            View view = it.next();
+            if (now - view.lastRead > view.timeout) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * A find, and the raw contact ids of its result.
+     */
+    private static class View {
+        final JSONArray fields;
+        final JSONObject options;
+        final long timeout;
+        String id;
+        long[] ids;
+        int generation = 0;
+        long lastRead = SystemClock.elapsedRealtime();
+
+        View(JSONArray fields, JSONObject options, long timeout) {
+            this.fields = fields;
+            this.options = options;
+            this.timeout = timeout;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("viewId", id);
+            json.put("total", ids.length);
+            json.put("generation", generation);
+            return json;
+        }
+    }
+}
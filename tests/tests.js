@@ -26,7 +26,8 @@ exports.defineAutoTests = function () {
     gContactId = null,
     isWindowsPhone8 = cordova.platformId == 'windowsphone',
     isWindows = (cordova.platformId === "windows") || (cordova.platformId === "windows8"),
-    isWindowsPhone81 =  isWindows && WinJS.Utilities.isPhone;
+    isWindowsPhone81 =  isWindows && WinJS.Utilities.isPhone,
+    isAndroid = cordova.platformId == 'android';
   var fail = function(done) {
     expect(true).toBe(false);
     done();
@@ -430,9 +431,880 @@ exports.defineAutoTests = function () {
               expect(ContactError.PENDING_OPERATION_ERROR).toBe(3);
               expect(ContactError.IO_ERROR).toBe(4);
               expect(ContactError.NOT_SUPPORTED_ERROR).toBe(5);
+              expect(ContactError.OPERATION_CANCELLED_ERROR).toBe(6);
               expect(ContactError.PERMISSION_DENIED_ERROR).toBe(20);
           });
       });
+      describe('Android scheduler', function () {
+          it("contacts.spec.26 getSchedulerStats should return the metrics of both lanes", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.getSchedulerStats(function (stats) {
+                  expect(stats.parallelism).toBeGreaterThan(0);
+                  expect(stats.bulkParallelism).toBeGreaterThan(0);
+                  expect(stats.interactive.capacity).toBeGreaterThan(0);
+                  expect(stats.bulk.capacity).toBeGreaterThan(0);
+                  expect(typeof stats.interactive.completed).toBe('number');
+                  expect(typeof stats.pendingRequests).toBe('number');
+                  done();
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.27 configureScheduler should update the settings and keep the others", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.getSchedulerStats(function (before) {
+                  navigator.contacts.configureScheduler({bulkCapacity: before.bulk.capacity + 1}, function (stats) {
+                      expect(stats.bulk.capacity).toBe(before.bulk.capacity + 1);
+                      expect(stats.interactive.capacity).toBe(before.interactive.capacity);
+                      expect(stats.parallelism).toBe(before.parallelism);
+                      navigator.contacts.configureScheduler({bulkCapacity: before.bulk.capacity}, function () {
+                          done();
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.28 searches running at once should all be answered", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var remaining = 5;
+              var win = function (result) {
+                  expect(result instanceof Array).toBe(true);
+                  if (--remaining === 0) {
+                      done();
+                  }
+              };
+              for (var i = 0; i < 5; i++) {
+                  navigator.contacts.find(["displayName"], win, fail.bind(null, done), {filter: "spec28-" + i, multiple: true});
+              }
+          });
+      });
+      describe('Android search cancellation', function () {
+          it("contacts.spec.29 a cancelled find should fail with OPERATION_CANCELLED_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.getSchedulerStats(function (before) {
+                  var restore = function () {
+                      navigator.contacts.configureScheduler({parallelism: before.parallelism}, function () {
+                          done();
+                      }, fail.bind(null, done));
+                  };
+                  // One worker, busy with a whole book find: the second find waits in the queue,
+                  // unless the book is small enough for both to be done before the cancel.
+                  navigator.contacts.configureScheduler({parallelism: 1}, function () {
+                      navigator.contacts.find(["*"], function () {}, function () {}, {filter: "", multiple: true});
+                      var requestId = navigator.contacts.find(["displayName"], function (result) {
+                          expect(result instanceof Array).toBe(true);
+                          restore();
+                      }, function (e) {
+                          expect(e.code).toBe(ContactError.OPERATION_CANCELLED_ERROR);
+                          restore();
+                      }, {filter: "spec29", multiple: true});
+                      expect(typeof requestId).toBe('string');
+                      navigator.contacts.cancel(requestId);
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.30 cancelling an unknown request should succeed", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.cancel("spec30-unknown-request", function () {
+                  done();
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android request ids', function () {
+          it("contacts.spec.31 a find reusing the id of a pending one should fail with INVALID_ARGUMENT_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.getSchedulerStats(function (before) {
+                  var pendingAnswers = 2;
+                  var answered = function () {
+                      if (--pendingAnswers === 0) {
+                          navigator.contacts.configureScheduler({parallelism: before.parallelism}, function () {
+                              done();
+                          }, fail.bind(null, done));
+                      }
+                  };
+                  navigator.contacts.configureScheduler({parallelism: 1}, function () {
+                      navigator.contacts.find(["*"], function () {}, function () {}, {filter: "", multiple: true});
+                      var requestId = "spec31-" + Date.now();
+                      // While the first find is pending, its id is taken and cancelling it
+                      // answers it; once it is done, the id can be used again.
+                      navigator.contacts.find(["displayName"], answered, function (e) {
+                          expect(e.code).toBe(ContactError.OPERATION_CANCELLED_ERROR);
+                          answered();
+                      }, {filter: "spec31", multiple: true, requestId: requestId});
+                      navigator.contacts.find(["displayName"], function (result) {
+                          expect(result instanceof Array).toBe(true);
+                          answered();
+                      }, function (e) {
+                          expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                          navigator.contacts.cancel(requestId);
+                          answered();
+                      }, {filter: "spec31", multiple: true, requestId: requestId});
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android search coalescing', function () {
+          it("contacts.spec.32 identical concurrent finds should share one search", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.getSchedulerStats(function (before) {
+                  var results = [];
+                  var win = function (result) {
+                      results.push(result);
+                      if (results.length < 2) {
+                          return;
+                      }
+                      expect(results[0].length).toBe(results[1].length);
+                      navigator.contacts.getSchedulerStats(function (after) {
+                          // Shared only if the first one was still pending: the whole book find
+                          // may already be done on a small book.
+                          var shared = after.coalescing.deduplicated - before.coalescing.deduplicated;
+                          expect(shared === 0 || shared === 1).toBe(true);
+                          navigator.contacts.configureScheduler({parallelism: before.parallelism}, function () {
+                              done();
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  };
+                  navigator.contacts.configureScheduler({parallelism: 1}, function () {
+                      navigator.contacts.find(["*"], function () {}, function () {}, {filter: "", multiple: true});
+                      navigator.contacts.find(["displayName", "name"], win, fail.bind(null, done), {filter: "spec32", multiple: true});
+                      navigator.contacts.find(["name", "displayName"], win, fail.bind(null, done), {filter: "spec32", multiple: true});
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android search index', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.33 enableSearchIndex should build the index and return its stats", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.enableSearchIndex(function (stats) {
+                  expect(typeof stats.contacts).toBe('number');
+                  expect(stats.builtAt).toBeGreaterThan(0);
+                  expect(stats.dirty).toBe(false);
+                  navigator.contacts.disableSearchIndex(function () {
+                      done();
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.34 an indexed prefix find should find a contact by the start of its name", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var disable = function () {
+                  navigator.contacts.disableSearchIndex(function () {
+                      done();
+                  }, fail.bind(null, done));
+              };
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec34Indexed";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.rebuildSearchIndex(function () {
+                      navigator.contacts.find(["name"], function (result) {
+                          expect(result.length).toBe(1);
+                          expect(result[0].name.familyName).toBe("Spec34Indexed");
+                          disable();
+                      }, function () {
+                          expect(true).toBe(false);
+                          disable();
+                      }, {filter: "spec34ind", multiple: true, matchMode: "prefix"});
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android phone number search', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.35 a phone find should match a number whatever its formatting", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec35Phone";
+              gContactObj.phoneNumbers = [new ContactField('mobile', '(555) 010-3535', false)];
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.find(["phoneNumbers"], function (result) {
+                      expect(result.length).toBe(1);
+                      expect(result[0].id).toBe(saved.id);
+                      done();
+                  }, fail.bind(null, done), {filter: "555.010.3535", multiple: true, matchMode: "phone"});
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.36 a phone find should not match another number", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.find(["phoneNumbers"], function (result) {
+                  expect(result.length).toBe(0);
+                  done();
+              }, fail.bind(null, done), {filter: "555 010 3636", multiple: true, matchMode: "phone"});
+          });
+      });
+      describe('Android lookup', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.37 lookup should map a known number to its contact and an unknown one to nothing", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec37Lookup";
+              gContactObj.phoneNumbers = [new ContactField('mobile', '(555) 010-3737', false)];
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.lookup(["555.010.3737", "555 010 3838"], [], function (result) {
+                      expect(result["555.010.3737"].length).toBeGreaterThan(0);
+                      expect(result["555.010.3737"][0].contactId).toBe(saved.id);
+                      expect(result["555 010 3838"].length).toBe(0);
+                      done();
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android membership', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.38 isKnown should tell a saved number from an unknown one", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec38Known";
+              gContactObj.phoneNumbers = [new ContactField('mobile', '555-010-3838', false)];
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.isKnown(["(555) 010-3838", "555 010 3939"], function (result) {
+                      expect(result["(555) 010-3838"]).toBe(true);
+                      expect(result["555 010 3939"]).toBe(false);
+                      done();
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.39 isKnown should answer a single value with a boolean", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.isKnown("spec39.unknown@example.org", function (known) {
+                  expect(known).toBe(false);
+                  done();
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android accent insensitive search', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.40 an indexed find should ignore accents and case", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var disable = function () {
+                  navigator.contacts.disableSearchIndex(function () {
+                      done();
+                  }, fail.bind(null, done));
+              };
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec40HÉlène";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.rebuildSearchIndex(function () {
+                      navigator.contacts.find(["name"], function (result) {
+                          expect(result.length).toBe(1);
+                          expect(result[0].id).toBe(saved.id);
+                          disable();
+                      }, function () {
+                          expect(true).toBe(false);
+                          disable();
+                      }, {filter: "spec40helene", multiple: true});
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android typed predicates', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.41 a where predicate should select the contacts it matches", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec41Where";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  var options = new ContactFindOptions();
+                  options.multiple = true;
+                  options.where = ContactFindOptions.or(
+                      ContactFindOptions.eq('name.familyName', 'Spec41Where'),
+                      ContactFindOptions.in('name.familyName', ['Spec41Missing']));
+                  navigator.contacts.find(["name"], function (result) {
+                      expect(result.length).toBe(1);
+                      expect(result[0].id).toBe(saved.id);
+                      done();
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.42 a where predicate on an unknown field should fail with INVALID_ARGUMENT_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var options = new ContactFindOptions();
+              options.multiple = true;
+              options.where = ContactFindOptions.eq('noSuchField', 1);
+              navigator.contacts.find(["name"], function () {
+                  expect(true).toBe(false);
+                  done();
+              }, function (e) {
+                  expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                  done();
+              }, options);
+          });
+      });
+      describe('Android query plans', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.43 a repeated find should reuse its compiled plan and bind its own arguments", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec43Plan";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.find(["id", "name"], function (byId) {
+                      expect(byId.length).toBe(1);
+                      expect(byId[0].id).toBe(saved.id);
+                      navigator.contacts.getSchedulerStats(function (before) {
+                          navigator.contacts.find(["name", "id"], function (byName) {
+                              expect(byName.length).toBe(1);
+                              expect(byName[0].id).toBe(saved.id);
+                              navigator.contacts.getSchedulerStats(function (after) {
+                                  expect(after.queryPlans.hits).toBeGreaterThan(before.queryPlans.hits);
+                                  done();
+                              }, fail.bind(null, done));
+                          }, fail.bind(null, done), {filter: "Spec43Plan", multiple: true});
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done), {filter: saved.id, multiple: true});
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android paging', function () {
+          var second = null;
+          afterEach(function () {
+              removeContact();
+              if (second) {
+                  second.remove(function () {}, function () {});
+                  second = null;
+              }
+          });
+
+          it("contacts.spec.44 paging with after should return every contact once", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var ids = [];
+              var readPage = function (after) {
+                  var options = new ContactFindOptions("Spec44Page", true);
+                  options.limit = 1;
+                  options.after = after;
+                  navigator.contacts.find(["name"], function (page) {
+                      expect(page.length).toBeLessThan(2);
+                      page.forEach(function (contact) {
+                          ids.push(contact.id);
+                      });
+                      if (page.after) {
+                          expect(ids.length).toBeLessThan(3);
+                          readPage(page.after);
+                      } else {
+                          expect(ids.sort()).toEqual([gContactObj.id, second.id].sort());
+                          done();
+                      }
+                  }, fail.bind(null, done), options);
+              };
+              var contact = new Contact();
+              contact.name = new ContactName();
+              contact.name.familyName = "Spec44PageA";
+              contact.save(function (savedA) {
+                  gContactObj = savedA;
+                  var other = new Contact();
+                  other.name = new ContactName();
+                  other.name.familyName = "Spec44PageB";
+                  other.save(function (savedB) {
+                      second = savedB;
+                      readPage(null);
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android sorting', function () {
+          var second = null;
+          afterEach(function () {
+              removeContact();
+              if (second) {
+                  second.remove(function () {}, function () {});
+                  second = null;
+              }
+          });
+
+          it("contacts.spec.45 sortBy should sort the contacts both ways", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var sorted = function (order, next) {
+                  var options = new ContactFindOptions("Spec45Sort", true);
+                  options.sortBy = 'familyName';
+                  options.sortOrder = order;
+                  navigator.contacts.find(["name"], function (result) {
+                      next(result.map(function (contact) {
+                          return contact.name.familyName;
+                      }));
+                  }, fail.bind(null, done), options);
+              };
+              var contact = new Contact();
+              contact.name = new ContactName();
+              contact.name.familyName = "Spec45SortB";
+              contact.save(function (savedB) {
+                  gContactObj = savedB;
+                  var other = new Contact();
+                  other.name = new ContactName();
+                  other.name.familyName = "Spec45SortA";
+                  other.save(function (savedA) {
+                      second = savedA;
+                      sorted('asc', function (names) {
+                          expect(names).toEqual(["Spec45SortA", "Spec45SortB"]);
+                          sorted('desc', function (names) {
+                              expect(names).toEqual(["Spec45SortB", "Spec45SortA"]);
+                              done();
+                          });
+                      });
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android section index', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.46 sectionIndex should cover every contact with contiguous sections", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec46Section";
+              gContactObj.displayName = "Spec46Section";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.sectionIndex({sortBy: "displayName", locale: "en-US"}, function (index) {
+                      expect(index.total).toBeGreaterThan(0);
+                      var offset = 0;
+                      index.sections.forEach(function (section) {
+                          expect(section.offset).toBe(offset);
+                          expect(section.count).toBeGreaterThan(0);
+                          offset += section.count;
+                      });
+                      expect(offset).toBe(index.total);
+                      expect(index.sections.some(function (section) {
+                          return section.label == "S";
+                      })).toBe(true);
+                      done();
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.47 sectionIndex on an unknown sort field should fail with INVALID_ARGUMENT_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.sectionIndex({sortBy: "nickname"}, function () {
+                  expect(true).toBe(false);
+                  done();
+              }, function (e) {
+                  expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                  done();
+              });
+          });
+      });
+      describe('Android views', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.48 a view should read a window of its result and be released by closeView", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec48View";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.openView(["name"], {filter: "Spec48View", sortBy: "familyName"}, function (view) {
+                      expect(view.total).toBe(1);
+                      navigator.contacts.readView(view.viewId, 0, 1, ["name"], function (contacts) {
+                          expect(contacts.length).toBe(1);
+                          expect(contacts[0].id).toBe(saved.id);
+                          expect(contacts.from).toBe(0);
+                          expect(contacts.total).toBe(1);
+                          navigator.contacts.closeView(view.viewId, function () {
+                              navigator.contacts.readView(view.viewId, 0, 1, ["name"], function () {
+                                  expect(true).toBe(false);
+                                  done();
+                              }, function (e) {
+                                  expect(e.code).toBe(ContactError.TIMEOUT_ERROR);
+                                  done();
+                              });
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android summaries', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.49 findSummaries should return one summary per person with its primary phone", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec49Summary";
+              gContactObj.displayName = "Spec49Summary";
+              gContactObj.phoneNumbers = [new ContactField('mobile', '555-010-4949', true)];
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.findSummaries({filter: "Spec49Summary", primary: "phone"}, function (summaries) {
+                      expect(summaries.length).toBe(1);
+                      expect(summaries[0].id).toBe(saved.id);
+                      expect(summaries[0].displayName).toBe("Spec49Summary");
+                      expect(summaries[0].hasPhoneNumber).toBe(true);
+                      expect(summaries[0].phoneNumber).toBeTruthy();
+                      done();
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android usage ranking', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.50 the score rank should return a recorded contact with its score", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec50Usage";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.recordContactUsage(saved.id, 1000, null, function (result) {
+                      expect(result.score).toBeGreaterThan(999);
+                      navigator.contacts.topContacts({rank: "score", limit: 1}, function (people) {
+                          expect(people.length).toBe(1);
+                          expect(people[0].id).toBe(saved.id);
+                          expect(people[0].score).toBeGreaterThan(999);
+                          navigator.contacts.clearContactUsage(function () {
+                              done();
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.51 recordContactUsage with an invalid id should fail with INVALID_ARGUMENT_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.recordContactUsage("not-a-contact", 1, null, function () {
+                  expect(true).toBe(false);
+                  done();
+              }, function (e) {
+                  expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                  done();
+              });
+          });
+      });
+      describe('Android counts', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.52 count should follow saves and removes, with and without a filter", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              navigator.contacts.count(["*"], {}, function (before) {
+                  var contact = new Contact();
+                  contact.name = new ContactName();
+                  contact.name.familyName = "Spec52Count";
+                  contact.save(function (saved) {
+                      gContactObj = saved;
+                      navigator.contacts.count(["*"], {}, function (total) {
+                          expect(total).toBe(before + 1);
+                          navigator.contacts.count(["name"], {filter: "Spec52Count"}, function (matching) {
+                              expect(matching).toBe(1);
+                              saved.remove(function () {
+                                  gContactObj = null;
+                                  navigator.contacts.count(["*"], {}, function (after) {
+                                      expect(after).toBe(before);
+                                      done();
+                                  }, fail.bind(null, done));
+                              }, fail.bind(null, done));
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android desired fields', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.53 desiredFields should keep the sync fields unless syncFields is false", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec53Fields";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  var options = new ContactFindOptions("Spec53Fields", true, ["name"]);
+                  navigator.contacts.find(["name"], function (withSync) {
+                      expect(withSync.length).toBe(1);
+                      expect(typeof withSync[0].version).toBe('number');
+                      options.syncFields = false;
+                      navigator.contacts.find(["name"], function (withoutSync) {
+                          expect(withoutSync.length).toBe(1);
+                          expect(withoutSync[0].name.familyName).toBe("Spec53Fields");
+                          expect(withoutSync[0].version).toBe(null);
+                          done();
+                      }, fail.bind(null, done), options);
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android binary results', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.54 a binary find should decode to the contacts of a JSON find", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec54Binäry";
+              gContactObj.phoneNumbers = [new ContactField('mobile', '555-010-5454', true)];
+              gContactObj.emails = [new ContactField('work', 'spec54@example.org', false)];
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  var options = new ContactFindOptions("Spec54Bin", true);
+                  navigator.contacts.find(["name"], function (json) {
+                      options.binary = true;
+                      navigator.contacts.find(["name"], function (binary) {
+                          expect(binary.length).toBe(1);
+                          expect(binary[0].id).toBe(json[0].id);
+                          expect(binary[0].rawId).toBe(json[0].rawId);
+                          expect(binary[0].name.familyName).toBe("Spec54Binäry");
+                          expect(binary[0].phoneNumbers[0].value).toBe(json[0].phoneNumbers[0].value);
+                          expect(binary[0].phoneNumbers[0].type).toBe(json[0].phoneNumbers[0].type);
+                          expect(binary[0].emails[0].value).toBe("spec54@example.org");
+                          done();
+                      }, fail.bind(null, done), options);
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android result files', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.55 a find with toFile should write its contacts to a file", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec55File";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  var options = new ContactFindOptions("Spec55File", true);
+                  options.toFile = {directory: 'cache', name: 'spec55.ndjson', format: 'ndjson'};
+                  navigator.contacts.find(["name"], function (file) {
+                      expect(file.count).toBe(1);
+                      expect(file.size).toBeGreaterThan(0);
+                      expect(file.path).toMatch(/spec55\.ndjson$/);
+                      done();
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+          it("contacts.spec.56 a paged find with toFile should fail with INVALID_ARGUMENT_ERROR", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var options = new ContactFindOptions("", true);
+              options.toFile = true;
+              options.limit = 10;
+              navigator.contacts.find(["name"], function () {
+                  expect(true).toBe(false);
+                  done();
+              }, function (e) {
+                  expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                  done();
+              }, options);
+          });
+      });
+      describe('Android vCard export', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.57 exportVCard should count the cards it writes", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec57VCard";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  // A toFile find gives a writable directory of the app.
+                  var options = new ContactFindOptions("Spec57VCard", true);
+                  options.toFile = {name: 'spec57.json'};
+                  navigator.contacts.find(["name"], function (file) {
+                      var path = file.path.replace(/[^\/]*$/, 'spec57.vcf');
+                      navigator.contacts.exportVCard({filter: "Spec57VCard", fields: ["name"]}, path, function (result) {
+                          expect(result.path).toBe(path);
+                          expect(result.count).toBe(1);
+                          expect(result.size).toBeGreaterThan(0);
+                          done();
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android vCard import', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.58 a contact exported to a vCard should import back with its fields", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              var contact = new Contact();
+              contact.name = new ContactName();
+              contact.name.familyName = "Spec58RoundTrip";
+              contact.name.givenName = "Zoë";
+              contact.phoneNumbers = [new ContactField('mobile', '555-010-5858', false)];
+              contact.emails = [new ContactField('home', 'spec58@example.org', false)];
+              contact.save(function (saved) {
+                  gContactObj = saved;
+                  var options = new ContactFindOptions("Spec58RoundTrip", true);
+                  options.toFile = {name: 'spec58.json'};
+                  navigator.contacts.find(["name"], function (file) {
+                      var path = file.path.replace(/[^\/]*$/, 'spec58.vcf');
+                      navigator.contacts.exportVCard({filter: "Spec58RoundTrip", fields: ["name"]}, path, function (exported) {
+                          expect(exported.count).toBe(1);
+                          saved.remove(function () {
+                              gContactObj = null;
+                              navigator.contacts.importVCard(path, null, null, function (result) {
+                                  expect(result.total).toBe(1);
+                                  expect(result.imported).toBe(1);
+                                  expect(result.failed).toBe(0);
+                                  navigator.contacts.find(["name"], function (found) {
+                                      expect(found.length).toBe(1);
+                                      gContactObj = found[0];
+                                      expect(found[0].name.familyName).toBe("Spec58RoundTrip");
+                                      expect(found[0].name.givenName).toBe("Zoë");
+                                      expect(found[0].phoneNumbers[0].value.replace(/\D/g, '')).toBe("5550105858");
+                                      expect(found[0].emails[0].value).toBe("spec58@example.org");
+                                      done();
+                                  }, fail.bind(null, done), new ContactFindOptions("Spec58RoundTrip", true));
+                              }, fail.bind(null, done));
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done), options);
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android mirror', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.59 an empty mirror search should return every person until the mirror is disabled", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec59Mirror";
+              gContactObj.displayName = "Spec59Mirror";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.enableMirror(function (stats) {
+                      expect(stats.contacts).toBeGreaterThan(0);
+                      navigator.contacts.searchMirror({filter: ""}, function (result) {
+                          expect(result.contacts.length).toBe(stats.contacts);
+                          expect(result.contacts.some(function (person) {
+                              return person.id == saved.id;
+                          })).toBe(true);
+                          navigator.contacts.disableMirror(function () {
+                              navigator.contacts.searchMirror({filter: ""}, function () {
+                                  expect(true).toBe(false);
+                                  done();
+                              }, function (e) {
+                                  expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                                  done();
+                              });
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
+      describe('Android snapshot', function () {
+          afterEach(removeContact);
+
+          it("contacts.spec.60 a snapshot should hold every person and find them by prefix", function (done) {
+              if (!isAndroid) {
+                  pending();
+              }
+              gContactObj = new Contact();
+              gContactObj.name = new ContactName();
+              gContactObj.name.familyName = "Spec60Snapshot";
+              gContactObj.displayName = "Spec60Snapshot";
+              gContactObj.save(function (saved) {
+                  gContactObj = saved;
+                  navigator.contacts.buildSnapshot(function () {
+                      navigator.contacts.findSummaries({}, function (people) {
+                          navigator.contacts.readSnapshot({prefix: ""}, function (all) {
+                              expect(all.total).toBe(people.length);
+                              expect(all.stale).toBe(false);
+                              navigator.contacts.readSnapshot({prefix: "spec60snap"}, function (found) {
+                                  expect(found.total).toBe(1);
+                                  expect(found.contacts[0].id).toBe(saved.id);
+                                  navigator.contacts.deleteSnapshot(function () {
+                                      navigator.contacts.readSnapshot({}, function () {
+                                          expect(true).toBe(false);
+                                          done();
+                                      }, function (e) {
+                                          expect(e.code).toBe(ContactError.INVALID_ARGUMENT_ERROR);
+                                          done();
+                                      });
+                                  }, fail.bind(null, done));
+                              }, fail.bind(null, done));
+                          }, fail.bind(null, done));
+                      }, fail.bind(null, done));
+                  }, fail.bind(null, done));
+              }, fail.bind(null, done));
+          });
+      });
   });
 };
 
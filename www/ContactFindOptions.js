@@ -35,4 +35,51 @@ var ContactFindOptions = function(filter, multiple, desiredFields,
     this.accountName = accountName || null;
 };
 
+/**
+ * Builders for the typed predicates of the `where` option (Android only).
+ * Leaves compare one field, `and` / `or` combine predicates:
+ *
+ *     options.where = ContactFindOptions.and(
+ *         ContactFindOptions.eq('dirty', true),
+ *         ContactFindOptions.in('sourceId', ['a1', 'b2']));
+ */
+ContactFindOptions.eq = function(field, value) {
+    return {field: field, eq: value};
+};
+
+ContactFindOptions['in'] = function(field, values) {
+    return {field: field, 'in': values};
+};
+
+ContactFindOptions.prefix = function(field, prefix) {
+    return {field: field, prefix: prefix};
+};
+
+/**
+ * @param from lower bound, included, ignored if null or undefined
+ * @param to upper bound, excluded, ignored if null or undefined
+ */
+ContactFindOptions.range = function(field, from, to) {
+    var predicate = {field: field};
+    if (from !== null && typeof from != 'undefined') {
+        predicate.gte = from;
+    }
+    if (to !== null && typeof to != 'undefined') {
+        predicate.lt = to;
+    }
+    return predicate;
+};
+
+ContactFindOptions.isNull = function(field, isNull) {
+    return {field: field, isNull: isNull !== false};
+};
+
+ContactFindOptions.and = function() {
+    return {and: Array.prototype.slice.call(arguments)};
+};
+
+ContactFindOptions.or = function() {
+    return {or: Array.prototype.slice.call(arguments)};
+};
+
 module.exports = ContactFindOptions;
@@ -27,19 +27,135 @@ var argscheck = require('cordova/argscheck'),
     fieldType = require('./ContactFieldType');
 
 
+/**
+ * Decodes a find result sent with options.binary (see ContactBinaryEncoder.java).
+ * @param buffer an ArrayBuffer
+ * @return the array of contacts, or the paged result {contacts, after}, as
+ * plain objects; photo values are Uint8Array of the image bytes
+ */
+function decodeBinary(buffer) {
+    var bytes = new Uint8Array(buffer);
+    var view = new DataView(buffer);
+    var pos = 0;
+    if (bytes[0] !== 0x43 || bytes[1] !== 0x42 || bytes[2] !== 1) {
+        throw new Error('Unknown contacts binary result');
+    }
+    pos = 3;
+
+    function varint() {
+        var value = 0, scale = 1, b;
+        do {
+            b = bytes[pos++];
+            value += (b & 0x7f) * scale;
+            scale *= 128;
+        } while (b & 0x80);
+        return value;
+    }
+
+    function utf8(length) {
+        var end = pos + length;
+        var s = '';
+        if (typeof TextDecoder !== 'undefined') {
+            s = new TextDecoder('utf-8').decode(bytes.subarray(pos, end));
+            pos = end;
+            return s;
+        }
+        while (pos < end) {
+            var c = bytes[pos++];
+            if (c >= 0xf0) {
+                c = ((c & 0x07) << 18) | ((bytes[pos++] & 0x3f) << 12) | ((bytes[pos++] & 0x3f) << 6) | (bytes[pos++] & 0x3f);
+                c -= 0x10000;
+                s += String.fromCharCode(0xd800 + (c >> 10), 0xdc00 + (c & 0x3ff));
+                continue;
+            } else if (c >= 0xe0) {
+                c = ((c & 0x0f) << 12) | ((bytes[pos++] & 0x3f) << 6) | (bytes[pos++] & 0x3f);
+            } else if (c >= 0xc0) {
+                c = ((c & 0x1f) << 6) | (bytes[pos++] & 0x3f);
+            }
+            s += String.fromCharCode(c);
+        }
+        return s;
+    }
+
+    var strings = [];
+    for (var n = varint(); n > 0; n--) {
+        strings.push(utf8(varint()));
+    }
+
+    function value() {
+        var tag = bytes[pos++], i, count, result;
+        switch (tag) {
+        case 0: return null;
+        case 1: return false;
+        case 2: return true;
+        case 3:
+            // zigzag
+            i = varint();
+            return i % 2 ? -(i + 1) / 2 : i / 2;
+        case 4:
+            result = view.getFloat64(pos, true);
+            pos += 8;
+            return result;
+        case 5: return utf8(varint());
+        case 6: return strings[varint()];
+        case 7:
+            count = varint();
+            result = bytes.subarray(pos, pos + count);
+            pos += count;
+            return result;
+        case 8:
+            result = {};
+            for (count = varint(); count > 0; count--) {
+                var key = strings[varint()];
+                result[key] = value();
+            }
+            return result;
+        case 9:
+            result = [];
+            for (count = varint(); count > 0; count--) {
+                result.push(value());
+            }
+            return result;
+        case 10:
+            var rows = varint();
+            result = [];
+            for (i = 0; i < rows; i++) {
+                result.push({});
+            }
+            for (var columns = varint(); columns > 0; columns--) {
+                var column = strings[varint()];
+                var present = pos;
+                pos += (rows + 7) >> 3;
+                for (i = 0; i < rows; i++) {
+                    if (bytes[present + (i >> 3)] & (1 << (i & 7))) {
+                        result[i][column] = value();
+                    }
+                }
+            }
+            return result;
+        default:
+            throw new Error('Unknown contacts binary tag ' + tag);
+        }
+    }
+
+    return value();
+}
+
+
 /**
 * Represents a group of Contacts.
 * @constructor
 */
 var contacts = {
     fieldType: fieldType,
+    decodeBinary: decodeBinary,
     /**
      * Returns an array of Contacts matching the search criteria.
      * @param fields that should be searched
      * @param successCB success callback
      * @param errorCB error callback
      * @param {ContactFindOptions} options that can be applied to contact searching
-     * @return array of Contacts matching search criteria
+     * @return the id of the request, to be given to contacts.cancel
      */
     find:function(fields, successCB, errorCB, options) {
         argscheck.checkArgs('afFO', 'contacts.find', arguments);
@@ -47,18 +163,47 @@ var contacts = {
             errorCB && errorCB(new ContactError(ContactError.INVALID_ARGUMENT_ERROR));
         } else {
             // missing 'options' param means return all contacts
-            options = options || {filter: '', multiple: true}
+            options = utils.clone(options || {filter: '', multiple: true});
+            options.requestId = options.requestId || utils.createUUID();
             var win = function(result) {
+                if (options.toFile) {
+                    // {path, size, count}
+                    successCB(result);
+                    return;
+                }
+                if (result instanceof ArrayBuffer) {
+                    // options.binary
+                    result = decodeBinary(result);
+                }
+                // A paged find gives {contacts, after}
+                var list = Array.isArray(result) ? result : result.contacts;
                 var cs = [];
-                for (var i = 0, l = result.length; i < l; i++) {
-                    cs.push(contacts.create(result[i]));
+                for (var i = 0, l = list.length; i < l; i++) {
+                    cs.push(contacts.create(list[i]));
+                }
+                if (!Array.isArray(result)) {
+                    cs.after = result.after;
                 }
                 successCB(cs);
             };
-            exec(win, errorCB, "Contacts", "search", [fields, options]);
+            var fail = errorCB && function(err) {
+                errorCB(typeof err == 'number' ? new ContactError(err) : err);
+            };
+            exec(win, fail, "Contacts", "search", [fields, options]);
+            return options.requestId;
         }
     },
 
+    /**
+     * Android only: stops a pending find. Its error callback is then called
+     * with ContactError.OPERATION_CANCELLED_ERROR.
+     * @param requestId the value returned by contacts.find
+     */
+    cancel: function(requestId, successCB, errorCB) {
+        argscheck.checkArgs('sFF', 'contacts.cancel', arguments);
+        exec(successCB, errorCB, "Contacts", "cancel", [requestId]);
+    },
+
     /**
      * This function picks contact from phone using contact picker UI
      * @returns new Contact object
@@ -106,6 +251,352 @@ var contacts = {
         argscheck.checkArgs('fF', 'contacts.listAccounts', arguments);
         exec(successCB, errorCB, "Contacts", "listAccounts", []);
     },
+
+    /**
+     * Android only: counts the contacts a find would return, without reading them.
+     * @param fields the search fields, as for find
+     * @param options the find options, as for find
+     * @param successCB called with the number of contacts
+     */
+    count: function(fields, options, successCB, errorCB) {
+        argscheck.checkArgs('aOfF', 'contacts.count', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "count", [fields, options || null]);
+    },
+
+    /**
+     * Android only: counts the contacts of each account.
+     * @param successCB called with {total, dirty, deleted, withPhoto, accounts:
+     * [{accountType, accountName, total, dirty, deleted, withPhoto}]}
+     */
+    accountStats: function(successCB, errorCB) {
+        argscheck.checkArgs('fF', 'contacts.accountStats', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "accountStats", []);
+    },
+
+    /**
+     * Android only: exports contacts to a vCard file, without sending them to the WebView.
+     * @param options the find options selecting the contacts (filter, fields,
+     * accountType, accountName, where...), and version ('3.0', the default, or '4.0')
+     * @param path the absolute path or file:// URL of the file, replaced if it exists
+     * @param successCB called with {path, size, count}
+     * @param progressCB called with {done, total} as the contacts are written
+     */
+    exportVCard: function(options, path, successCB, errorCB, progressCB) {
+        argscheck.checkArgs('OsfFF', 'contacts.exportVCard', arguments);
+        var win = function(result) {
+            if (result.progress) {
+                progressCB && progressCB({done: result.done, total: result.total});
+            } else {
+                successCB(result);
+            }
+        };
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(win, fail, "Contacts", "exportVCard", [options || null, path]);
+    },
+
+    /**
+     * Android only: imports the cards of a vCard file as new contacts.
+     * @param path the absolute path or file:// URL of the file
+     * @param accountType the account of the new contacts, chosen as for save when missing
+     * @param accountName the account of the new contacts
+     * @param successCB called with {total, imported, failed, errors: [{card, line, message}]}
+     * @param progressCB called with {cards, bytesRead, size} as the cards are imported
+     */
+    importVCard: function(path, accountType, accountName, successCB, errorCB, progressCB) {
+        argscheck.checkArgs('sSSfFF', 'contacts.importVCard', arguments);
+        var win = function(result) {
+            if (result.progress) {
+                progressCB && progressCB({cards: result.cards, bytesRead: result.bytesRead, size: result.size});
+            } else {
+                successCB(result);
+            }
+        };
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(win, fail, "Contacts", "importVCard", [path, accountType || null, accountName || null]);
+    },
+
+    /**
+     * Android only: resolves phone numbers and emails to contacts in bulk.
+     * @param phones array of phone numbers, in any format
+     * @param emails array of email addresses
+     * @param successCB called with an object mapping each given value to an
+     * array (empty when unknown) of {rawId, contactId, displayName, photo}
+     */
+    lookup: function(phones, emails, successCB, errorCB) {
+        argscheck.checkArgs('AAfF', 'contacts.lookup', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "lookup", [phones || [], emails || []]);
+    },
+
+    /**
+     * Android only: tells whether phone numbers or emails are in the address book.
+     * Most unknown values are answered from memory, without a database query.
+     * @param values a phone number or an email, or an array of them
+     * @param successCB called with a boolean for a single value, with an object
+     * mapping each value to a boolean for an array
+     */
+    isKnown: function(values, successCB, errorCB) {
+        argscheck.checkArgs('*fF', 'contacts.isKnown', arguments);
+        var single = !Array.isArray(values);
+        var win = function(result) {
+            successCB(single ? result[values] : result);
+        };
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(win, fail, "Contacts", "isKnown", [single ? [values] : values]);
+    },
+
+    /**
+     * Android only: returns the sections of the sorted contact list, for an
+     * alphabetic fast-scroll, computed from the names only.
+     * @param options {sortBy, sortOrder, accountType, accountName, locale}, all optional
+     * @param successCB called with {locale, total, sections: [{label, offset, count}]}
+     */
+    sectionIndex: function(options, successCB, errorCB) {
+        argscheck.checkArgs('OfF', 'contacts.sectionIndex', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "sectionIndex", [options || null]);
+    },
+
+    /**
+     * Android only: finds people, one summary per person whatever the number
+     * of accounts it comes from, for list screens.
+     * @param options {filter, accountType, accountName, starred, primary
+     * ('phone' or 'email'), sortOrder, limit, offset}, all optional
+     * @param successCB called with an array of {id, lookupKey, displayName,
+     * thumbnail, starred, hasPhoneNumber}, with phoneNumber or email when
+     * primary is given
+     */
+    findSummaries: function(options, successCB, errorCB) {
+        argscheck.checkArgs('OfF', 'contacts.findSummaries', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "summaries", [options || null]);
+    },
+
+    /**
+     * Android only: returns the top contacts of a ranking, best first.
+     * @param options {rank ('starred', 'frequent', 'recent' or 'score'),
+     * limit (20 by default), halfLife (ms, for 'score'), primary,
+     * accountType, accountName}
+     * @param successCB called with an array of summaries, as findSummaries
+     * gives, with timesContacted and lastTimeContacted, and score for 'score'
+     */
+    topContacts: function(options, successCB, errorCB) {
+        argscheck.checkArgs('OfF', 'contacts.topContacts', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "topContacts", [options || null]);
+    },
+
+    /**
+     * Android only: records a use of a contact (a call, a message...) in its
+     * local usage score, which ranks topContacts with rank 'score'.
+     * @param contactId the id of the contact (the aggregate, not the raw contact)
+     * @param weight added to the score, 1 by default
+     * @param halfLife the time in ms it takes the score to halve, two weeks by default
+     * @param successCB called with {score}
+     */
+    recordContactUsage: function(contactId, weight, halfLife, successCB, errorCB) {
+        argscheck.checkArgs('sNNFF', 'contacts.recordContactUsage', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "recordContactUsage",
+            [contactId, weight == null ? 1 : weight, halfLife || null]);
+    },
+
+    /**
+     * Android only: forgets every local usage score.
+     */
+    clearContactUsage: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.clearContactUsage', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "clearContactUsage", []);
+    },
+
+    /**
+     * Android only: runs a find without reading the contacts, and keeps the
+     * ids of its result, sorted, for readView.
+     * @param fields the search fields, as for find
+     * @param options the find options (filter, sortBy, where...), and the
+     * timeout in ms after which an unread view is released (5 minutes by default)
+     * @param successCB called with {viewId, total, generation}
+     */
+    openView: function(fields, options, successCB, errorCB) {
+        argscheck.checkArgs('aOfF', 'contacts.openView', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "openView", [fields, options || null]);
+    },
+
+    /**
+     * Android only: reads the rows [from, to) of a view.
+     * @param fields the contact fields to read, all of them if empty
+     * @param successCB called with the array of Contact, which has the
+     * total, generation and from properties of the view
+     */
+    readView: function(viewId, from, to, fields, successCB, errorCB) {
+        argscheck.checkArgs('snnAfF', 'contacts.readView', arguments);
+        var win = function(result) {
+            var cs = [];
+            for (var i = 0, l = result.contacts.length; i < l; i++) {
+                cs.push(contacts.create(result.contacts[i]));
+            }
+            cs.total = result.total;
+            cs.generation = result.generation;
+            cs.from = result.from;
+            successCB(cs);
+        };
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(win, fail, "Contacts", "readView", [viewId, from, to, fields || []]);
+    },
+
+    /**
+     * Android only: releases a view.
+     */
+    closeView: function(viewId, successCB, errorCB) {
+        argscheck.checkArgs('sFF', 'contacts.closeView', arguments);
+        exec(successCB, errorCB, "Contacts", "closeView", [viewId]);
+    },
+
+    /**
+     * Android only: builds (or catches up) the local search index, then uses
+     * it for the searches it covers. The index stays enabled across launches.
+     * @param successCB called with the index stats {contacts, builtAt, dirty}
+     */
+    enableSearchIndex: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.enableSearchIndex', arguments);
+        exec(successCB, errorCB, "Contacts", "enableSearchIndex", []);
+    },
+
+    /**
+     * Android only: re-indexes every contact from scratch.
+     */
+    rebuildSearchIndex: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.rebuildSearchIndex', arguments);
+        exec(successCB, errorCB, "Contacts", "rebuildSearchIndex", []);
+    },
+
+    /**
+     * Android only: stops using the local search index and deletes it.
+     */
+    disableSearchIndex: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.disableSearchIndex', arguments);
+        exec(successCB, errorCB, "Contacts", "disableSearchIndex", []);
+    },
+
+    /**
+     * Android only: builds (or catches up) the local mirror of the list
+     * fields, then keeps it in sync. The mirror stays enabled across launches.
+     * @param successCB called with the mirror stats {contacts, rawContacts,
+     * reconciledAt, dirty}
+     */
+    enableMirror: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.enableMirror', arguments);
+        exec(successCB, errorCB, "Contacts", "enableMirror", []);
+    },
+
+    /**
+     * Android only: finds people in the local mirror, without waiting for it
+     * to catch up with the contacts database.
+     * @param options {filter, accountType, accountName, starred, sortOrder,
+     * limit, offset}, all optional
+     * @param successCB called with {contacts, stale, reconciledAt}, contacts
+     * being summaries with phoneNumber and email
+     */
+    searchMirror: function(options, successCB, errorCB) {
+        argscheck.checkArgs('OfF', 'contacts.searchMirror', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "searchMirror", [options || null]);
+    },
+
+    /**
+     * Android only: stops keeping the local mirror and deletes it.
+     */
+    disableMirror: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.disableMirror', arguments);
+        exec(successCB, errorCB, "Contacts", "disableMirror", []);
+    },
+
+    /**
+     * Android only: writes a snapshot of the summaries of every person, which
+     * replaces the previous one once complete.
+     * @param successCB called with the snapshot stats {contacts, size,
+     * builtAt, locale, stale}
+     */
+    buildSnapshot: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.buildSnapshot', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "buildSnapshot", []);
+    },
+
+    /**
+     * Android only: reads a page of the last snapshot, sorted by name.
+     * @param options {prefix, limit, offset}, all optional
+     * @param successCB called with {contacts, total, builtAt, stale},
+     * contacts being summaries as findSummaries gives
+     */
+    readSnapshot: function(options, successCB, errorCB) {
+        argscheck.checkArgs('OfF', 'contacts.readSnapshot', arguments);
+        var fail = errorCB && function(err) {
+            errorCB(typeof err == 'number' ? new ContactError(err) : err);
+        };
+        exec(successCB, fail, "Contacts", "readSnapshot", [options || null]);
+    },
+
+    /**
+     * Android only: deletes the snapshot.
+     */
+    deleteSnapshot: function(successCB, errorCB) {
+        argscheck.checkArgs('FF', 'contacts.deleteSnapshot', arguments);
+        exec(successCB, errorCB, "Contacts", "deleteSnapshot", []);
+    },
+
+    /**
+     * Android only: returns the settings and the queue metrics (queued,
+     * running, completed, rejected, avgWaitMs, maxWaitMs) of the interactive
+     * and bulk lanes of the plugin scheduler.
+     */
+    getSchedulerStats: function(successCB, errorCB) {
+        argscheck.checkArgs('fF', 'contacts.getSchedulerStats', arguments);
+        exec(successCB, errorCB, "Contacts", "getSchedulerStats", []);
+    },
+
+    /**
+     * Android only: tunes the plugin scheduler.
+     * @param options {parallelism, bulkParallelism, interactiveCapacity, bulkCapacity}
+     */
+    configureScheduler: function(options, successCB, errorCB) {
+        argscheck.checkArgs('oFF', 'contacts.configureScheduler', arguments);
+        exec(successCB, errorCB, "Contacts", "configureScheduler", [options]);
+    },
 };
 
 module.exports = contacts;